@@ -0,0 +1,98 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole offline check of a synthetic site by {@link DefaultLinkCheck#execute()}, including the report,
+ * without cache so each run validates all the links.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx2g" } )
+public class LinkCheckBenchmark
+{
+    /** The number of pages of the site. */
+    @Param( { "1000", "10000", "100000" } )
+    private int pages;
+
+    /** The number of links of each page. */
+    @Param( { "10", "50" } )
+    private int linkDensity;
+
+    /** The number of threads checking the files. */
+    @Param( { "1", "4" } )
+    private int parallelism;
+
+    private File basedir;
+
+    private File report;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        basedir = SiteCorpus.create( pages, linkDensity, null );
+        report = File.createTempFile( "linkcheck", ".xml" );
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        SiteCorpus.delete( basedir );
+        report.delete();
+    }
+
+    @Benchmark
+    public LinkcheckModel execute()
+        throws LinkCheckException
+    {
+        LinkCheck lc = new DefaultLinkCheck();
+        lc.setOnline( false );
+        lc.setBasedir( basedir );
+        lc.setParallelism( parallelism );
+        lc.setReportOutput( report );
+        lc.setStreamingReport( true );
+        lc.setExcludedLinks( new String[] { "mailto:*", "../images/*" } );
+
+        return lc.execute();
+    }
+}
@@ -0,0 +1,207 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Generates the synthetic sites of the benchmarks. The pages are spread over directories of 100 pages, and each page
+ * has the given number of links, mixing the kinds of links of a real site: links to other pages, with or without
+ * anchor, links to anchors of the same page, broken links, images, external links and mailto links.
+ * <p>
+ * The sites are generated from a fixed seed, so the same parameters always give the same site.
+ * </p>
+ */
+public final class SiteCorpus
+{
+    /** The number of pages of a directory. */
+    private static final int PAGES_PER_DIRECTORY = 100;
+
+    /** The number of sections, i.e. of anchors, of a page. */
+    private static final int SECTIONS = 10;
+
+    /** The number of different external documents. */
+    private static final int EXTERNAL_DOCUMENTS = 1000;
+
+    /** The base URL of the external links when none is given, never checked offline. */
+    public static final String DEFAULT_EXTERNAL_BASE = "http://www.example.com";
+
+    private SiteCorpus()
+    {
+        // utility class
+    }
+
+    /**
+     * Creates a site in a new temporary directory.
+     *
+     * @param pages the number of pages.
+     * @param linksPerPage the number of links of each page.
+     * @param externalBase the base URL of the external links, or null for {@link #DEFAULT_EXTERNAL_BASE}.
+     * @return the base directory of the site, to {@link #delete(File)} after use.
+     * @throws IOException if the site can't be written.
+     */
+    public static File create( int pages, int linksPerPage, String externalBase )
+        throws IOException
+    {
+        File basedir = File.createTempFile( "linkcheck-site", "" );
+        if ( !basedir.delete() || !basedir.mkdirs() )
+        {
+            throw new IOException( "Unable to create " + basedir );
+        }
+
+        for ( int i = 0; i < pages; i++ )
+        {
+            File file = new File( basedir, getPath( i ) );
+            if ( i % PAGES_PER_DIRECTORY == 0 )
+            {
+                file.getParentFile().mkdirs();
+            }
+
+            Writer writer = WriterFactory.newWriter( file, "UTF-8" );
+            try
+            {
+                writer.write( getPage( i, pages, linksPerPage, externalBase ) );
+            }
+            finally
+            {
+                IOUtil.close( writer );
+            }
+        }
+
+        return basedir;
+    }
+
+    /**
+     * Deletes a site.
+     *
+     * @param basedir the base directory of the site, may be null.
+     * @throws IOException if the site can't be deleted.
+     */
+    public static void delete( File basedir )
+        throws IOException
+    {
+        if ( basedir != null )
+        {
+            FileUtils.deleteDirectory( basedir );
+        }
+    }
+
+    /**
+     * @param index the index of a page.
+     * @return the path of the page, relative to the base directory.
+     */
+    public static String getPath( int index )
+    {
+        return "d" + ( index / PAGES_PER_DIRECTORY ) + "/page" + index + ".html";
+    }
+
+    /**
+     * Returns the markup of a page.
+     *
+     * @param index the index of the page.
+     * @param pages the number of pages of the site.
+     * @param linksPerPage the number of links of the page.
+     * @param externalBase the base URL of the external links, or null for {@link #DEFAULT_EXTERNAL_BASE}.
+     * @return the markup.
+     */
+    public static String getPage( int index, int pages, int linksPerPage, String externalBase )
+    {
+        String external = ( externalBase == null ) ? DEFAULT_EXTERNAL_BASE : externalBase;
+        Random random = new Random( index );
+
+        StringBuilder sb = new StringBuilder( 1024 + linksPerPage * 160 );
+        sb.append( "<!DOCTYPE html>\n<html>\n<head>\n<title>Page " ).append( index ).append( "</title>\n" );
+        sb.append( "<link rel=\"stylesheet\" href=\"../css/site.css\" />\n</head>\n<body>\n" );
+        sb.append( "<!-- <a href=\"commented.html\">not a link</a> -->\n" );
+
+        int linksPerSection = ( linksPerPage + SECTIONS - 1 ) / SECTIONS;
+        int links = 0;
+        for ( int section = 0; section < SECTIONS; section++ )
+        {
+            sb.append( "<h2 id=\"s" ).append( section ).append( "\">Section " ).append( section ).append( "</h2>\n" );
+            sb.append( "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.</p>\n" );
+
+            sb.append( "<ul>\n" );
+            for ( int i = 0; i < linksPerSection && links < linksPerPage; i++, links++ )
+            {
+                sb.append( "<li><a class=\"link\" href=\"" );
+                appendLink( sb, index, pages, external, random );
+                sb.append( "\">Link ").append( links ).append( "</a></li>\n" );
+            }
+            sb.append( "</ul>\n" );
+        }
+
+        sb.append( "</body>\n</html>\n" );
+
+        return sb.toString();
+    }
+
+    private static void appendLink( StringBuilder sb, int index, int pages, String external, Random random )
+    {
+        int kind = random.nextInt( 100 );
+        int target = random.nextInt( pages );
+
+        if ( kind < 50 )
+        {
+            // another page of the site, a third of them with an anchor
+            int directory = target / PAGES_PER_DIRECTORY;
+            if ( directory != index / PAGES_PER_DIRECTORY )
+            {
+                sb.append( "../d" ).append( directory ).append( '/' );
+            }
+            sb.append( "page" ).append( target ).append( ".html" );
+            if ( kind % 3 == 0 )
+            {
+                sb.append( "#s" ).append( random.nextInt( SECTIONS + 1 ) );
+            }
+        }
+        else if ( kind < 55 )
+        {
+            sb.append( "#s" ).append( random.nextInt( SECTIONS ) );
+        }
+        else if ( kind < 60 )
+        {
+            sb.append( "../missing/page" ).append( target ).append( ".html" );
+        }
+        else if ( kind < 65 )
+        {
+            sb.append( "../images/image" ).append( target % SECTIONS ).append( ".png" );
+        }
+        else if ( kind < 95 )
+        {
+            sb.append( external ).append( "/doc" ).append( target % EXTERNAL_DOCUMENTS ).append( ".html" );
+            if ( kind % 4 == 0 )
+            {
+                sb.append( "#top" );
+            }
+        }
+        else
+        {
+            sb.append( "mailto:user" ).append( target ).append( "@example.com" );
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Anchor lookups in documents of various sizes, like the generated javadoc pages often linked with an anchor.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AnchorsBenchmark
+{
+    /** The number of anchors of the document, about 100 bytes each. */
+    @Param( { "100", "10000" } )
+    private int anchors;
+
+    private String content;
+
+    private String first;
+
+    private String middle;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder sb = new StringBuilder( anchors * 100 );
+        sb.append( "<html><body>\n" );
+        for ( int i = 0; i < anchors; i++ )
+        {
+            sb.append( "<h3><a name=\"method" ).append( i ).append( "()\">method" ).append( i );
+            sb.append( "()</a></h3>\n<div class=\"block\">Does something.</div>\n" );
+        }
+        sb.append( "</body></html>\n" );
+
+        content = sb.toString();
+        first = "method0()";
+        middle = "method" + ( anchors / 2 ) + "()";
+    }
+
+    @Benchmark
+    public boolean matchesFirstAnchor()
+    {
+        return Anchors.matchesAnchor( content, first );
+    }
+
+    @Benchmark
+    public boolean matchesMiddleAnchor()
+    {
+        return Anchors.matchesAnchor( content, middle );
+    }
+
+    @Benchmark
+    public boolean matchesMissingAnchor()
+    {
+        return Anchors.matchesAnchor( content, "missing" );
+    }
+
+    @Benchmark
+    public Set<String> getAnchors()
+        throws IOException
+    {
+        return Anchors.getAnchors( new StringReader( content ) );
+    }
+
+    @Benchmark
+    public boolean findMiddleAnchor()
+        throws IOException
+    {
+        return Anchors.findAnchor( new StringReader( content ), middle, new HashSet<String>() );
+    }
+}
@@ -0,0 +1,139 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching of links against the excluded links, one pattern at a time with
+ * {@link LinkValidatorManager#matchPattern(String, String)} and all at once with the compiled excludes of
+ * {@link LinkValidatorManager#isExcluded(String)}. The score is the time to match 1000 links.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ExcludedLinksBenchmark
+{
+    private static final int LINKS = 1000;
+
+    /** The number of excluded links, a quarter of them with wildcards. */
+    @Param( { "10", "100", "1000" } )
+    private int excludes;
+
+    private String[] patterns;
+
+    private String[] links;
+
+    private LinkValidatorManager manager;
+
+    @Setup
+    public void setUp()
+    {
+        patterns = new String[excludes];
+        for ( int i = 0; i < excludes; i++ )
+        {
+            switch ( i % 4 )
+            {
+                case 0:
+                    patterns[i] = "http://host" + i + ".example.com/*/apidocs/*";
+                    break;
+                case 1:
+                    patterns[i] = "http://host" + i + ".example.com/";
+                    break;
+                case 2:
+                    patterns[i] = "../reports/report" + i + ".html";
+                    break;
+                default:
+                    patterns[i] = "mailto:list" + i + "@example.com";
+                    break;
+            }
+        }
+
+        links = new String[LINKS];
+        for ( int i = 0; i < LINKS; i++ )
+        {
+            int host = i % ( excludes * 2 );
+            switch ( i % 3 )
+            {
+                case 0:
+                    links[i] = "http://host" + host + ".example.com/project/apidocs/index.html#method" + i;
+                    break;
+                case 1:
+                    links[i] = "../reports/report" + host + ".html";
+                    break;
+                default:
+                    links[i] = "page" + i + ".html";
+                    break;
+            }
+        }
+
+        manager = new LinkValidatorManager();
+        manager.setExcludedLinks( patterns );
+    }
+
+    @Benchmark
+    public int matchPattern()
+    {
+        int excluded = 0;
+        for ( int i = 0; i < links.length; i++ )
+        {
+            for ( int j = 0; j < patterns.length; j++ )
+            {
+                if ( LinkValidatorManager.matchPattern( links[i], patterns[j] ) )
+                {
+                    excluded++;
+                    break;
+                }
+            }
+        }
+
+        return excluded;
+    }
+
+    @Benchmark
+    public int isExcluded()
+    {
+        int excluded = 0;
+        for ( int i = 0; i < links.length; i++ )
+        {
+            if ( manager.isExcluded( links[i] ) )
+            {
+                excluded++;
+            }
+        }
+
+        return excluded;
+    }
+}
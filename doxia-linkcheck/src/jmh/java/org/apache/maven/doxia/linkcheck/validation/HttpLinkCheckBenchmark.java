@@ -0,0 +1,203 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Validation of external links against a local stub server, so the throughput and the allocation rate of the
+ * HTTP backends can be compared across releases without depending on the network. The score is the time to
+ * validate 1000 distinct links of one host, as a site check does.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+// without TCP_NODELAY, the delayed ACKs of the stub server, not the backends, would bound the throughput
+@Fork( value = 1, jvmArgsAppend = { "-Dsun.net.httpserver.nodelay=true" } )
+public class HttpLinkCheckBenchmark
+{
+    private static final int LINKS = 1000;
+
+    /** The size of the documents served, in bytes. */
+    private static final int DOCUMENT_SIZE = 16 * 1024;
+
+    /** The HTTP backend. */
+    @Param( { "httpclient", KeepAliveHTTPLinkValidator.BACKEND } )
+    private String backend;
+
+    /** The HTTP method. */
+    @Param( { "head", "get" } )
+    private String method;
+
+    /** True to check an anchor of each document, which needs its body. */
+    @Param( { "false", "true" } )
+    private boolean anchors;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private HttpBean http;
+
+    private HTTPLinkValidator validator;
+
+    private String[] links;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        final byte[] document = createDocument();
+
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                exchange.getResponseHeaders().add( "Content-Type", "text/html; charset=UTF-8" );
+                exchange.getResponseHeaders().add( "ETag", "\"" + exchange.getRequestURI().getPath() + "\"" );
+
+                boolean head = "HEAD".equals( exchange.getRequestMethod() );
+                exchange.sendResponseHeaders( 200, head ? -1 : document.length );
+                if ( !head )
+                {
+                    OutputStream os = exchange.getResponseBody();
+                    try
+                    {
+                        os.write( document );
+                    }
+                    catch ( IOException e )
+                    {
+                        // the client stopped reading
+                    }
+                }
+                exchange.close();
+            }
+        } );
+        serverExecutor = Executors.newFixedThreadPool( 16 );
+        server.setExecutor( serverExecutor );
+        server.start();
+
+        http = new HttpBean();
+        http.setMethod( method );
+        http.setBackend( backend );
+
+        if ( KeepAliveHTTPLinkValidator.BACKEND.equals( backend ) )
+        {
+            validator = new KeepAliveHTTPLinkValidator( http );
+        }
+        else
+        {
+            validator = new OnlineHTTPLinkValidator( http );
+        }
+
+        String base = "http://localhost:" + server.getAddress().getPort();
+        links = new String[LINKS];
+        for ( int i = 0; i < LINKS; i++ )
+        {
+            links[i] = base + "/doc" + i + ".html" + ( anchors ? "#section" + ( i % 100 ) : "" );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        server.stop( 0 );
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int validate()
+        throws InterruptedException
+    {
+        // a new index, so the documents are read again
+        validator.setAnchorIndex( null );
+
+        LinkValidatorManager manager = new LinkValidatorManager();
+        manager.addLinkValidator( validator );
+        LinkValidationPlan plan = manager.createPlan();
+
+        File source = new File( "index.html" );
+        LinkValidationPlan.Resource[] resources = new LinkValidationPlan.Resource[LINKS];
+        for ( int i = 0; i < LINKS; i++ )
+        {
+            resources[i] = plan.addLink( new LinkValidationItem( source, links[i] ) );
+        }
+
+        plan.validateExternalLinks( http.getMaxConnections(), http.getMaxConnectionsPerHost() );
+
+        int valid = 0;
+        for ( int i = 0; i < LINKS; i++ )
+        {
+            if ( resources[i].getResult().getStatus() == LinkcheckFileResult.VALID_LEVEL )
+            {
+                valid++;
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * @return a document with 100 sections.
+     * @throws IOException if UTF-8 isn't supported.
+     */
+    private static byte[] createDocument()
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder( DOCUMENT_SIZE );
+        sb.append( "<html><body>\n" );
+        for ( int i = 0; sb.length() < DOCUMENT_SIZE - 100; i++ )
+        {
+            sb.append( "<h2 id=\"section" ).append( i % 100 ).append( "\">Section</h2><p>Some text.</p>\n" );
+        }
+        sb.append( "</body></html>\n" );
+
+        return sb.toString().getBytes( "UTF-8" );
+    }
+}
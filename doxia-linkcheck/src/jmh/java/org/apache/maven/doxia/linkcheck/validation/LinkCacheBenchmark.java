@@ -0,0 +1,122 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and saving of the link cache, in memory or bounded with the rest spilled to disk.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LinkCacheBenchmark
+{
+    /** The number of cached results. */
+    @Param( { "1000", "10000", "100000" } )
+    private int entries;
+
+    /** The maximum number of results held in memory, 0 for no limit. */
+    @Param( { "0", "1000" } )
+    private int maxCacheEntries;
+
+    private LinkValidatorManager manager;
+
+    private LinkValidatorManager loader;
+
+    private File input;
+
+    private File output;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        manager = new LinkValidatorManager();
+        manager.setMaxCacheEntries( maxCacheEntries );
+        for ( int i = 0; i < entries; i++ )
+        {
+            LinkValidationResult result;
+            if ( i % 2 == 0 )
+            {
+                result = new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK",
+                                                       "\"etag-" + i + "\"", "Thu, 01 Jan 2015 00:00:00 GMT" );
+            }
+            else
+            {
+                result = new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, "" );
+            }
+
+            manager.setCachedResult( "http://host" + ( i % 100 ) + ".example.com/docs/page" + i + ".html", result );
+        }
+
+        input = File.createTempFile( "linkcheck-input", ".cache" );
+        output = File.createTempFile( "linkcheck-output", ".cache" );
+        manager.saveCache( input );
+
+        loader = new LinkValidatorManager();
+        loader.setMaxCacheEntries( maxCacheEntries );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public File save()
+        throws IOException
+    {
+        manager.saveCache( output );
+
+        return output;
+    }
+
+    @Benchmark
+    public LinkValidatorManager load()
+        throws IOException
+    {
+        // each load replaces, and releases, the cache of the previous one
+        loader.loadCache( input );
+
+        return loader;
+    }
+}
@@ -22,28 +22,52 @@ package org.apache.maven.doxia.linkcheck;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFile;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckHostMetrics;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckLatency;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckMetrics;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckValidatorMetrics;
 import org.apache.maven.doxia.linkcheck.model.io.xpp3.LinkcheckModelXpp3Writer;
+import org.apache.maven.doxia.linkcheck.validation.AnchorIndex;
 import org.apache.maven.doxia.linkcheck.validation.FileLinkValidator;
+import org.apache.maven.doxia.linkcheck.validation.HostMetrics;
+import org.apache.maven.doxia.linkcheck.validation.KeepAliveHTTPLinkValidator;
 import org.apache.maven.doxia.linkcheck.validation.HTTPLinkValidationResult;
+import org.apache.maven.doxia.linkcheck.validation.HTTPLinkValidator;
 import org.apache.maven.doxia.linkcheck.validation.LinkValidationItem;
+import org.apache.maven.doxia.linkcheck.validation.LinkValidationPlan;
 import org.apache.maven.doxia.linkcheck.validation.LinkValidationResult;
+import org.apache.maven.doxia.linkcheck.validation.LinkValidator;
 import org.apache.maven.doxia.linkcheck.validation.LinkValidatorManager;
+import org.apache.maven.doxia.linkcheck.validation.MailDomainResolver;
 import org.apache.maven.doxia.linkcheck.validation.MailtoLinkValidator;
 import org.apache.maven.doxia.linkcheck.validation.OfflineHTTPLinkValidator;
 import org.apache.maven.doxia.linkcheck.validation.OnlineHTTPLinkValidator;
+import org.apache.maven.doxia.linkcheck.validation.SharedLinkCache;
+import org.apache.maven.doxia.linkcheck.validation.SitePathIndex;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.util.FileUtils;
@@ -71,12 +95,46 @@ public final class DefaultLinkCheck
     /** One MegaByte. */
     private static final long MEG = 1024 * 1024;
 
+    /** The (unique) result for the links to the pages of a crawled site which were not crawled. */
+    private static final LinkValidationResult NOT_CRAWLED =
+        new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Not crawled" );
+
     /** The basedir to check. */
     private File basedir;
 
     /** Linkcheck Cache. */
     private File linkCheckCache;
 
+    /** Incremental mode. */
+    private boolean incremental;
+
+    /** Streaming report mode. */
+    private boolean streamingReport;
+
+    /** Whether the valid links are reported. */
+    private boolean reportValidLinks = true;
+
+    /** Whether the metrics are reported. */
+    private boolean reportMetrics;
+
+    /** The metrics of the last execution. */
+    private LinkcheckMetrics metrics;
+
+    /** The time to live of the cached results by status level. */
+    private final Map<Integer, Long> cacheTimeToLive = new HashMap<Integer, Long>();
+
+    /** The maximum number of cached results in memory, 0 for no limit. */
+    private int maxCacheEntries;
+
+    /** The maximum duration of an execution in milliseconds, 0 for no limit. */
+    private long timeBudget;
+
+    /** Whether the results are shared with the other instances of the JVM. */
+    private boolean sharedCache;
+
+    /** The resolver of the mail domains, or null if the mailto links are not checked. */
+    private MailDomainResolver mailDomainResolver;
+
     /**
      * To exclude some links. Could contains a link, i.e. <code>http:&#47;&#47;maven.apache.org</code>,
      * or pattern links i.e. <code>http:&#47;&#47;maven.apache.org&#47;**&#47;*.html</code>
@@ -118,9 +176,15 @@ public final class DefaultLinkCheck
     /** The base URL for links that start with '/'. */
     private String baseURL;
 
+    /** The URL of the site to crawl instead of the basedir, null to check the basedir. */
+    private String crawlURL;
+
     /** The encoding used to process files, UTF-8 by default. */
     private String encoding = ReaderFactory.UTF_8;
 
+    /** The number of threads used to scan the pages, sequential by default. */
+    private int parallelism = 1;
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -131,6 +195,12 @@ public final class DefaultLinkCheck
         this.basedir = base;
     }
 
+    /** {@inheritDoc} */
+    public void setCrawlURL( String url )
+    {
+        this.crawlURL = url;
+    }
+
     /** {@inheritDoc} */
     public void setBaseURL( String url )
     {
@@ -173,18 +243,104 @@ public final class DefaultLinkCheck
         this.linkCheckCache = cacheFile;
     }
 
+    /** {@inheritDoc} */
+    public void setCacheTimeToLive( int level, long timeToLive )
+    {
+        if ( level < LinkcheckFileResult.ERROR_LEVEL || level > LinkcheckFileResult.UNKNOWN_LEVEL )
+        {
+            throw new IllegalArgumentException( "This level [" + level + "] is unsupported." );
+        }
+
+        this.cacheTimeToLive.put( Integer.valueOf( level ), Long.valueOf( timeToLive ) );
+    }
+
+    /** {@inheritDoc} */
+    public void setSharedCache( boolean sharedCache )
+    {
+        this.sharedCache = sharedCache;
+    }
+
+    /** {@inheritDoc} */
+    public void setMailDomainResolver( MailDomainResolver resolver )
+    {
+        this.mailDomainResolver = resolver;
+    }
+
+    /** {@inheritDoc} */
+    public void setTimeBudget( long timeBudget )
+    {
+        if ( timeBudget < 0 )
+        {
+            throw new IllegalArgumentException( timeBudget + " should not be negative." );
+        }
+
+        this.timeBudget = timeBudget;
+    }
+
+    /** {@inheritDoc} */
+    public void setMaxCacheEntries( int maxEntries )
+    {
+        if ( maxEntries < 0 )
+        {
+            throw new IllegalArgumentException( maxEntries + " should not be negative." );
+        }
+
+        this.maxCacheEntries = maxEntries;
+    }
+
+    /** {@inheritDoc} */
+    public void setIncremental( boolean incremental )
+    {
+        this.incremental = incremental;
+    }
+
     /** {@inheritDoc} */
     public void setOnline( boolean onLine )
     {
         this.online = onLine;
     }
 
+    /** {@inheritDoc} */
+    public void setParallelism( int parallelism )
+    {
+        if ( parallelism < 0 )
+        {
+            throw new IllegalArgumentException( parallelism + " should be 0 or positive." );
+        }
+
+        this.parallelism = parallelism;
+    }
+
     /** {@inheritDoc} */
     public void setReportOutput( File file )
     {
         this.reportOutput = file;
     }
 
+    /** {@inheritDoc} */
+    public void setReportValidLinks( boolean reportValidLinks )
+    {
+        this.reportValidLinks = reportValidLinks;
+    }
+
+    /** {@inheritDoc} */
+    public void setReportMetrics( boolean reportMetrics )
+    {
+        this.reportMetrics = reportMetrics;
+    }
+
+    /** {@inheritDoc} */
+    public LinkcheckMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /** {@inheritDoc} */
+    public void setStreamingReport( boolean streamingReport )
+    {
+        this.streamingReport = streamingReport;
+    }
+
     /** {@inheritDoc} */
     public void setReportOutputEncoding( String encoding )
     {
@@ -195,7 +351,7 @@ public final class DefaultLinkCheck
     public LinkcheckModel execute()
         throws LinkCheckException
     {
-        if ( this.basedir == null )
+        if ( this.basedir == null && this.crawlURL == null )
         {
             LOG.error( "No base directory specified!" );
 
@@ -207,60 +363,117 @@ public final class DefaultLinkCheck
             LOG.warn( "No output file specified! Results will not be written!" );
         }
 
+        long deadline = ( this.timeBudget > 0 ) ? System.currentTimeMillis() + this.timeBudget : 0;
+
         LinkcheckModel model = new LinkcheckModel();
         model.setModelEncoding( reportOutputEncoding );
         model.setFiles( new LinkedList<LinkcheckFile>() );
 
         displayMemoryConsumption();
 
-        LinkValidatorManager validator = getLinkValidatorManager();
+        // a new manager for each execution, so its cache hits and misses are the ones of this execution
+        initDefaultLinkValidatorManager();
+        LinkValidatorManager validator = this.lvm;
+
         try
         {
-            validator.loadCache( this.linkCheckCache );
-        }
-        catch ( IOException e )
-        {
-            throw new LinkCheckException( "Could not load cache: " + e.getMessage(), e );
-        }
+            RunMetrics run = new RunMetrics( validator );
+            this.metrics = run.metrics;
+            if ( this.reportMetrics )
+            {
+                model.setMetrics( run.metrics );
+            }
 
-        displayMemoryConsumption();
+            long start = System.currentTimeMillis();
+            try
+            {
+                validator.loadCache( this.linkCheckCache );
+            }
+            catch ( IOException e )
+            {
+                throw new LinkCheckException( "Could not load cache: " + e.getMessage(), e );
+            }
+            run.metrics.setCacheLoadTime( System.currentTimeMillis() - start );
 
-        LOG.info( "Begin to check links in files..." );
+            displayMemoryConsumption();
 
-        try
-        {
-            findAndCheckFiles( this.basedir, model );
-        }
-        catch ( IOException e )
-        {
-            throw new LinkCheckException( "Could not scan base directory: " + basedir.getAbsolutePath(), e );
-        }
+            LOG.info( "Begin to check links in files..." );
+
+            String location = ( this.crawlURL != null ) ? this.crawlURL : this.basedir.getAbsolutePath();
+            try
+            {
+                if ( this.crawlURL != null )
+                {
+                    crawlAndCheckSite( model, run, deadline );
+                }
+                else
+                {
+                    findAndCheckFiles( this.basedir, model, run, deadline );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new LinkCheckException( "Could not scan "
+                    + ( ( this.crawlURL != null ) ? "site: " : "base directory: " ) + location, e );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
 
-        LOG.info( "Links checked." );
+                throw new LinkCheckException( "Interrupted while checking links in: " + location, e );
+            }
 
-        displayMemoryConsumption();
+            LOG.info( "Links checked." );
 
-        try
-        {
-            createDocument( model );
-        }
-        catch ( IOException e )
-        {
-            throw new LinkCheckException( "Could not write the linkcheck document: " + e.getMessage(), e );
-        }
+            run.collect();
 
-        try
-        {
-            validator.saveCache( this.linkCheckCache );
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Link cache: " + validator.getCacheHits() + " hits, " + validator.getCacheMisses()
+                    + " misses, " + validator.getCoalescedValidations() + " coalesced validations." );
+            }
+
+            displayMemoryConsumption();
+
+            start = System.currentTimeMillis();
+            try
+            {
+                if ( !this.streamingReport )
+                {
+                    createDocument( model );
+
+                    run.metrics.setReportTime( System.currentTimeMillis() - start );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new LinkCheckException( "Could not write the linkcheck document: " + e.getMessage(), e );
+            }
+
+            start = System.currentTimeMillis();
+            try
+            {
+                validator.saveCache( this.linkCheckCache );
+            }
+            catch ( IOException e )
+            {
+                throw new LinkCheckException( "Could not save cache: " + e.getMessage(), e );
+            }
+            run.metrics.setCacheSaveTime( System.currentTimeMillis() - start );
+
+            displayMemoryConsumption();
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Metrics: " + run );
+            }
+
+            return model;
         }
-        catch ( IOException e )
+        finally
         {
-            throw new LinkCheckException( "Could not save cache: " + e.getMessage(), e );
+            closeValidators();
         }
-
-        displayMemoryConsumption();
-
-        return model;
     }
 
     /** {@inheritDoc} */
@@ -358,23 +571,6 @@ public final class DefaultLinkCheck
         return this.excludedHttpStatusWarnings;
     }
 
-    /**
-     * Returns the LinkValidatorManager.
-     * If this hasn't been set before with {@link #setLinkValidatorManager(LinkValidatorManager)}
-     * a default LinkValidatorManager will be returned.
-     *
-     * @return the LinkValidatorManager
-     */
-    private LinkValidatorManager getLinkValidatorManager()
-    {
-        if ( this.lvm == null )
-        {
-            initDefaultLinkValidatorManager();
-        }
-
-        return this.lvm;
-    }
-
     /**
      * Intializes the current LinkValidatorManager to a default value.
      */
@@ -382,145 +578,838 @@ public final class DefaultLinkCheck
     {
         this.lvm = new LinkValidatorManager();
 
+        SharedLinkCache shared = this.sharedCache ? SharedLinkCache.getDefault() : null;
+        if ( shared != null )
+        {
+            this.lvm.setSharedCache( shared );
+        }
+
         if ( getExcludedLinks() != null )
         {
             this.lvm.setExcludedLinks( getExcludedLinks() );
         }
 
-        this.lvm.addLinkValidator( new FileLinkValidator( encoding ) );
+        for ( Map.Entry<Integer, Long> entry : this.cacheTimeToLive.entrySet() )
+        {
+            this.lvm.setTimeToLive( entry.getKey().intValue(), entry.getValue().longValue() );
+        }
+
+        if ( this.maxCacheEntries > 0 )
+        {
+            this.lvm.setMaxCacheEntries( this.maxCacheEntries );
+        }
+
+        AnchorIndex anchorIndex = new AnchorIndex();
+
+        this.lvm.addLinkValidator( new FileLinkValidator( encoding, anchorIndex ) );
 
         if ( isOnline() )
         {
-            OnlineHTTPLinkValidator olv = new OnlineHTTPLinkValidator( http );
+            HTTPLinkValidator hlv;
+            if ( http != null && KeepAliveHTTPLinkValidator.BACKEND.equalsIgnoreCase( http.getBackend() ) )
+            {
+                hlv = new KeepAliveHTTPLinkValidator( http );
+            }
+            else
+            {
+                hlv = new OnlineHTTPLinkValidator( http );
+            }
+            hlv.setAnchorIndex( anchorIndex );
 
-            if ( this.baseURL != null )
+            if ( this.baseURL != null && shared == null )
             {
-                olv.setBaseURL( baseURL );
+                hlv.setBaseURL( baseURL );
             }
 
-            this.lvm.addLinkValidator( olv );
+            this.lvm.addLinkValidator( share( shared, hlv ) );
         }
         else
         {
             this.lvm.addLinkValidator( new OfflineHTTPLinkValidator() );
         }
 
-        this.lvm.addLinkValidator( new MailtoLinkValidator() );
+        this.lvm.addLinkValidator( new MailtoLinkValidator( mailDomainResolver ) );
     }
 
     /**
-     * Recurses through the given base directory and adds/checks
-     * files to the model that pass through the current filter.
-     *
-     * @param base the base directory to traverse.
+     * Closes the connections of the HTTP validators of this execution, unless they are shared with the other
+     * instances of the JVM.
      */
-    @SuppressWarnings( "unchecked" )
-    private void findAndCheckFiles( File base, LinkcheckModel model )
-        throws IOException
+    private void closeValidators()
     {
-        for ( File file : (List<File>) FileUtils.getFiles( base, getIncludedPages(), getExcludedPages() ) )
+        if ( this.sharedCache )
+        {
+            return;
+        }
+
+        for ( LinkValidator lv : this.lvm.getValidators() )
         {
-            checkFile( file, model );
+            if ( lv instanceof HTTPLinkValidator )
+            {
+                ( (HTTPLinkValidator) lv ).close();
+            }
         }
     }
 
-    private void checkFile( File file, LinkcheckModel model )
+    /**
+     * Returns the HTTP validator shared by the instances with the same HTTP settings, so they share its
+     * connections. The shared validators have no base URL, the links starting with '/' being made absolute
+     * before they are validated.
+     *
+     * @param shared the shared cache, or null if the cache is not shared.
+     * @param lv a new HTTP validator with the settings of this instance.
+     * @return the validator to use.
+     * @see #getValidatedLink(String, LinkValidationPlan)
+     */
+    private LinkValidator share( SharedLinkCache shared, LinkValidator lv )
     {
-        if ( LOG.isDebugEnabled() )
+        if ( shared == null )
         {
-            LOG.debug( " File - " + file );
+            return lv;
         }
 
-        String fileRelativePath = file.getAbsolutePath();
+        StringBuilder key = new StringBuilder( lv.getClass().getName() );
+        if ( this.http != null )
+        {
+            key.append( '|' ).append( http.getMethod() ).append( '|' ).append( http.isFollowRedirects() );
+            key.append( '|' ).append( http.getProxyHost() ).append( '|' ).append( http.getProxyPort() );
+            key.append( '|' ).append( http.getProxyUser() ).append( '|' ).append( http.getProxyPassword() );
+            key.append( '|' ).append( http.getProxyNtlmHost() ).append( '|' ).append( http.getProxyNtlmDomain() );
+            key.append( '|' ).append( http.getMaxConnections() ).append( '|' );
+            key.append( http.getMaxConnectionsPerHost() ).append( '|' ).append( http.getTimeout() );
+            key.append( '|' ).append( http.getRequestsPerSecond() ).append( '|' ).append( http.getMaxRetries() );
+            key.append( '|' ).append( http.getHttpClientParameters() );
+        }
 
-        if ( fileRelativePath.startsWith( this.basedir.getAbsolutePath() ) )
+        return shared.shareValidator( key.toString(), lv );
+    }
+
+    /**
+     * Returns the link to validate for a link of a page. With a shared cache, the links starting with '/' are
+     * prefixed with the base URL, as the shared validators don't know the base URL of this instance and the
+     * results are shared by all the instances.
+     *
+     * @param link a link of a page, not null.
+     * @param plan the plan, to check if the link is excluded.
+     * @return the link to validate.
+     */
+    private String getValidatedLink( String link, LinkValidationPlan plan )
+    {
+        if ( this.sharedCache && this.baseURL != null && link.startsWith( "/" ) && !plan.isExcluded( link ) )
         {
-            fileRelativePath = fileRelativePath.substring( this.basedir.getAbsolutePath().length() + 1 );
+            return this.baseURL + link;
         }
 
-        fileRelativePath = fileRelativePath.replace( '\\', '/' );
+        return link;
+    }
 
-        LinkcheckFile linkcheckFile = new LinkcheckFile();
-        linkcheckFile.setAbsolutePath( file.getAbsolutePath() );
-        linkcheckFile.setRelativePath( fileRelativePath );
+    /**
+     * Returns the page manifest file of the incremental mode, stored next to the cache file.
+     *
+     * @return the page manifest file, or null if not in incremental mode.
+     */
+    private File getPageManifestFile()
+    {
+        if ( !this.incremental )
+        {
+            return null;
+        }
+
+        if ( this.linkCheckCache == null )
+        {
+            LOG.warn( "The incremental mode needs a cache file, all files will be scanned." );
 
-        check( linkcheckFile );
+            return null;
+        }
 
-        model.addFile( linkcheckFile );
+        return new File( this.linkCheckCache.getPath() + ".pages" );
+    }
 
-        if ( ( model.getFiles().size() % 100 == 0 ) && LOG.isInfoEnabled() )
+    /**
+     * Returns the number of threads to use to scan the pages.
+     *
+     * @return the effective parallelism, at least <code>1</code>.
+     */
+    private int getParallelism()
+    {
+        if ( this.parallelism == 0 )
         {
-            LOG.info( "Found " + model.getFiles().size() + " files so far." );
+            return Runtime.getRuntime().availableProcessors();
         }
+
+        return this.parallelism;
     }
 
     /**
-     * Validates a linkcheck file.
+     * Recurses through the given base directory and adds/checks
+     * files to the model that pass through the current filter.
+     * <p>
+     * The links of all files are extracted first and added to a validation plan, which indexes them by resource.
+     * Then in online mode the external resources are validated concurrently, and finally the files are checked,
+     * each resource being validated only once whatever the number of links to it.
+     * The files are added to the model in the scan order, whatever the parallelism.
+     * The local links are checked against a snapshot of the files of the base directory, taken once.
+     * </p>
+     * <p>
+     * In incremental mode, the links of the files which didn't change since the previous run are read from the
+     * page manifest rather than extracted again. Their links are still validated, as their results depend on
+     * the other files and on the cache.
+     * </p>
      *
-     * @param linkcheckFile the linkcheckFile object to validate
+     * @param base the base directory to traverse.
+     * @param run the metrics of the execution.
+     * @param deadline the time after which the links are not validated anymore, 0 for none.
      */
-    private void check( LinkcheckFile linkcheckFile )
+    @SuppressWarnings( "unchecked" )
+    private void findAndCheckFiles( File base, LinkcheckModel model, final RunMetrics run, long deadline )
+        throws IOException, InterruptedException
     {
-        linkcheckFile.setSuccessful( 0 );
+        long start = System.currentTimeMillis();
 
-        linkcheckFile.setUnsuccessful( 0 );
+        List<File> files = (List<File>) FileUtils.getFiles( base, getIncludedPages(), getExcludedPages() );
 
-        if ( LOG.isDebugEnabled() )
+        SitePathIndex pathIndex = new SitePathIndex( base );
+        for ( LinkValidator lv : this.lvm.getValidators() )
         {
-            LOG.debug( "Validating " + linkcheckFile.getRelativePath() );
+            if ( lv instanceof FileLinkValidator )
+            {
+                ( (FileLinkValidator) lv ).setPathIndex( pathIndex );
+            }
         }
 
-        final Set<String> hrefs;
+        int threads = Math.min( getParallelism(), files.size() );
 
-        try
+        if ( LOG.isDebugEnabled() )
         {
-            hrefs = LinkMatcher.match( new File( linkcheckFile.getAbsolutePath() ), encoding );
+            LOG.debug( "Scanning " + files.size() + " files with " + Math.max( 1, threads ) + " threads." );
         }
-        catch ( Throwable t )
-        {
-            // We catch Throwable, because there is a chance that the domReader will throw
-            // a stack overflow exception for some files
 
-            LOG.error( "Received: [" + t + "] in page [" + linkcheckFile.getRelativePath() + "]" );
-            LOG.debug( t.getMessage(), t );
+        final LinkValidationPlan plan = this.lvm.createPlan();
+        plan.setDeadline( deadline );
 
-            LinkcheckFileResult lcr = new LinkcheckFileResult();
+        File manifestFile = getPageManifestFile();
+        final PageManifest previousManifest =
+            ( manifestFile == null ) ? null : PageManifest.load( manifestFile, encoding );
+        final PageManifest manifest = ( manifestFile == null ) ? null : new PageManifest( encoding );
 
-            lcr.setStatus( "PARSE FAILURE" );
+        ExecutorService executor = ( threads > 1 ) ? Executors.newFixedThreadPool( threads ) : null;
+        try
+        {
+            List<Callable<ScannedFile>> scans = new ArrayList<Callable<ScannedFile>>( files.size() );
+            for ( final File file : files )
+            {
+                scans.add( new Callable<ScannedFile>()
+                {
+                    public ScannedFile call()
+                    {
+                        return scanFile( file, plan, previousManifest, manifest, run );
+                    }
+                } );
+            }
 
-            lcr.setTarget( "N/A" );
+            List<ScannedFile> scannedFiles = invokeInOrder( executor, scans );
 
-            linkcheckFile.addResult( lcr );
+            if ( manifest != null )
+            {
+                if ( LOG.isInfoEnabled() )
+                {
+                    int reused = 0;
+                    for ( ScannedFile scannedFile : scannedFiles )
+                    {
+                        reused += scannedFile.unchanged ? 1 : 0;
+                    }
 
-            return;
-        }
+                    LOG.info( "Reused the links of " + reused + " unchanged files out of " + scannedFiles.size()
+                        + "." );
+                }
 
-        LinkcheckFileResult lcr;
-        LinkValidationItem lvi;
-        LinkValidationResult result;
+                manifest.save( manifestFile );
+            }
 
-        for ( String href : hrefs )
+            validateAndCheckFiles( plan, executor, threads, scannedFiles, start, model, run );
+        }
+        finally
         {
-            lcr = new LinkcheckFileResult();
-            lvi = new LinkValidationItem( new File( linkcheckFile.getAbsolutePath() ), href );
-            result = lvm.validateLink( lvi );
-            lcr.setTarget( href );
-            lcr.setErrorMessage( result.getErrorMessage() );
-
-            switch ( result.getStatus() )
+            if ( executor != null )
             {
-                case LinkcheckFileResult.VALID_LEVEL:
-                    linkcheckFile.setSuccessful( linkcheckFile.getSuccessful() + 1 );
+                executor.shutdownNow();
+            }
+        }
+    }
 
-                    lcr.setStatus( LinkcheckFileResult.VALID );
+    /**
+     * Crawls the site of the crawl URL, then validates the links of its pages.
+     *
+     * @param model the model, not null.
+     * @param run the metrics of the execution.
+     * @param deadline the time after which the links are not validated anymore, 0 for none.
+     * @throws IOException if the crawl URL is invalid, or if the sitemap or the report can't be read or written.
+     * @throws InterruptedException if interrupted while waiting for the pages or the checks.
+     * @see SiteCrawler
+     */
+    private void crawlAndCheckSite( LinkcheckModel model, RunMetrics run, long deadline )
+        throws IOException, InterruptedException
+    {
+        long start = System.currentTimeMillis();
 
-                    // At some point we won't want to store valid links. The tests require that we do at present.
-                    linkcheckFile.addResult( lcr );
+        LinkValidationPlan plan = this.lvm.createPlan();
+        plan.setDeadline( deadline );
 
-                    break;
-                case LinkcheckFileResult.ERROR_LEVEL:
-                    boolean ignoredError = false;
-                    if ( result instanceof HTTPLinkValidationResult )
+        SiteCrawler crawler =
+            new SiteCrawler( this.crawlURL, ( this.http == null ) ? new HttpBean() : this.http, encoding,
+                             getParallelism(), plan );
+
+        Map<String, SiteCrawler.Page> pages;
+        try
+        {
+            pages = crawler.crawl();
+        }
+        finally
+        {
+            crawler.close();
+        }
+
+        List<ScannedFile> scannedFiles = new ArrayList<ScannedFile>();
+        for ( SiteCrawler.Page page : pages.values() )
+        {
+            if ( page.getHrefs() != null )
+            {
+                scannedFiles.add( scanPage( page, pages, crawler, plan, run ) );
+            }
+        }
+
+        if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( "Crawled " + pages.size() + " resources, " + scannedFiles.size() + " pages." );
+        }
+
+        int threads = Math.min( getParallelism(), scannedFiles.size() );
+
+        ExecutorService executor = ( threads > 1 ) ? Executors.newFixedThreadPool( threads ) : null;
+        try
+        {
+            validateAndCheckFiles( plan, executor, threads, scannedFiles, start, model, run );
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Validates the links of the plan, then checks the scanned files.
+     *
+     * @param plan the plan of the links of the scanned files.
+     * @param executor the executor, or null to check the files sequentially.
+     * @param threads the number of threads of the executor.
+     * @param scannedFiles the scanned files.
+     * @param start the start of the scan.
+     * @param model the model, not null.
+     * @param run the metrics of the execution.
+     * @throws IOException if the report can't be written.
+     * @throws InterruptedException if interrupted while waiting for the checks.
+     */
+    private void validateAndCheckFiles( LinkValidationPlan plan, ExecutorService executor, int threads,
+                                        List<ScannedFile> scannedFiles, long start, LinkcheckModel model,
+                                        RunMetrics run )
+        throws IOException, InterruptedException
+    {
+        if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( "Found " + plan.getTotalLinks() + " links, " + plan.getUniqueLinks() + " unique." );
+        }
+
+        model.setTotalLinks( plan.getTotalLinks() );
+        model.setUniqueLinks( plan.getUniqueLinks() );
+
+        run.metrics.setPages( scannedFiles.size() );
+        run.metrics.setLinks( plan.getTotalLinks() );
+        run.metrics.setScanTime( System.currentTimeMillis() - start );
+
+        run.validationStart = System.currentTimeMillis();
+
+        if ( isOnline() || this.mailDomainResolver != null )
+        {
+            HttpBean bean = ( this.http == null ) ? new HttpBean() : this.http;
+
+            plan.validateExternalLinks( bean.getMaxConnections(), bean.getMaxConnectionsPerHost(),
+                                        bean.isVirtualThreads(), bean.getValidationTimeout() );
+        }
+
+        if ( this.streamingReport )
+        {
+            streamFiles( executor, threads, scannedFiles, model, run );
+        }
+        else
+        {
+            checkFiles( executor, threads, scannedFiles, model, null );
+        }
+
+        run.metrics.setValidationTime( System.currentTimeMillis() - run.validationStart );
+
+        if ( plan.getExpiredLinks() > 0 && LOG.isWarnEnabled() )
+        {
+            LOG.warn( plan.getExpiredLinks() + " links could not be validated within the time limit,"
+                + " they are reported with an unknown status." );
+        }
+    }
+
+    /**
+     * Runs the given tasks and returns their results in the order of the tasks.
+     *
+     * @param executor the executor to use, or null to run the tasks in the current thread.
+     * @param tasks the tasks to run, which don't throw checked exceptions.
+     * @return the results of the tasks.
+     * @throws InterruptedException if interrupted while waiting for the tasks.
+     */
+    private static <T> List<T> invokeInOrder( ExecutorService executor, List<Callable<T>> tasks )
+        throws InterruptedException
+    {
+        List<T> results = new ArrayList<T>( tasks.size() );
+
+        try
+        {
+            if ( executor == null )
+            {
+                for ( Callable<T> task : tasks )
+                {
+                    results.add( task.call() );
+                }
+            }
+            else
+            {
+                for ( Future<T> future : executor.invokeAll( tasks ) )
+                {
+                    results.add( future.get() );
+                }
+            }
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IllegalStateException( "Unable to check file: " + e.getCause(), e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( "Unable to check file: " + e, e );
+        }
+
+        return results;
+    }
+
+    /**
+     * Waits for the result of a task.
+     *
+     * @param future the task.
+     * @return the result of the task.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static <T> T getResult( Future<T> future )
+        throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IllegalStateException( "Unable to check file: " + e.getCause(), e.getCause() );
+        }
+    }
+
+    /**
+     * Checks the scanned files and writes them to the report output as soon as they are checked,
+     * without adding them to the model.
+     *
+     * @param executor the executor, or null to check the files sequentially.
+     * @param threads the number of threads of the executor.
+     * @param scannedFiles the scanned files, released once checked.
+     * @param model the model, not null.
+     * @param run the metrics of the execution, written at the end of the report.
+     * @throws IOException if the report can't be written.
+     * @throws InterruptedException if interrupted while waiting for the checks.
+     */
+    private void streamFiles( ExecutorService executor, int threads, List<ScannedFile> scannedFiles,
+                              LinkcheckModel model, RunMetrics run )
+        throws IOException, InterruptedException
+    {
+        if ( this.reportOutput == null )
+        {
+            checkFiles( executor, threads, scannedFiles, model, null );
+            return;
+        }
+
+        File dir = this.reportOutput.getParentFile();
+        if ( dir != null )
+        {
+            dir.mkdirs();
+        }
+
+        Writer writer = null;
+        try
+        {
+            writer = WriterFactory.newXmlWriter( this.reportOutput );
+
+            LinkcheckReportWriter report = new LinkcheckReportWriter( writer );
+            report.startReport( model );
+            checkFiles( executor, threads, scannedFiles, model, report );
+
+            run.metrics.setValidationTime( System.currentTimeMillis() - run.validationStart );
+            run.collect();
+
+            report.endReport( model );
+        }
+        catch ( IllegalStateException e )
+        {
+            IOException ioe =
+                new IOException( e.getMessage() + " Maybe try to specify an other encoding instead of '"
+                    + encoding + "'." );
+            ioe.initCause( e );
+            throw ioe;
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * Checks the scanned files, and adds them in the scan order to the model, or to the report in streaming mode.
+     * At most a few files per thread are checked ahead of the next file to add, so the checked files which are
+     * streamed never pile up in memory.
+     *
+     * @param executor the executor, or null to check the files sequentially.
+     * @param threads the number of threads of the executor.
+     * @param scannedFiles the scanned files, released once checked.
+     * @param model the model, not null.
+     * @param report the report to stream the checked files to, or null to add them to the model.
+     * @throws IOException if the report can't be written.
+     * @throws InterruptedException if interrupted while waiting for the checks.
+     */
+    private void checkFiles( ExecutorService executor, int threads, List<ScannedFile> scannedFiles,
+                             LinkcheckModel model, LinkcheckReportWriter report )
+        throws IOException, InterruptedException
+    {
+        LinkedList<Future<LinkcheckFile>> pending = new LinkedList<Future<LinkcheckFile>>();
+        int count = 0;
+
+        for ( int i = 0; i < scannedFiles.size(); i++ )
+        {
+            final ScannedFile scannedFile = scannedFiles.set( i, null );
+
+            if ( executor == null )
+            {
+                check( scannedFile );
+
+                addFile( model, report, scannedFile.linkcheckFile, ++count );
+
+                continue;
+            }
+
+            pending.add( executor.submit( new Callable<LinkcheckFile>()
+            {
+                public LinkcheckFile call()
+                {
+                    check( scannedFile );
+
+                    return scannedFile.linkcheckFile;
+                }
+            } ) );
+
+            if ( pending.size() >= threads * 4 )
+            {
+                addFile( model, report, getResult( pending.removeFirst() ), ++count );
+            }
+        }
+
+        while ( !pending.isEmpty() )
+        {
+            addFile( model, report, getResult( pending.removeFirst() ), ++count );
+        }
+    }
+
+    /**
+     * Adds a checked file to the model, or writes it to the report.
+     *
+     * @param model the model, not null.
+     * @param report the report to stream the file to, or null to add it to the model.
+     * @param linkcheckFile the checked file, not null.
+     * @param count the number of files checked so far.
+     * @throws IOException if the report can't be written.
+     */
+    private void addFile( LinkcheckModel model, LinkcheckReportWriter report, LinkcheckFile linkcheckFile,
+                          int count )
+        throws IOException
+    {
+        if ( report != null )
+        {
+            report.writeFile( linkcheckFile );
+        }
+        else if ( !this.streamingReport )
+        {
+            model.addFile( linkcheckFile );
+        }
+
+        if ( ( count % 100 == 0 ) && LOG.isInfoEnabled() )
+        {
+            LOG.info( "Found " + count + " files so far." );
+        }
+    }
+
+    /**
+     * Extracts the links of a single file and adds them to the plan.
+     * This may be called concurrently for different files.
+     *
+     * @param file the file to scan.
+     * @param plan the validation plan.
+     * @param previousManifest the manifest of the previous run, or null if not in incremental mode.
+     * @param manifest the manifest of this run, or null if not in incremental mode.
+     * @param run the metrics of the execution.
+     * @return the scanned file.
+     */
+    private ScannedFile scanFile( File file, LinkValidationPlan plan, PageManifest previousManifest,
+                                  PageManifest manifest, RunMetrics run )
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( " File - " + file );
+        }
+
+        String fileRelativePath = file.getAbsolutePath();
+
+        if ( fileRelativePath.startsWith( this.basedir.getAbsolutePath() ) )
+        {
+            fileRelativePath = fileRelativePath.substring( this.basedir.getAbsolutePath().length() + 1 );
+        }
+
+        fileRelativePath = fileRelativePath.replace( '\\', '/' );
+
+        LinkcheckFile linkcheckFile = new LinkcheckFile();
+        linkcheckFile.setAbsolutePath( file.getAbsolutePath() );
+        linkcheckFile.setRelativePath( fileRelativePath );
+
+        String[] links = null;
+        PageManifest.Page page = null;
+        boolean unchanged = false;
+        try
+        {
+            if ( previousManifest != null )
+            {
+                page = previousManifest.lookup( fileRelativePath, file );
+                links = page.getHrefs();
+                unchanged = ( links != null );
+            }
+
+            if ( links == null )
+            {
+                long start = System.nanoTime();
+
+                Set<String> hrefs = LinkMatcher.match( file, encoding );
+                links = hrefs.toArray( new String[hrefs.size()] );
+
+                long parseTime = System.nanoTime() - start;
+                run.parsed( file.length(), parseTime );
+                if ( this.reportMetrics )
+                {
+                    linkcheckFile.setParseTime( parseTime / 1000000.0 );
+                }
+
+                if ( page != null )
+                {
+                    page = page.withHrefs( links );
+                }
+            }
+        }
+        catch ( Throwable t )
+        {
+            // We catch Throwable, because there is a chance that the domReader will throw
+            // a stack overflow exception for some files
+
+            LOG.error( "Received: [" + t + "] in page [" + linkcheckFile.getRelativePath() + "]" );
+            LOG.debug( t.getMessage(), t );
+
+            LinkcheckFileResult lcr = new LinkcheckFileResult();
+
+            lcr.setStatus( "PARSE FAILURE" );
+
+            lcr.setTarget( "N/A" );
+
+            linkcheckFile.addResult( lcr );
+
+            return new ScannedFile( linkcheckFile, null, null, false );
+        }
+
+        if ( manifest != null )
+        {
+            manifest.put( fileRelativePath, page );
+        }
+
+        LinkValidationPlan.Resource[] resources = new LinkValidationPlan.Resource[links.length];
+
+        for ( int i = 0; i < links.length; i++ )
+        {
+            resources[i] = plan.addLink( new LinkValidationItem( file, getValidatedLink( links[i], plan ) ) );
+        }
+
+        return new ScannedFile( linkcheckFile, links, resources, unchanged );
+    }
+
+    /**
+     * Adds the links of a crawled page to the plan. The links to the site get the result of their resource in
+     * the crawl, the other ones are validated as usual.
+     *
+     * @param page the crawled HTML page.
+     * @param pages the crawled resources by URL.
+     * @param crawler the crawler.
+     * @param plan the validation plan.
+     * @param run the metrics of the execution.
+     * @return the scanned page.
+     */
+    private ScannedFile scanPage( SiteCrawler.Page page, Map<String, SiteCrawler.Page> pages, SiteCrawler crawler,
+                                  LinkValidationPlan plan, RunMetrics run )
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( " Page - " + page.getUrl() );
+        }
+
+        LinkcheckFile linkcheckFile = new LinkcheckFile();
+        linkcheckFile.setAbsolutePath( page.getUrl() );
+        linkcheckFile.setRelativePath( crawler.getRelativePath( page.getUrl() ) );
+
+        run.parsed( page.getLength(), page.getParseTime() );
+        if ( this.reportMetrics )
+        {
+            linkcheckFile.setParseTime( page.getParseTime() / 1000000.0 );
+        }
+
+        File source = new File( linkcheckFile.getRelativePath() );
+        String[] links = page.getHrefs();
+        LinkValidationPlan.Resource[] resources = new LinkValidationPlan.Resource[links.length];
+
+        for ( int i = 0; i < links.length; i++ )
+        {
+            URL url = SiteCrawler.resolve( page.getBase(), links[i] );
+
+            if ( url == null )
+            {
+                resources[i] = plan.addLink( new LinkValidationItem( source, links[i] ) );
+            }
+            else if ( !crawler.isSameOrigin( url ) )
+            {
+                resources[i] = plan.addLink( new LinkValidationItem( source, url.toExternalForm() ) );
+            }
+            else
+            {
+                SiteCrawler.Page target = pages.get( SiteCrawler.withoutFragment( url ) );
+
+                resources[i] = plan.addLink( new LinkValidationItem( source, url.toExternalForm() ),
+                                             url.toExternalForm(), getCrawlResult( target, url.getRef() ) );
+            }
+        }
+
+        return new ScannedFile( linkcheckFile, links, resources, false );
+    }
+
+    /**
+     * Returns the result of a link to the crawled site.
+     *
+     * @param target the crawled resource of the link, or null if it wasn't crawled.
+     * @param anchor the anchor of the link, or null.
+     * @return the result, not persistent.
+     */
+    private static LinkValidationResult getCrawlResult( SiteCrawler.Page target, String anchor )
+    {
+        if ( target == null )
+        {
+            return NOT_CRAWLED;
+        }
+
+        int code = target.getStatusCode();
+        if ( code == 0 )
+        {
+            return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, target.getMessage() );
+        }
+
+        if ( code >= HttpStatus.SC_BAD_REQUEST )
+        {
+            return new HTTPLinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, code, target.getMessage() );
+        }
+
+        if ( code >= HttpStatus.SC_MULTIPLE_CHOICES || code < HttpStatus.SC_OK )
+        {
+            return new HTTPLinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, false, code,
+                                                 target.getMessage() );
+        }
+
+        if ( anchor != null && anchor.length() > 0 && target.getAnchors() != null
+            && !target.getAnchors().contains( anchor ) )
+        {
+            return new HTTPLinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, code,
+                                                 "Missing anchor '" + anchor + "'" );
+        }
+
+        return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, code, target.getMessage() );
+    }
+
+    /**
+     * Validates a linkcheck file. This may be called concurrently for different files.
+     *
+     * @param scannedFile the scanned file to validate
+     */
+    private void check( ScannedFile scannedFile )
+    {
+        LinkcheckFile linkcheckFile = scannedFile.linkcheckFile;
+
+        linkcheckFile.setSuccessful( 0 );
+
+        linkcheckFile.setUnsuccessful( 0 );
+
+        if ( scannedFile.hrefs == null )
+        {
+            return;
+        }
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "Validating " + linkcheckFile.getRelativePath() );
+        }
+
+        LinkcheckFileResult lcr;
+        LinkValidationResult result;
+
+        for ( int i = 0; i < scannedFile.hrefs.length; i++ )
+        {
+            lcr = new LinkcheckFileResult();
+            result = scannedFile.resources[i].getResult();
+            lcr.setTarget( scannedFile.hrefs[i] );
+            lcr.setErrorMessage( result.getErrorMessage() );
+            if ( result instanceof HTTPLinkValidationResult )
+            {
+                lcr.setRetries( ( (HTTPLinkValidationResult) result ).getRetries() );
+            }
+
+            switch ( result.getStatus() )
+            {
+                case LinkcheckFileResult.VALID_LEVEL:
+                    linkcheckFile.setSuccessful( linkcheckFile.getSuccessful() + 1 );
+
+                    lcr.setStatus( LinkcheckFileResult.VALID );
+
+                    break;
+                case LinkcheckFileResult.ERROR_LEVEL:
+                    boolean ignoredError = false;
+                    if ( result instanceof HTTPLinkValidationResult )
                     {
                         HTTPLinkValidationResult httpResult = (HTTPLinkValidationResult) result;
 
@@ -544,8 +1433,6 @@ public final class DefaultLinkCheck
 
                     lcr.setStatus( ignoredError ? LinkcheckFileResult.VALID : LinkcheckFileResult.ERROR );
 
-                    linkcheckFile.addResult( lcr );
-
                     break;
                 case LinkcheckFileResult.WARNING_LEVEL:
                     boolean ignoredWarning = false;
@@ -573,8 +1460,6 @@ public final class DefaultLinkCheck
 
                     lcr.setStatus( ignoredWarning ? LinkcheckFileResult.VALID : LinkcheckFileResult.WARNING );
 
-                    linkcheckFile.addResult( lcr );
-
                     break;
                 case LinkcheckFileResult.UNKNOWN_LEVEL:
                 default:
@@ -582,10 +1467,14 @@ public final class DefaultLinkCheck
 
                     lcr.setStatus( LinkcheckFileResult.UNKNOWN );
 
-                    linkcheckFile.addResult( lcr );
-
                     break;
             }
+
+            // valid links are only counted if they are not reported
+            if ( this.reportValidLinks || !LinkcheckFileResult.VALID.equals( lcr.getStatus() ) )
+            {
+                linkcheckFile.addResult( lcr );
+            }
         }
     }
 
@@ -658,4 +1547,177 @@ public final class DefaultLinkCheck
         }
         return result;
     }
+
+    /**
+     * The metrics of an execution, the parse times being summed concurrently by the threads scanning the files.
+     */
+    private static class RunMetrics
+    {
+        /** The metrics, completed by {@link #collect()}. */
+        private final LinkcheckMetrics metrics = new LinkcheckMetrics();
+
+        /** The manager. */
+        private final LinkValidatorManager manager;
+
+        /** The cache hits and misses of each validator before the execution. */
+        private final Map<LinkValidator, long[]> initialCounts = new HashMap<LinkValidator, long[]>();
+
+        /** The metrics of the HTTP requests of this execution. */
+        private final HostMetrics hostMetrics = new HostMetrics();
+
+        /** The number of bytes of the parsed files. */
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        /** The total parse time, in nanoseconds. */
+        private final AtomicLong parseTime = new AtomicLong();
+
+        /** The longest parse time, in nanoseconds. */
+        private final AtomicLong maxParseTime = new AtomicLong();
+
+        /** The start of the validation phase. */
+        private long validationStart;
+
+        RunMetrics( LinkValidatorManager manager )
+        {
+            this.manager = manager;
+
+            // in the manager of this execution, the HTTP validators may be shared with other executions
+            manager.setHostMetrics( hostMetrics );
+
+            for ( LinkValidator lv : manager.getValidators() )
+            {
+                initialCounts.put( lv, new long[] { manager.getCacheHits( lv ), manager.getCacheMisses( lv ) } );
+            }
+        }
+
+        /**
+         * Records a parsed file. This may be called concurrently.
+         *
+         * @param length the length of the file.
+         * @param time the time spent parsing it, in nanoseconds.
+         */
+        void parsed( long length, long time )
+        {
+            bytesRead.addAndGet( length );
+            parseTime.addAndGet( time );
+
+            long max = maxParseTime.get();
+            while ( time > max && !maxParseTime.compareAndSet( max, time ) )
+            {
+                max = maxParseTime.get();
+            }
+        }
+
+        /**
+         * Copies the counters of the scan, of the validators and of the hosts to the metrics.
+         */
+        void collect()
+        {
+            metrics.setBytesRead( bytesRead.get() );
+            metrics.setParseTime( parseTime.get() / 1000000.0 );
+            metrics.setMaxParseTime( maxParseTime.get() / 1000000.0 );
+
+            List<LinkcheckValidatorMetrics> validators = new ArrayList<LinkcheckValidatorMetrics>();
+            for ( LinkValidator lv : manager.getValidators() )
+            {
+                long[] initial = initialCounts.get( lv );
+
+                LinkcheckValidatorMetrics validator = new LinkcheckValidatorMetrics();
+                validator.setName( lv.getClass().getName() );
+                validator.setCacheHits( manager.getCacheHits( lv ) - ( ( initial == null ) ? 0 : initial[0] ) );
+                validator.setCacheMisses( manager.getCacheMisses( lv ) - ( ( initial == null ) ? 0 : initial[1] ) );
+                validators.add( validator );
+            }
+            metrics.setValidators( validators );
+
+            long[] bounds = HostMetrics.getLatencyBounds();
+            int retries = 0;
+
+            List<LinkcheckHostMetrics> hosts = new ArrayList<LinkcheckHostMetrics>();
+            for ( String name : hostMetrics.getHosts() )
+            {
+                LinkcheckHostMetrics host = new LinkcheckHostMetrics();
+                host.setHost( name );
+                host.setRequests( hostMetrics.getRequests( name ) );
+                host.setRetries( hostMetrics.getRetries( name ) );
+                host.setTime( hostMetrics.getTime( name ) );
+
+                long[] counts = hostMetrics.getLatencies( name );
+                for ( int i = 0; i < counts.length; i++ )
+                {
+                    if ( counts[i] > 0 )
+                    {
+                        LinkcheckLatency latency = new LinkcheckLatency();
+                        latency.setMaxTime( ( i < bounds.length ) ? bounds[i] : -1 );
+                        latency.setCount( (int) counts[i] );
+                        host.addLatency( latency );
+                    }
+                }
+
+                retries += host.getRetries();
+                hosts.add( host );
+            }
+            metrics.setHosts( hosts );
+            metrics.setRetries( retries );
+        }
+
+        /** {@inheritDoc} */
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+
+            sb.append( metrics.getPages() ).append( " pages, " );
+            sb.append( metrics.getBytesRead() ).append( " bytes read, " );
+            sb.append( metrics.getLinks() ).append( " links, " );
+            sb.append( "parse time " ).append( metrics.getParseTime() ).append( " ms (max " );
+            sb.append( metrics.getMaxParseTime() ).append( " ms), " );
+            sb.append( metrics.getRetries() ).append( " retries; cache load " );
+            sb.append( metrics.getCacheLoadTime() ).append( " ms, scan " );
+            sb.append( metrics.getScanTime() ).append( " ms, validation " );
+            sb.append( metrics.getValidationTime() ).append( " ms, report " );
+            sb.append( metrics.getReportTime() ).append( " ms, cache save " );
+            sb.append( metrics.getCacheSaveTime() ).append( " ms" );
+
+            for ( LinkcheckValidatorMetrics validator : metrics.getValidators() )
+            {
+                sb.append( "; " ).append( validator.getName() ).append( ": " );
+                sb.append( validator.getCacheHits() ).append( " hits, " );
+                sb.append( validator.getCacheMisses() ).append( " misses" );
+            }
+
+            for ( LinkcheckHostMetrics host : metrics.getHosts() )
+            {
+                sb.append( "; " ).append( host.getHost() ).append( ": " );
+                sb.append( host.getRequests() ).append( " requests in " );
+                sb.append( host.getTime() ).append( " ms" );
+            }
+
+            return sb.toString();
+        }
+    }
+
+    /** A file with the links found in it. */
+    private static class ScannedFile
+    {
+        /** The file in the model. */
+        private final LinkcheckFile linkcheckFile;
+
+        /** The links, null if the file couldn't be parsed. */
+        private final String[] hrefs;
+
+        /** The resources of the links in the validation plan. */
+        private final LinkValidationPlan.Resource[] resources;
+
+        /** Whether the links were read from the page manifest. */
+        private final boolean unchanged;
+
+        ScannedFile( LinkcheckFile linkcheckFile, String[] hrefs, LinkValidationPlan.Resource[] resources,
+                     boolean unchanged )
+        {
+            this.linkcheckFile = linkcheckFile;
+            this.hrefs = hrefs;
+            this.resources = resources;
+            this.unchanged = unchanged;
+        }
+    }
 }
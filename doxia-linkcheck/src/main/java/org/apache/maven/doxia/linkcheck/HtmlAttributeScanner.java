@@ -0,0 +1,641 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * A single pass HTML scanner which reports the values of some attributes of some elements.
+ * <p>
+ * The markup is read from a {@link Reader} in small chunks and is never held in memory as a whole:
+ * comments are skipped while reading, and a String is only created for the values of the wanted attributes.
+ * Encoded markup is scanned byte by byte when possible, so only these values are decoded.
+ * Element and attribute names are matched case insensitively, attribute values may be double quoted,
+ * single quoted or unquoted.
+ * </p>
+ * A scanner only holds its configuration, so the same instance can be used concurrently by several threads.
+ *
+ * @since 1.3
+ */
+public final class HtmlAttributeScanner
+{
+    /** The size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    // scanner states
+
+    private static final int TEXT = 0;
+
+    private static final int TAG_OPEN = 1;
+
+    private static final int BANG = 2;
+
+    private static final int BANG_DASH = 3;
+
+    private static final int COMMENT = 4;
+
+    private static final int SKIP_TAG = 5;
+
+    private static final int TAG_NAME = 6;
+
+    private static final int BEFORE_ATTRIBUTE = 7;
+
+    private static final int ATTRIBUTE_NAME = 8;
+
+    private static final int AFTER_ATTRIBUTE_NAME = 9;
+
+    private static final int BEFORE_VALUE = 10;
+
+    private static final int DOUBLE_QUOTED_VALUE = 11;
+
+    private static final int SINGLE_QUOTED_VALUE = 12;
+
+    private static final int UNQUOTED_VALUE = 13;
+
+    private static final int STOPPED = 14;
+
+    /**
+     * Receives the attributes found by the scanner.
+     */
+    public interface Handler
+    {
+        /**
+         * Called for each wanted attribute of a wanted element.
+         *
+         * @param element the element name, as given to the scanner, or <code>null</code> if the scanner accepts
+         * any element or if the attribute is reported for any element.
+         * @param attribute the attribute name, as given to the scanner.
+         * @param value the raw attribute value, never null.
+         * @return <code>true</code> to continue scanning, <code>false</code> to stop.
+         */
+        boolean attribute( String element, String attribute, String value );
+    }
+
+    /** The lower case element names, or null for any element. */
+    private final String[] elements;
+
+    /** The lower case attribute names. */
+    private final String[] attributes;
+
+    /** The lower case names of the attributes reported for any element, or null. */
+    private final String[] globalAttributes;
+
+    /**
+     * Constructor.
+     *
+     * @param elements the lower case names of the elements to report, or <code>null</code> for any element.
+     * @param attributes the lower case names of the attributes to report, not null.
+     */
+    public HtmlAttributeScanner( String[] elements, String[] attributes )
+    {
+        this( elements, attributes, null );
+    }
+
+    /**
+     * Constructor for a scanner reporting, in the same pass, some attributes of some elements and some attributes
+     * of any element, e.g. the links and the anchors of a page.
+     *
+     * @param elements the lower case names of the elements to report, or <code>null</code> for any element.
+     * @param attributes the lower case names of the attributes to report, not null.
+     * @param globalAttributes the lower case names of the attributes to report for any element, or
+     * <code>null</code> for none. They are reported with a <code>null</code> element if the element is not
+     * one of the given elements.
+     */
+    public HtmlAttributeScanner( String[] elements, String[] attributes, String[] globalAttributes )
+    {
+        if ( attributes == null )
+        {
+            throw new NullPointerException( "attributes can't be null" );
+        }
+
+        this.elements = ( elements == null ) ? null : elements.clone();
+        this.attributes = attributes.clone();
+        this.globalAttributes = ( globalAttributes == null ) ? null : globalAttributes.clone();
+    }
+
+    /**
+     * Scans the given markup. The reader is not closed.
+     *
+     * @param reader the markup, not null.
+     * @param handler the handler receiving the wanted attributes, not null.
+     * @throws IOException if the markup can't be read.
+     */
+    public void scan( Reader reader, Handler handler )
+        throws IOException
+    {
+        Scan scan = new Scan( handler, null );
+        char[] buffer = new char[BUFFER_SIZE];
+
+        int length;
+        while ( ( length = reader.read( buffer ) ) != -1 )
+        {
+            if ( !scan( scan, buffer, null, length ) )
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scans the given encoded markup. The stream is not closed.
+     * <p>
+     * If the encoding is a superset of ASCII in which ASCII bytes always stand for ASCII characters, as UTF-8
+     * and the ISO-8859 encodings, the bytes are scanned as they are and only the values of the wanted attributes
+     * are decoded. Otherwise the markup is decoded as a whole.
+     * </p>
+     *
+     * @param in the markup, not null.
+     * @param encoding the encoding of the markup, not null.
+     * @param handler the handler receiving the wanted attributes, not null.
+     * @throws IOException if the markup can't be read, or if the encoding is not supported.
+     */
+    public void scan( InputStream in, String encoding, Handler handler )
+        throws IOException
+    {
+        Charset charset = toCharset( encoding );
+
+        if ( !isAsciiCompatible( charset ) )
+        {
+            scan( new InputStreamReader( in, charset ), handler );
+            return;
+        }
+
+        Scan scan = new Scan( handler, charset );
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int length;
+        while ( ( length = in.read( buffer ) ) != -1 )
+        {
+            if ( !scan( scan, null, buffer, length ) )
+            {
+                return;
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Private methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Scans a buffer of markup, the state of the scan being kept from one buffer to the next.
+     *
+     * @param scan the state of the scan.
+     * @param chars the characters to scan, or null to scan the bytes.
+     * @param bytes the bytes to scan if there are no characters.
+     * @param length the number of characters or bytes to scan.
+     * @return <code>false</code> if the handler stopped the scan.
+     */
+    private boolean scan( Scan scan, char[] chars, byte[] bytes, int length )
+    {
+        int state = scan.state;
+        int dashes = scan.dashes;
+        final boolean acceptAny = ( elements == null );
+        String element = scan.element;
+        boolean elementWanted = scan.elementWanted;
+        String attribute = scan.attribute;
+
+        loop:
+        for ( int i = 0; i < length; i++ )
+        {
+            final char c = ( chars != null ) ? chars[i] : (char) ( bytes[i] & 0xFF );
+
+            switch ( state )
+            {
+                case TEXT:
+                    if ( c == '<' )
+                    {
+                        state = TAG_OPEN;
+                    }
+                    break;
+
+                case TAG_OPEN:
+                    if ( c == '!' )
+                    {
+                        state = BANG;
+                    }
+                    else if ( c == '/' || c == '?' )
+                    {
+                        // end tags and processing instructions carry no wanted attribute
+                        state = SKIP_TAG;
+                    }
+                    else if ( isLetter( c ) )
+                    {
+                        scan.name.setLength( 0 );
+                        scan.name.append( toLowerCase( c ) );
+                        state = TAG_NAME;
+                    }
+                    else if ( c != '<' )
+                    {
+                        state = TEXT;
+                    }
+                    break;
+
+                case BANG:
+                    state = ( c == '-' ) ? BANG_DASH : ( c == '>' ) ? TEXT : SKIP_TAG;
+                    break;
+
+                case BANG_DASH:
+                    if ( c == '-' )
+                    {
+                        dashes = 0;
+                        state = COMMENT;
+                    }
+                    else
+                    {
+                        state = ( c == '>' ) ? TEXT : SKIP_TAG;
+                    }
+                    break;
+
+                case COMMENT:
+                    if ( c == '-' )
+                    {
+                        dashes++;
+                    }
+                    else
+                    {
+                        if ( c == '>' && dashes >= 2 )
+                        {
+                            state = TEXT;
+                        }
+                        dashes = 0;
+                    }
+                    break;
+
+                case SKIP_TAG:
+                    if ( c == '>' )
+                    {
+                        state = TEXT;
+                    }
+                    break;
+
+                case TAG_NAME:
+                    if ( isWhitespace( c ) || c == '/' || c == '>' )
+                    {
+                        element = acceptAny ? null : lookup( scan.name, elements );
+                        elementWanted = acceptAny || element != null;
+                        state = ( c == '>' ) ? TEXT : BEFORE_ATTRIBUTE;
+                    }
+                    else
+                    {
+                        scan.name.append( toLowerCase( c ) );
+                    }
+                    break;
+
+                case BEFORE_ATTRIBUTE:
+                    if ( c == '>' )
+                    {
+                        state = TEXT;
+                    }
+                    else if ( !isWhitespace( c ) && c != '/' )
+                    {
+                        scan.name.setLength( 0 );
+                        scan.name.append( toLowerCase( c ) );
+                        state = ATTRIBUTE_NAME;
+                    }
+                    break;
+
+                case ATTRIBUTE_NAME:
+                    if ( c == '=' )
+                    {
+                        attribute = lookupAttribute( scan.name, elementWanted );
+                        state = BEFORE_VALUE;
+                    }
+                    else if ( isWhitespace( c ) )
+                    {
+                        state = AFTER_ATTRIBUTE_NAME;
+                    }
+                    else if ( c == '>' )
+                    {
+                        state = TEXT;
+                    }
+                    else if ( c == '/' )
+                    {
+                        state = BEFORE_ATTRIBUTE;
+                    }
+                    else
+                    {
+                        scan.name.append( toLowerCase( c ) );
+                    }
+                    break;
+
+                case AFTER_ATTRIBUTE_NAME:
+                    if ( c == '=' )
+                    {
+                        attribute = lookupAttribute( scan.name, elementWanted );
+                        state = BEFORE_VALUE;
+                    }
+                    else if ( c == '>' )
+                    {
+                        state = TEXT;
+                    }
+                    else if ( !isWhitespace( c ) )
+                    {
+                        // the previous attribute had no value
+                        scan.name.setLength( 0 );
+                        scan.name.append( toLowerCase( c ) );
+                        state = ( c == '/' ) ? BEFORE_ATTRIBUTE : ATTRIBUTE_NAME;
+                    }
+                    break;
+
+                case BEFORE_VALUE:
+                    if ( isWhitespace( c ) )
+                    {
+                        break;
+                    }
+                    scan.clearValue();
+                    if ( c == '"' )
+                    {
+                        state = DOUBLE_QUOTED_VALUE;
+                    }
+                    else if ( c == '\'' )
+                    {
+                        state = SINGLE_QUOTED_VALUE;
+                    }
+                    else if ( c == '>' )
+                    {
+                        state = TEXT;
+                    }
+                    else
+                    {
+                        if ( attribute != null )
+                        {
+                            scan.appendValue( c );
+                        }
+                        state = UNQUOTED_VALUE;
+                    }
+                    break;
+
+                case DOUBLE_QUOTED_VALUE:
+                case SINGLE_QUOTED_VALUE:
+                    if ( c == ( ( state == DOUBLE_QUOTED_VALUE ) ? '"' : '\'' ) )
+                    {
+                        if ( attribute != null
+                            && !scan.handler.attribute( element, attribute, scan.getValue() ) )
+                        {
+                            state = STOPPED;
+                            break loop;
+                        }
+                        state = BEFORE_ATTRIBUTE;
+                    }
+                    else if ( attribute != null )
+                    {
+                        scan.appendValue( c );
+                    }
+                    break;
+
+                case UNQUOTED_VALUE:
+                    if ( isWhitespace( c ) || c == '>' )
+                    {
+                        if ( attribute != null
+                            && !scan.handler.attribute( element, attribute, scan.getValue() ) )
+                        {
+                            state = STOPPED;
+                            break loop;
+                        }
+                        state = ( c == '>' ) ? TEXT : BEFORE_ATTRIBUTE;
+                    }
+                    else if ( attribute != null )
+                    {
+                        scan.appendValue( c );
+                    }
+                    break;
+
+                default:
+                    throw new IllegalStateException( "Unknown state: " + state );
+            }
+        }
+
+        scan.state = state;
+        scan.dashes = dashes;
+        scan.element = element;
+        scan.elementWanted = elementWanted;
+        scan.attribute = attribute;
+
+        return state != STOPPED;
+    }
+
+    /**
+     * @param name the lower case attribute name read, not null.
+     * @param elementWanted whether the element of the attribute is wanted.
+     * @return the wanted attribute name equal to the given one, or null if there is none.
+     */
+    private String lookupAttribute( StringBuilder name, boolean elementWanted )
+    {
+        String attribute = elementWanted ? lookup( name, attributes ) : null;
+
+        if ( attribute == null && globalAttributes != null )
+        {
+            attribute = lookup( name, globalAttributes );
+        }
+
+        return attribute;
+    }
+
+    /**
+     * @param name the lower case name read, not null.
+     * @param names the wanted names.
+     * @return the wanted name equal to the given one, or null if there is none.
+     */
+    private static String lookup( StringBuilder name, String[] names )
+    {
+        for ( int i = 0; i < names.length; i++ )
+        {
+            if ( contentEquals( name, names[i] ) )
+            {
+                return names[i];
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean contentEquals( StringBuilder name, String candidate )
+    {
+        if ( candidate.length() != name.length() )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < candidate.length(); i++ )
+        {
+            if ( candidate.charAt( i ) != name.charAt( i ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param encoding an encoding name, not null.
+     * @return the charset of the encoding.
+     * @throws UnsupportedEncodingException if the encoding is not supported.
+     */
+    private static Charset toCharset( String encoding )
+        throws UnsupportedEncodingException
+    {
+        try
+        {
+            return Charset.forName( encoding );
+        }
+        catch ( IllegalCharsetNameException e )
+        {
+            throw new UnsupportedEncodingException( encoding );
+        }
+        catch ( UnsupportedCharsetException e )
+        {
+            throw new UnsupportedEncodingException( encoding );
+        }
+    }
+
+    /**
+     * Whether the markup can be scanned byte by byte in the given charset, i.e. whether each byte below 0x80
+     * always stands for the same ASCII character. This is not the case of the multi-byte Asian encodings whose
+     * second bytes may be ASCII letters, nor of UTF-16.
+     *
+     * @param charset a charset, not null.
+     * @return <code>true</code> if the bytes can be scanned without decoding them.
+     */
+    private static boolean isAsciiCompatible( Charset charset )
+    {
+        String name = charset.name();
+
+        return "UTF-8".equals( name ) || "US-ASCII".equals( name ) || name.startsWith( "ISO-8859-" )
+            || name.startsWith( "windows-125" );
+    }
+
+    private static boolean isWhitespace( char c )
+    {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isLetter( char c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+    }
+
+    private static char toLowerCase( char c )
+    {
+        return ( c >= 'A' && c <= 'Z' ) ? (char) ( c + ( 'a' - 'A' ) ) : c;
+    }
+
+    /** The state of a scan, kept from one buffer to the next. */
+    private static final class Scan
+    {
+        /** The handler receiving the wanted attributes. */
+        private final Handler handler;
+
+        /** The charset of the bytes scanned, or null when scanning characters. */
+        private final Charset charset;
+
+        /** The element or attribute name being read, in lower case. */
+        private final StringBuilder name = new StringBuilder( 16 );
+
+        /** The value being read, when scanning characters. */
+        private final StringBuilder value;
+
+        /** The value being read, when scanning bytes. */
+        private byte[] valueBytes;
+
+        /** The number of bytes of the value being read. */
+        private int valueLength;
+
+        private int state = TEXT;
+
+        private int dashes;
+
+        private String element;
+
+        private boolean elementWanted;
+
+        private String attribute;
+
+        Scan( Handler handler, Charset charset )
+        {
+            this.handler = handler;
+            this.charset = charset;
+
+            if ( charset == null )
+            {
+                value = new StringBuilder( 128 );
+            }
+            else
+            {
+                value = null;
+                valueBytes = new byte[128];
+            }
+        }
+
+        void clearValue()
+        {
+            if ( charset == null )
+            {
+                value.setLength( 0 );
+            }
+            else
+            {
+                valueLength = 0;
+            }
+        }
+
+        /**
+         * @param c a character, or a byte when scanning bytes.
+         */
+        void appendValue( char c )
+        {
+            if ( charset == null )
+            {
+                value.append( c );
+                return;
+            }
+
+            if ( valueLength == valueBytes.length )
+            {
+                byte[] bytes = new byte[valueLength * 2];
+                System.arraycopy( valueBytes, 0, bytes, 0, valueLength );
+                valueBytes = bytes;
+            }
+
+            valueBytes[valueLength++] = (byte) c;
+        }
+
+        /**
+         * @return the value read, decoded if bytes are scanned.
+         */
+        String getValue()
+        {
+            if ( charset == null )
+            {
+                return value.toString();
+            }
+
+            return new String( valueBytes, 0, valueLength, charset );
+        }
+    }
+}
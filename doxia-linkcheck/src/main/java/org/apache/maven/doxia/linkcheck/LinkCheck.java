@@ -21,7 +21,9 @@ package org.apache.maven.doxia.linkcheck;
 
 import java.io.File;
 
+import org.apache.maven.doxia.linkcheck.model.LinkcheckMetrics;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.apache.maven.doxia.linkcheck.validation.MailDomainResolver;
 
 /**
  * Tool to check links from html files in a given directory.
@@ -48,6 +50,18 @@ public interface LinkCheck
      */
     void setBaseURL( String url );
 
+    /**
+     * Sets the URL of a site to crawl instead of the files of the base directory, e.g. a site served locally.
+     * The site is crawled breadth first from this page, or from the pages listed in this sitemap if its path ends
+     * with <code>.xml</code>. Only the URLs with the scheme, host and port of this URL are crawled, each of them
+     * once, and the links to them are checked against the crawl rather than validated one by one.
+     * The excluded links are matched against the absolute URLs of the links.
+     *
+     * @param url the URL of the root page or of the sitemap, or null (the default) to check the base directory.
+     * @since 1.3
+     */
+    void setCrawlURL( String url );
+
     /**
      * Sets the excluded HTTP errors, i.e. <code>404</code>, a int[] with excluded errors.
      * See {@link org.apache.commons.httpclient.HttpStatus} for all possible values.
@@ -94,6 +108,70 @@ public interface LinkCheck
      */
     void setLinkCheckCache( File cacheFile );
 
+    /**
+     * Sets the time to live of the cached results with the given status level. An expired result is validated
+     * again, with a conditional request for the HTTP links which support it.
+     *
+     * @param level the status level, one of the <code>LinkcheckFileResult</code> levels.
+     * @param timeToLive the time to live in milliseconds, or a negative value (the default) to never expire.
+     * @since 1.3
+     */
+    void setCacheTimeToLive( int level, long timeToLive );
+
+    /**
+     * Sets the maximum number of cached results kept in memory. The least recently used results over this limit
+     * are spilled to a temporary file and read back when needed.
+     *
+     * @param maxEntries the maximum number of results in memory, or 0 (the default) for no limit.
+     * @since 1.3
+     */
+    void setMaxCacheEntries( int maxEntries );
+
+    /**
+     * Sets whether the results are shared with the other instances of the JVM using a shared cache, e.g. the
+     * linkcheck of the other modules of a multi-module build. The instances share one store of results, the
+     * validations in progress and the HTTP connections, so an external link is validated once for all of them.
+     * Each cache file is loaded once, and written with all the shared results at the end of each execution, and
+     * again when the JVM exits if the results have changed since. The results of the local files are not shared,
+     * as the files may change before the next execution.
+     *
+     * @param sharedCache <code>true</code> to share the cache, <code>false</code> (the default) to use a cache of
+     * this instance only.
+     * @since 1.3
+     */
+    void setSharedCache( boolean sharedCache );
+
+    /**
+     * Sets the resolver checking that the domains of the mailto links have a mail server. Each domain is looked
+     * up once, whatever the number of addresses, the domains being looked up concurrently with the external links.
+     * The results are cached like the results of the other links.
+     *
+     * @param resolver the resolver, e.g. a {@link org.apache.maven.doxia.linkcheck.validation.JndiMailDomainResolver},
+     * or null (the default) to accept any mailto link containing a <code>@</code>.
+     * @since 1.3
+     */
+    void setMailDomainResolver( MailDomainResolver resolver );
+
+    /**
+     * Sets the maximum duration of an execution. Once it has elapsed, the links not validated yet get an unknown
+     * result and the validations in progress are interrupted, but the report and the cache are still written.
+     * The unknown results are not cached, so they are validated by the next execution.
+     *
+     * @param timeBudget the maximum duration in milliseconds, or 0 (the default) for no limit.
+     * @since 1.3
+     */
+    void setTimeBudget( long timeBudget );
+
+    /**
+     * Sets the incremental mode. In incremental mode, the links of the pages are stored in a page manifest next
+     * to the cache file, and the pages which didn't change since the previous run are not parsed again.
+     * This has no effect without a cache file.
+     *
+     * @param incremental incremental mode.
+     * @since 1.3
+     */
+    void setIncremental( boolean incremental );
+
     /**
      * Set the online mode.
      *
@@ -101,6 +179,51 @@ public interface LinkCheck
      */
     void setOnline( boolean onLine );
 
+    /**
+     * Sets the number of threads used to scan the pages. Pages are parsed and checked concurrently,
+     * but they are always added to the resulting model in the same order as with a sequential scan.
+     *
+     * @param parallelism the number of threads, <code>1</code> (the default) for a sequential scan,
+     * or <code>0</code> to use as many threads as available processors.
+     * @since 1.3
+     */
+    void setParallelism( int parallelism );
+
+    /**
+     * Sets whether the valid links are reported. Valid links are always counted as successful,
+     * but if they are not reported the results of a file only list the other links, which saves a lot of memory
+     * on large sites.
+     *
+     * @param reportValidLinks <code>true</code> (the default) to report all links, <code>false</code> to only report
+     * the links which are not valid.
+     * @since 1.3
+     */
+    void setReportValidLinks( boolean reportValidLinks );
+
+    /**
+     * Sets the streaming report mode. In streaming mode, each file is written to the report output as soon as it is
+     * checked, and the files are not kept in the model returned by {@link #execute()}, so the checked files and
+     * their results don't pile up in memory.
+     * <p>
+     * The links found in each page are still kept from the scan until the page is checked, i.e. until the external
+     * links have been validated, so the memory used still grows with the number of links of the site, by their
+     * text and their resource only.
+     * </p>
+     *
+     * @param streamingReport streaming report mode.
+     * @since 1.3
+     */
+    void setStreamingReport( boolean streamingReport );
+
+    /**
+     * Sets whether the metrics of the execution are written into the model and the report.
+     *
+     * @param reportMetrics <code>true</code> to add the metrics and the parse time of each file to the report,
+     * <code>false</code> (the default) to only return them with {@link #getMetrics()}.
+     * @since 1.3
+     */
+    void setReportMetrics( boolean reportMetrics );
+
     /**
      * Set the output file for the results.
      * If this is null, no output will be written.
@@ -117,7 +240,7 @@ public interface LinkCheck
     void setReportOutputEncoding( String encoding );
 
     /**
-     * Execute the link check. The basedir <b>should</b> be set before.
+     * Execute the link check. The basedir or the crawl URL <b>should</b> be set before.
      *
      * @return the analysis in a <code>LinkCheck</code> model.
      * @throws LinkCheckException if any
@@ -126,6 +249,15 @@ public interface LinkCheck
     LinkcheckModel execute()
         throws LinkCheckException;
 
+    /**
+     * Returns the metrics of the last execution: the pages scanned, the links found, the cache hits and misses
+     * of each validator, the HTTP requests sent to each host and the time spent in each phase.
+     *
+     * @return the metrics of the last execution, or <code>null</code> if {@link #execute()} has not been called.
+     * @since 1.3
+     */
+    LinkcheckMetrics getMetrics();
+
     /**
      * Set the encoding to use when processing files.
      *
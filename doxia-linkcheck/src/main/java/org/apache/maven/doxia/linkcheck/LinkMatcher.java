@@ -20,38 +20,47 @@ package org.apache.maven.doxia.linkcheck;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.ReaderFactory;
 
 /**
  * Link matcher. Reads the contents of a file and tries to match the following:
  * <pre>
  * &lt;a href="".../&gt;
+ * &lt;area href="".../&gt;
  * &lt;link href="".../&gt;
  * &lt;img src="".../&gt;
  * &lt;script src="".../&gt;
  * </pre>
+ * Links in comments are ignored.
  *
  * @author <a href="mailto:mac@apache.org">Ignacio G. Mac Dowell </a>
  * @version $Id$
  */
 class LinkMatcher
 {
-    /** Regexp for link matching. */
-    private static final Pattern MATCH_PATTERN =
-        Pattern.compile( "<(?>link|a|img|script)[^>]*?(?>href|src)\\s*?=\\s*?[\\\"'](.*?)[\\\"'][^>]*?",
-                         Pattern.CASE_INSENSITIVE );
+    /** The elements with links. */
+    private static final String[] ELEMENTS = new String[] { "a", "area", "link", "img", "script" };
 
-    /** No need to create a new object each time a file is processed. Just clear it. */
-    private static final Set<String> LINK_LIST = new TreeSet<String>();
+    /** The link attributes. */
+    private static final String[] ATTRIBUTES = new String[] { "href", "src" };
+
+    /** The anchor attributes, of any element. */
+    private static final String[] ANCHOR_ATTRIBUTES = new String[] { "id", "name" };
+
+    /** The scanner for link attributes, stateless so it can be shared by all threads. */
+    private static final HtmlAttributeScanner SCANNER = new HtmlAttributeScanner( ELEMENTS, ATTRIBUTES );
+
+    /** The scanner for link and anchor attributes. */
+    private static final HtmlAttributeScanner PAGE_SCANNER =
+        new HtmlAttributeScanner( ELEMENTS, ATTRIBUTES, ANCHOR_ATTRIBUTES );
 
     private LinkMatcher()
     {
@@ -59,74 +68,118 @@ class LinkMatcher
     }
 
     /**
-     * Reads a file and returns its contents without any XML comments.
+     * Performs the actual matching. The bytes of the file are scanned without decoding the whole file.
      *
-     * @param file the file we are reading
+     * @param file the file to check
      * @param encoding the encoding file used
-     * @return a String with file's contents.
-     * @throws IOException if something goes wrong.
-     * @see ReaderFactory#newReader(File, String)
-     * @see IOUtil#toString(Reader)
+     * @return a new set with all links to check, owned by the caller
+     * @throws IOException if something goes wrong
+     * @see HtmlAttributeScanner#scan(InputStream, String, HtmlAttributeScanner.Handler)
      */
-    private static String toString( File file, String encoding )
+    static Set<String> match( File file, String encoding )
         throws IOException
     {
-        String content;
-        Reader reader = null;
+        InputStream in = null;
         try
         {
-            reader = ReaderFactory.newReader( file, encoding );
+            in = new FileInputStream( file );
 
-            content = IOUtil.toString( reader );
+            return match( in, encoding );
         }
         finally
         {
-            IOUtil.close( reader );
+            IOUtil.close( in );
         }
+    }
 
-        // some link could be in comments, remove them
-        return content.replaceAll( "(?s)<!--.*?-->", "" );
+    /**
+     * Performs the actual matching on the given bytes, the stream is not closed.
+     *
+     * @param in the content to check
+     * @param encoding the encoding of the content
+     * @return a new set with all links to check, owned by the caller
+     * @throws IOException if something goes wrong
+     * @since 1.3
+     */
+    static Set<String> match( InputStream in, String encoding )
+        throws IOException
+    {
+        Set<String> links = new TreeSet<String>();
+        SCANNER.scan( in, encoding, new LinkHandler( links, null ) );
+
+        return links;
     }
 
     /**
-     * Performs the actual matching.
+     * Performs the actual matching on the given bytes, and collects the anchors of the content in the same pass.
+     * The stream is not closed.
      *
-     * @param file the file to check
-     * @param encoding the encoding file used
-     * @return a set with all links to check
+     * @param in the content to check
+     * @param encoding the encoding of the content
+     * @param anchors a set receiving the anchors of the content, i.e. the <code>id</code> and <code>name</code>
+     * attributes of any element
+     * @return a new set with all links to check, owned by the caller
      * @throws IOException if something goes wrong
+     * @since 1.3
      */
-    static Set<String> match( File file, String encoding )
+    static Set<String> match( InputStream in, String encoding, Set<String> anchors )
         throws IOException
     {
-        LINK_LIST.clear();
+        Set<String> links = new TreeSet<String>();
+        PAGE_SCANNER.scan( in, encoding, new LinkHandler( links, anchors ) );
 
-        final Matcher m = MATCH_PATTERN.matcher( toString( file, encoding ) );
+        return links;
+    }
 
-        String link;
+    /**
+     * Performs the actual matching on the given content, the reader is not closed.
+     *
+     * @param reader the content to check
+     * @return a new set with all links to check, owned by the caller
+     * @throws IOException if something goes wrong
+     */
+    static Set<String> match( Reader reader )
+        throws IOException
+    {
+        Set<String> links = new TreeSet<String>();
+        SCANNER.scan( reader, new LinkHandler( links, null ) );
+
+        return links;
+    }
 
-        while ( m.find() )
+    /** Adds the links found to a set, but for the javascript ones, and the anchors to another set. */
+    private static final class LinkHandler
+        implements HtmlAttributeScanner.Handler
+    {
+        private final Set<String> links;
+
+        /** The anchors, or null if they are not scanned. */
+        private final Set<String> anchors;
+
+        LinkHandler( Set<String> links, Set<String> anchors )
         {
-            link = m.group( 1 ).trim();
+            this.links = links;
+            this.anchors = anchors;
+        }
 
-            if ( link.length() < 1 )
+        /** {@inheritDoc} */
+        public boolean attribute( String element, String attribute, String value )
+        {
+            if ( anchors != null && ( "id".equals( attribute ) || "name".equals( attribute ) ) )
             {
-                continue;
+                anchors.add( value );
+
+                return true;
             }
 
-            if ( link.toLowerCase( Locale.ENGLISH ).indexOf( "javascript" ) != -1 )
+            String link = value.trim();
+
+            if ( link.length() > 0 && link.toLowerCase( Locale.ENGLISH ).indexOf( "javascript" ) == -1 )
             {
-                continue;
+                links.add( link );
             }
-            // TODO: Review dead code and delete if not needed
-            // else if ( link.toLowerCase( Locale.ENGLISH ).indexOf( "mailto:" ) != -1 )
-            // {
-            // continue;
-            // }
 
-            LINK_LIST.add( link );
+            return true;
         }
-
-        return LINK_LIST;
     }
 }
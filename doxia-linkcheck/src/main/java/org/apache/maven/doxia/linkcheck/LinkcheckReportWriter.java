@@ -0,0 +1,295 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFile;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckHostMetrics;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckLatency;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckMetrics;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckValidatorMetrics;
+import org.codehaus.plexus.util.xml.pull.MXSerializer;
+import org.codehaus.plexus.util.xml.pull.XmlSerializer;
+
+/**
+ * Writes a linkcheck report one file at a time, so the files don't have to be kept in the model.
+ * The document is the same as the one written by the <code>LinkcheckModelXpp3Writer</code> for a model with
+ * the same files.
+ *
+ * @since 1.3
+ */
+class LinkcheckReportWriter
+{
+    /** The serializer. */
+    private final XmlSerializer serializer = new MXSerializer();
+
+    /** Whether the files element has been started. */
+    private boolean filesStarted;
+
+    /**
+     * Constructor.
+     *
+     * @param writer the writer of the report, not null.
+     * @throws IOException if any
+     */
+    LinkcheckReportWriter( Writer writer )
+        throws IOException
+    {
+        serializer.setProperty( "http://xmlpull.org/v1/doc/properties.html#serializer-indentation", "  " );
+        serializer.setProperty( "http://xmlpull.org/v1/doc/properties.html#serializer-line-separator", "\n" );
+        serializer.setOutput( writer );
+    }
+
+    /**
+     * Starts the document, with the fields of the model other than the files.
+     *
+     * @param model the model, not null.
+     * @throws IOException if any
+     */
+    void startReport( LinkcheckModel model )
+        throws IOException
+    {
+        serializer.startDocument( model.getModelEncoding(), null );
+        serializer.startTag( null, "linkcheck" );
+
+        if ( model.getTotalLinks() != 0 )
+        {
+            writeElement( "totalLinks", String.valueOf( model.getTotalLinks() ) );
+        }
+
+        if ( model.getUniqueLinks() != 0 )
+        {
+            writeElement( "uniqueLinks", String.valueOf( model.getUniqueLinks() ) );
+        }
+    }
+
+    /**
+     * Writes a checked file.
+     *
+     * @param linkcheckFile the file, not null.
+     * @throws IOException if any
+     */
+    void writeFile( LinkcheckFile linkcheckFile )
+        throws IOException
+    {
+        if ( !filesStarted )
+        {
+            serializer.startTag( null, "files" );
+            filesStarted = true;
+        }
+
+        serializer.startTag( null, "file" );
+
+        if ( linkcheckFile.getAbsolutePath() != null )
+        {
+            writeElement( "absolutePath", linkcheckFile.getAbsolutePath() );
+        }
+
+        if ( linkcheckFile.getRelativePath() != null )
+        {
+            writeElement( "relativePath", linkcheckFile.getRelativePath() );
+        }
+
+        if ( linkcheckFile.getSuccessful() != -1 )
+        {
+            writeElement( "successful", String.valueOf( linkcheckFile.getSuccessful() ) );
+        }
+
+        if ( linkcheckFile.getUnsuccessful() != -1 )
+        {
+            writeElement( "unsuccessful", String.valueOf( linkcheckFile.getUnsuccessful() ) );
+        }
+
+        if ( linkcheckFile.getParseTime() != 0.0 )
+        {
+            writeElement( "parseTime", String.valueOf( linkcheckFile.getParseTime() ) );
+        }
+
+        if ( linkcheckFile.getResults() != null && linkcheckFile.getResults().size() > 0 )
+        {
+            serializer.startTag( null, "results" );
+
+            for ( LinkcheckFileResult result : linkcheckFile.getResults() )
+            {
+                serializer.startTag( null, "result" );
+
+                if ( result.getTarget() != null )
+                {
+                    writeElement( "target", result.getTarget() );
+                }
+
+                if ( result.getStatus() != null )
+                {
+                    writeElement( "status", result.getStatus() );
+                }
+
+                if ( result.getErrorMessage() != null )
+                {
+                    writeElement( "errorMessage", result.getErrorMessage() );
+                }
+
+                if ( result.getRetries() != 0 )
+                {
+                    writeElement( "retries", String.valueOf( result.getRetries() ) );
+                }
+
+                serializer.endTag( null, "result" );
+            }
+
+            serializer.endTag( null, "results" );
+        }
+
+        serializer.endTag( null, "file" );
+    }
+
+    /**
+     * Ends the document, with the metrics of the model if any, and flushes the writer.
+     *
+     * @param model the model, not null.
+     * @throws IOException if any
+     */
+    void endReport( LinkcheckModel model )
+        throws IOException
+    {
+        if ( filesStarted )
+        {
+            serializer.endTag( null, "files" );
+        }
+
+        if ( model.getMetrics() != null )
+        {
+            writeMetrics( model.getMetrics() );
+        }
+
+        serializer.endTag( null, "linkcheck" );
+        serializer.endDocument();
+    }
+
+    private void writeMetrics( LinkcheckMetrics metrics )
+        throws IOException
+    {
+        serializer.startTag( null, "metrics" );
+
+        writeElement( "pages", metrics.getPages(), 0 );
+        writeElement( "bytesRead", metrics.getBytesRead(), 0 );
+        writeElement( "links", metrics.getLinks(), 0 );
+
+        if ( metrics.getParseTime() != 0.0 )
+        {
+            writeElement( "parseTime", String.valueOf( metrics.getParseTime() ) );
+        }
+
+        if ( metrics.getMaxParseTime() != 0.0 )
+        {
+            writeElement( "maxParseTime", String.valueOf( metrics.getMaxParseTime() ) );
+        }
+
+        writeElement( "retries", metrics.getRetries(), 0 );
+        writeElement( "cacheLoadTime", metrics.getCacheLoadTime(), 0 );
+        writeElement( "scanTime", metrics.getScanTime(), 0 );
+        writeElement( "validationTime", metrics.getValidationTime(), 0 );
+        writeElement( "reportTime", metrics.getReportTime(), 0 );
+        writeElement( "cacheSaveTime", metrics.getCacheSaveTime(), 0 );
+
+        if ( metrics.getValidators() != null && metrics.getValidators().size() > 0 )
+        {
+            serializer.startTag( null, "validators" );
+
+            for ( LinkcheckValidatorMetrics validator : metrics.getValidators() )
+            {
+                serializer.startTag( null, "validator" );
+
+                if ( validator.getName() != null )
+                {
+                    writeElement( "name", validator.getName() );
+                }
+
+                writeElement( "cacheHits", validator.getCacheHits(), 0 );
+                writeElement( "cacheMisses", validator.getCacheMisses(), 0 );
+
+                serializer.endTag( null, "validator" );
+            }
+
+            serializer.endTag( null, "validators" );
+        }
+
+        if ( metrics.getHosts() != null && metrics.getHosts().size() > 0 )
+        {
+            serializer.startTag( null, "hosts" );
+
+            for ( LinkcheckHostMetrics host : metrics.getHosts() )
+            {
+                serializer.startTag( null, "host" );
+
+                if ( host.getHost() != null )
+                {
+                    writeElement( "host", host.getHost() );
+                }
+
+                writeElement( "requests", host.getRequests(), 0 );
+                writeElement( "retries", host.getRetries(), 0 );
+                writeElement( "time", host.getTime(), 0 );
+
+                if ( host.getLatencies() != null && host.getLatencies().size() > 0 )
+                {
+                    serializer.startTag( null, "latencies" );
+
+                    for ( LinkcheckLatency latency : host.getLatencies() )
+                    {
+                        serializer.startTag( null, "latency" );
+                        writeElement( "maxTime", latency.getMaxTime(), 0 );
+                        writeElement( "count", latency.getCount(), 0 );
+                        serializer.endTag( null, "latency" );
+                    }
+
+                    serializer.endTag( null, "latencies" );
+                }
+
+                serializer.endTag( null, "host" );
+            }
+
+            serializer.endTag( null, "hosts" );
+        }
+
+        serializer.endTag( null, "metrics" );
+    }
+
+    /**
+     * Writes a numeric element, unless it has its default value, as the <code>LinkcheckModelXpp3Writer</code> does.
+     */
+    private void writeElement( String name, long value, long defaultValue )
+        throws IOException
+    {
+        if ( value != defaultValue )
+        {
+            writeElement( name, String.valueOf( value ) );
+        }
+    }
+
+    private void writeElement( String name, String text )
+        throws IOException
+    {
+        serializer.startTag( null, name ).text( text ).endTag( null, name );
+    }
+}
@@ -0,0 +1,380 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The manifest of the pages of a site, used by the incremental mode: it keeps the fingerprint and the links
+ * of each page, so the links of a page which didn't change since the previous run are not extracted again.
+ * <p>
+ * A page is unchanged if its size and modification time are the same, or if its size and the MD5 digest of
+ * its content are the same, so regenerating a site without changing a page doesn't change its fingerprint.
+ * </p>
+ * Pages may be looked up and added concurrently.
+ *
+ * @since 1.3
+ */
+class PageManifest
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( PageManifest.class );
+
+    /** The magic at the start of the file. */
+    private static final int MAGIC = 0x44584C50; // DXLP
+
+    /** The version of the format, to change with the format or with the way the links are extracted. */
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    /** The minimum length of a page: the lengths of its path and digest, its size, its time and its link count. */
+    private static final int MIN_PAGE_LENGTH = 4 + 8 + 8 + 1 + 4;
+
+    /** The encoding used to read the pages. */
+    private final String encoding;
+
+    /** The pages by relative path. */
+    private final Map<String, Page> pages = new ConcurrentHashMap<String, Page>();
+
+    /**
+     * Constructor: an empty manifest.
+     *
+     * @param encoding the encoding used to read the pages, may be null.
+     */
+    PageManifest( String encoding )
+    {
+        this.encoding = ( encoding == null ) ? "" : encoding;
+    }
+
+    /**
+     * Loads a manifest. The manifest is empty if the file doesn't exist, is truncated or corrupted,
+     * or if the pages were read with another encoding.
+     *
+     * @param manifestFile the manifest file, not null.
+     * @param encoding the encoding used to read the pages, may be null.
+     * @return the manifest, never null.
+     * @throws IOException if the file can't be read.
+     */
+    static PageManifest load( File manifestFile, String encoding )
+        throws IOException
+    {
+        PageManifest manifest = new PageManifest( encoding );
+
+        if ( !manifestFile.isFile() )
+        {
+            return manifest;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( manifestFile ), 64 * 1024 ) );
+
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION || !manifest.encoding.equals( in.readUTF() ) )
+            {
+                LOG.info( "The page manifest is outdated, all pages will be scanned." );
+
+                return manifest;
+            }
+
+            // the counts and lengths are checked against the file length, so a corrupted one can't allocate
+            // a huge array
+            long fileLength = manifestFile.length();
+
+            int count = readCount( in, fileLength, MIN_PAGE_LENGTH );
+            for ( int i = 0; i < count; i++ )
+            {
+                String path = readString( in, fileLength );
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] digest = new byte[in.readUnsignedByte()];
+                in.readFully( digest );
+
+                String[] hrefs = new String[readCount( in, fileLength, 4 )];
+                for ( int j = 0; j < hrefs.length; j++ )
+                {
+                    hrefs[j] = readString( in, fileLength );
+                }
+
+                manifest.pages.put( path, new Page( size, lastModified, digest, hrefs ) );
+            }
+        }
+        catch ( EOFException e )
+        {
+            LOG.warn( "The page manifest is truncated or corrupted, all pages will be scanned." );
+
+            manifest.pages.clear();
+        }
+        catch ( UTFDataFormatException e )
+        {
+            LOG.warn( "The page manifest is corrupted, all pages will be scanned." );
+
+            manifest.pages.clear();
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Saves this manifest, replacing the given file.
+     *
+     * @param manifestFile the manifest file, not null.
+     * @throws IOException if the file can't be written.
+     */
+    void save( File manifestFile )
+        throws IOException
+    {
+        File dir = manifestFile.getAbsoluteFile().getParentFile();
+        if ( dir != null )
+        {
+            dir.mkdirs();
+        }
+
+        File tmp = File.createTempFile( manifestFile.getName(), ".tmp", dir );
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ), 64 * 1024 ) );
+
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeUTF( encoding );
+            out.writeInt( pages.size() );
+
+            for ( Map.Entry<String, Page> entry : pages.entrySet() )
+            {
+                Page page = entry.getValue();
+
+                writeString( out, entry.getKey() );
+                out.writeLong( page.size );
+                out.writeLong( page.lastModified );
+                out.writeByte( page.digest.length );
+                out.write( page.digest );
+                out.writeInt( page.hrefs.length );
+                for ( String href : page.hrefs )
+                {
+                    writeString( out, href );
+                }
+            }
+
+            out.close();
+            out = null;
+
+            if ( !tmp.renameTo( manifestFile ) && ( !manifestFile.delete() || !tmp.renameTo( manifestFile ) ) )
+            {
+                throw new IOException( "Unable to replace " + manifestFile.getAbsolutePath() );
+            }
+        }
+        finally
+        {
+            IOUtil.close( out );
+
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns the links of a page if it didn't change since it was added to this manifest.
+     *
+     * @param path the relative path of the page, not null.
+     * @param file the page, not null.
+     * @return the page with its current fingerprint and its previous links,
+     * or a page without links if it changed or is unknown.
+     * @throws IOException if the page can't be read.
+     */
+    Page lookup( String path, File file )
+        throws IOException
+    {
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Page previous = pages.get( path );
+
+        if ( previous != null && previous.size == size && previous.lastModified == lastModified )
+        {
+            return previous;
+        }
+
+        byte[] digest = digest( file );
+
+        if ( previous != null && previous.size == size && Arrays.equals( previous.digest, digest ) )
+        {
+            return new Page( size, lastModified, digest, previous.hrefs );
+        }
+
+        return new Page( size, lastModified, digest, null );
+    }
+
+    /**
+     * Adds a page to this manifest.
+     *
+     * @param path the relative path of the page, not null.
+     * @param page the page with its links, not null.
+     */
+    void put( String path, Page page )
+    {
+        pages.put( path, page );
+    }
+
+    /**
+     * @return the number of pages in this manifest.
+     */
+    int size()
+    {
+        return pages.size();
+    }
+
+    /** Strings are written as length prefixed UTF-8, links may be longer than what writeUTF supports. */
+    private static void writeString( DataOutputStream out, String s )
+        throws IOException
+    {
+        byte[] bytes = s.getBytes( UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString( DataInputStream in, long fileLength )
+        throws IOException
+    {
+        byte[] bytes = new byte[readCount( in, fileLength, 1 )];
+        in.readFully( bytes );
+
+        return new String( bytes, UTF_8 );
+    }
+
+    /**
+     * Reads the number of items which follow.
+     *
+     * @param in the manifest.
+     * @param fileLength the length of the manifest file.
+     * @param minItemLength the minimum length of an item.
+     * @return the count.
+     * @throws EOFException if the count is negative, or if its items can't fit in the file.
+     * @throws IOException if the count can't be read.
+     */
+    private static int readCount( DataInputStream in, long fileLength, int minItemLength )
+        throws IOException
+    {
+        int count = in.readInt();
+        if ( count < 0 || (long) count * minItemLength > fileLength )
+        {
+            throw new EOFException( "Invalid count: " + count );
+        }
+
+        return count;
+    }
+
+    private static byte[] digest( File file )
+        throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance( "MD5" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "MD5 is not supported: " + e.getMessage() );
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+
+            byte[] buffer = new byte[8192];
+            int n;
+            while ( ( n = in.read( buffer ) ) != -1 )
+            {
+                md.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return md.digest();
+    }
+
+    /** The fingerprint and the links of a page. */
+    static final class Page
+    {
+        private final long size;
+
+        private final long lastModified;
+
+        private final byte[] digest;
+
+        /** The links, null if they are not known. */
+        private final String[] hrefs;
+
+        Page( long size, long lastModified, byte[] digest, String[] hrefs )
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.hrefs = hrefs;
+        }
+
+        /**
+         * @return the links of the page, or null if they have to be extracted.
+         */
+        String[] getHrefs()
+        {
+            return hrefs;
+        }
+
+        /**
+         * @param newHrefs the links of the page.
+         * @return a copy of this page with the given links.
+         */
+        Page withHrefs( String[] newHrefs )
+        {
+            return new Page( size, lastModified, digest, newHrefs );
+        }
+    }
+}
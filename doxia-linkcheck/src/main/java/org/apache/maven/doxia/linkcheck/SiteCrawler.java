@@ -0,0 +1,603 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.maven.doxia.linkcheck.validation.LinkValidationPlan;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Crawls a site served over HTTP, breadth first, from a root page or from the pages listed in a sitemap.
+ * <p>
+ * Only the URLs of the origin of the root, i.e. with the same scheme, host and port, are fetched, each of them
+ * once. The pages of a level are fetched concurrently, then their links make up the next level in the order they
+ * are found, so the crawl order doesn't depend on the threads. The links and the anchors of the HTML pages are
+ * extracted, the other resources are only fetched for their status.
+ * </p>
+ *
+ * @since 1.3
+ */
+class SiteCrawler
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( SiteCrawler.class );
+
+    /** The root page or the sitemap. */
+    private final URL start;
+
+    /** The directory of the root, the pages are reported relative to it. */
+    private final String root;
+
+    /** The default encoding of the pages, for the pages without charset. */
+    private final String encoding;
+
+    /** The number of pages fetched at the same time. */
+    private final int threads;
+
+    /** The plan, giving the excluded links and the deadline. */
+    private final LinkValidationPlan plan;
+
+    /** The connections of the client. */
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+
+    /** The client fetching the pages. */
+    private final HttpClient client;
+
+    /**
+     * Constructor.
+     *
+     * @param start the URL of the root page, or of a sitemap if its path ends with <code>.xml</code>.
+     * @param http the HTTP settings, only the timeout is used.
+     * @param encoding the default encoding of the pages, not null.
+     * @param threads the number of pages fetched at the same time, at least 1.
+     * @param plan the plan, giving the excluded links and the deadline.
+     * @throws MalformedURLException if the start URL is invalid.
+     */
+    SiteCrawler( String start, HttpBean http, String encoding, int threads, LinkValidationPlan plan )
+        throws MalformedURLException
+    {
+        this.start = new URL( start );
+        if ( !"http".equalsIgnoreCase( this.start.getProtocol() )
+            && !"https".equalsIgnoreCase( this.start.getProtocol() ) )
+        {
+            throw new MalformedURLException( "Only HTTP sites can be crawled: " + start );
+        }
+
+        String path = this.start.toExternalForm();
+        this.root = path.substring( 0, path.lastIndexOf( '/' ) + 1 );
+        this.encoding = encoding;
+        this.threads = Math.max( 1, threads );
+        this.plan = plan;
+
+        connectionManager.getParams().setMaxTotalConnections( this.threads );
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost( this.threads );
+        if ( http.getTimeout() != 0 )
+        {
+            connectionManager.getParams().setConnectionTimeout( http.getTimeout() );
+            connectionManager.getParams().setSoTimeout( http.getTimeout() );
+        }
+
+        this.client = new HttpClient( connectionManager );
+    }
+
+    /**
+     * Crawls the site. Once the deadline of the plan has passed, the pending fetches are cancelled and the crawl
+     * stops before the next level.
+     *
+     * @return the fetched pages and resources by URL, in the crawl order.
+     * @throws IOException if the sitemap can't be read.
+     * @throws InterruptedException if interrupted while waiting for the pages.
+     */
+    Map<String, Page> crawl()
+        throws IOException, InterruptedException
+    {
+        Set<String> visited = new HashSet<String>();
+        List<String> level = new ArrayList<String>();
+
+        if ( start.getPath().toLowerCase( Locale.ENGLISH ).endsWith( ".xml" ) )
+        {
+            for ( String loc : readSitemap( start, new HashSet<String>() ) )
+            {
+                enqueue( start, loc, visited, level );
+            }
+        }
+        else
+        {
+            enqueue( start, start.toExternalForm(), visited, level );
+        }
+
+        Map<String, Page> pages = new LinkedHashMap<String, Page>();
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            for ( int depth = 0; !level.isEmpty(); depth++ )
+            {
+                long deadline = plan.getDeadline();
+
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( "Fetching " + level.size() + " resources at depth " + depth + "." );
+                }
+
+                List<Future<Page>> fetches = new ArrayList<Future<Page>>( level.size() );
+                for ( final String url : level )
+                {
+                    fetches.add( executor.submit( new Callable<Page>()
+                    {
+                        public Page call()
+                        {
+                            return fetch( url );
+                        }
+                    } ) );
+                }
+
+                List<String> next = new ArrayList<String>();
+                int cancelled = 0;
+                for ( Future<Page> future : fetches )
+                {
+                    Page page = getPage( future, deadline );
+                    if ( page == null )
+                    {
+                        cancelled++;
+                        continue;
+                    }
+
+                    pages.put( page.getUrl(), page );
+
+                    if ( page.getHrefs() != null )
+                    {
+                        for ( String href : page.getHrefs() )
+                        {
+                            enqueue( page.getBase(), href, visited, next );
+                        }
+                    }
+                }
+
+                if ( cancelled > 0 )
+                {
+                    LOG.warn( "The crawl exceeded the deadline, " + cancelled + " resources at depth " + depth
+                        + " and the deeper ones were not fetched." );
+                    break;
+                }
+
+                level = next;
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return pages;
+    }
+
+    /**
+     * Closes the connections of the crawler.
+     */
+    void close()
+    {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Tells whether a URL has the origin of the crawled site.
+     *
+     * @param url an absolute URL, not null.
+     * @return <code>true</code> if the URL has the scheme, the host and the port of the site.
+     */
+    boolean isSameOrigin( URL url )
+    {
+        return start.getProtocol().equalsIgnoreCase( url.getProtocol() )
+            && start.getHost().equalsIgnoreCase( url.getHost() ) && getPort( start ) == getPort( url );
+    }
+
+    /**
+     * Returns the path of a URL of the site relative to the directory of the root.
+     *
+     * @param url a URL of the site, not null.
+     * @return the relative path, or the URL itself if it is not under the directory of the root.
+     */
+    String getRelativePath( String url )
+    {
+        return url.startsWith( root ) ? url.substring( root.length() ) : url;
+    }
+
+    /**
+     * Resolves a link against the URL of its page.
+     *
+     * @param base the URL of the page, not null.
+     * @param href the link, not null.
+     * @return the absolute URL of the link, or null if the link is not a valid URL.
+     */
+    static URL resolve( URL base, String href )
+    {
+        try
+        {
+            return new URL( base, href );
+        }
+        catch ( MalformedURLException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param url an absolute URL, not null.
+     * @return the URL without its fragment, i.e. the key of its resource in the crawl.
+     */
+    static String withoutFragment( URL url )
+    {
+        String external = url.toExternalForm();
+        int hash = external.indexOf( '#' );
+
+        return ( hash == -1 ) ? external : external.substring( 0, hash );
+    }
+
+    /**
+     * Adds the URL of a link to the next level, if it has the origin of the site and if it was not seen yet.
+     *
+     * @param base the URL of the page of the link.
+     * @param href the link.
+     * @param visited the URLs already seen.
+     * @param level the next level.
+     */
+    private void enqueue( URL base, String href, Set<String> visited, List<String> level )
+    {
+        URL url = resolve( base, href );
+        if ( url == null || !isSameOrigin( url ) )
+        {
+            return;
+        }
+
+        String key = withoutFragment( url );
+        if ( visited.add( key ) && !plan.isExcluded( key ) )
+        {
+            level.add( key );
+        }
+    }
+
+    /**
+     * Fetches a resource, and extracts its links and anchors if it is an HTML page.
+     * This is called concurrently for the resources of a level.
+     *
+     * @param url the URL of the resource.
+     * @return the page, never null.
+     */
+    private Page fetch( String url )
+    {
+        GetMethod get = null;
+        try
+        {
+            get = new GetMethod( url );
+            get.setFollowRedirects( true );
+
+            int status = client.executeMethod( get );
+            URL base = new URL( get.getURI().toString() );
+
+            Header contentType = get.getResponseHeader( "Content-Type" );
+            if ( status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES || !isHtml( contentType ) )
+            {
+                // the body is not needed, don't read it to reuse the connection
+                get.abort();
+
+                return new Page( url, base, status, get.getStatusText(), null, null, 0, 0 );
+            }
+
+            byte[] body = get.getResponseBody();
+            String charset = getCharset( contentType );
+
+            long parseStart = System.nanoTime();
+
+            Set<String> anchors = new HashSet<String>();
+            Set<String> hrefs = LinkMatcher.match( new ByteArrayInputStream( body ), charset, anchors );
+
+            return new Page( url, base, status, get.getStatusText(), hrefs.toArray( new String[hrefs.size()] ),
+                             anchors, body.length, System.nanoTime() - parseStart );
+        }
+        catch ( IOException e )
+        {
+            LOG.debug( "Could not fetch " + url, e );
+
+            return new Page( url, null, 0, e.getMessage(), null, null, 0, 0 );
+        }
+        catch ( RuntimeException e )
+        {
+            // e.g. an invalid URI
+            LOG.debug( "Could not fetch " + url, e );
+
+            return new Page( url, null, 0, e.getMessage(), null, null, 0, 0 );
+        }
+        finally
+        {
+            if ( get != null )
+            {
+                get.releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Reads the URLs of a sitemap, the sitemaps of a sitemap index being read recursively.
+     *
+     * @param sitemap the URL of the sitemap.
+     * @param read the sitemaps already read.
+     * @return the URLs of the sitemap.
+     * @throws IOException if the sitemap can't be read.
+     */
+    private List<String> readSitemap( URL sitemap, Set<String> read )
+        throws IOException
+    {
+        List<String> locs = new ArrayList<String>();
+        if ( !read.add( sitemap.toExternalForm() ) )
+        {
+            return locs;
+        }
+
+        List<URL> nested = new ArrayList<URL>();
+
+        GetMethod get = new GetMethod( sitemap.toExternalForm() );
+        try
+        {
+            int status = client.executeMethod( get );
+            if ( status != HttpStatus.SC_OK )
+            {
+                throw new IOException( "Could not read the sitemap " + sitemap + ": " + status + " "
+                    + get.getStatusText() );
+            }
+
+            Xpp3Dom dom = Xpp3DomBuilder.build( ReaderFactory.newXmlReader( get.getResponseBodyAsStream() ) );
+            boolean index = "sitemapindex".equals( dom.getName() );
+
+            for ( Xpp3Dom entry : dom.getChildren() )
+            {
+                Xpp3Dom loc = entry.getChild( "loc" );
+                if ( loc == null || loc.getValue() == null )
+                {
+                    continue;
+                }
+
+                if ( !index )
+                {
+                    locs.add( loc.getValue().trim() );
+                    continue;
+                }
+
+                URL url = resolve( sitemap, loc.getValue().trim() );
+                if ( url != null && isSameOrigin( url ) )
+                {
+                    nested.add( url );
+                }
+            }
+        }
+        catch ( XmlPullParserException e )
+        {
+            IOException ioe = new IOException( "Could not parse the sitemap " + sitemap + ": " + e.getMessage() );
+            ioe.initCause( e );
+            throw ioe;
+        }
+        finally
+        {
+            get.releaseConnection();
+        }
+
+        for ( URL url : nested )
+        {
+            locs.addAll( readSitemap( url, read ) );
+        }
+
+        return locs;
+    }
+
+    /**
+     * @param contentType the content type header, may be null.
+     * @return <code>true</code> if the content type is HTML or XHTML.
+     */
+    private static boolean isHtml( Header contentType )
+    {
+        if ( contentType == null )
+        {
+            return false;
+        }
+
+        String value = contentType.getValue().toLowerCase( Locale.ENGLISH );
+
+        return value.startsWith( "text/html" ) || value.startsWith( "application/xhtml+xml" );
+    }
+
+    /**
+     * @param contentType the content type header, not null.
+     * @return the supported charset of the content type, or the default encoding.
+     */
+    private String getCharset( Header contentType )
+    {
+        String value = contentType.getValue();
+        int index = value.toLowerCase( Locale.ENGLISH ).indexOf( "charset=" );
+        if ( index == -1 )
+        {
+            return encoding;
+        }
+
+        String charset = value.substring( index + "charset=".length() );
+        int end = charset.indexOf( ';' );
+        charset = ( ( end == -1 ) ? charset : charset.substring( 0, end ) ).trim().replace( "\"", "" );
+
+        try
+        {
+            return Charset.isSupported( charset ) ? charset : encoding;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // an illegal charset name
+            return encoding;
+        }
+    }
+
+    /**
+     * @param url an absolute URL, not null.
+     * @return the port of the URL, or the default port of its protocol.
+     */
+    private static int getPort( URL url )
+    {
+        return ( url.getPort() == -1 ) ? url.getDefaultPort() : url.getPort();
+    }
+
+    /**
+     * Waits for a fetched page, until the deadline. A fetch which is not done at the deadline is cancelled.
+     *
+     * @param future the fetch.
+     * @param deadline the time when the crawl stops, or 0 if it has no deadline.
+     * @return the page, or null if the fetch has been cancelled.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static Page getPage( Future<Page> future, long deadline )
+        throws InterruptedException
+    {
+        try
+        {
+            if ( deadline <= 0 )
+            {
+                return future.get();
+            }
+
+            return future.get( Math.max( deadline - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            future.cancel( true );
+
+            return null;
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IllegalStateException( "Unable to crawl page: " + e.getCause(), e.getCause() );
+        }
+    }
+
+    /** A fetched page or resource. */
+    static final class Page
+    {
+        private final String url;
+
+        private final URL base;
+
+        private final int statusCode;
+
+        private final String message;
+
+        private final String[] hrefs;
+
+        private final Set<String> anchors;
+
+        private final long length;
+
+        private final long parseTime;
+
+        Page( String url, URL base, int statusCode, String message, String[] hrefs, Set<String> anchors,
+              long length, long parseTime )
+        {
+            this.url = url;
+            this.base = base;
+            this.statusCode = statusCode;
+            this.message = message;
+            this.hrefs = hrefs;
+            this.anchors = anchors;
+            this.length = length;
+            this.parseTime = parseTime;
+        }
+
+        /** @return the URL of the resource, without fragment. */
+        String getUrl()
+        {
+            return url;
+        }
+
+        /** @return the URL the links of the page are relative to, i.e. the URL after the redirects. */
+        URL getBase()
+        {
+            return base;
+        }
+
+        /** @return the HTTP status code, or 0 if the resource couldn't be fetched. */
+        int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        /** @return the HTTP status text, or the error if the resource couldn't be fetched. */
+        String getMessage()
+        {
+            return message;
+        }
+
+        /** @return the links of the page, or null if the resource is not an HTML page. */
+        String[] getHrefs()
+        {
+            return hrefs;
+        }
+
+        /** @return the anchors of the page, or null if the resource is not an HTML page. */
+        Set<String> getAnchors()
+        {
+            return anchors;
+        }
+
+        /** @return the length of the page, in bytes. */
+        long getLength()
+        {
+            return length;
+        }
+
+        /** @return the time spent extracting the links and the anchors of the page, in nanoseconds. */
+        long getParseTime()
+        {
+            return parseTime;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A bounded cache of the anchors of the documents, shared by the validators, so each document is parsed once
+ * whatever the number of links to its anchors, and each anchor check is a lookup.
+ * <p>
+ * The documents are identified by the absolute path of the local files or by the URL of the remote documents.
+ * The least recently used documents are evicted once the maximum number of documents is reached.
+ * An index may be used concurrently.
+ * </p>
+ *
+ * @since 1.3
+ */
+public class AnchorIndex
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( AnchorIndex.class );
+
+    /** The default maximum number of documents. */
+    public static final int DEFAULT_MAX_DOCUMENTS = 256;
+
+    /** The anchors by document, in access order, guarded by itself. */
+    private final Map<String, Set<String>> documents;
+
+    /**
+     * Constructor: an index of at most {@link #DEFAULT_MAX_DOCUMENTS} documents.
+     */
+    public AnchorIndex()
+    {
+        this( DEFAULT_MAX_DOCUMENTS );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxDocuments the maximum number of documents whose anchors are kept, at least 1.
+     */
+    public AnchorIndex( final int maxDocuments )
+    {
+        if ( maxDocuments < 1 )
+        {
+            throw new IllegalArgumentException( maxDocuments + " should be positive." );
+        }
+
+        this.documents = new LinkedHashMap<String, Set<String>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            /** {@inheritDoc} */
+            protected boolean removeEldestEntry( Map.Entry<String, Set<String>> eldest )
+            {
+                return size() > maxDocuments;
+            }
+        };
+    }
+
+    /**
+     * Returns the anchors of a local file, parsing it if it is not in the index.
+     *
+     * @param file the file, not null.
+     * @param encoding the encoding of the file.
+     * @return the anchors of the file, empty if it can't be read.
+     */
+    public Set<String> getAnchors( File file, String encoding )
+    {
+        String key = file.getAbsolutePath();
+
+        Set<String> anchors = getAnchors( key );
+        if ( anchors != null )
+        {
+            return anchors;
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+
+            anchors = Anchors.getAnchors( in, encoding );
+        }
+        catch ( IOException e )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Unable to read the anchors of " + file + ": " + e.getMessage() );
+            }
+
+            anchors = Collections.emptySet();
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        putAnchors( key, anchors );
+
+        return anchors;
+    }
+
+    /**
+     * Returns the anchors of a document if it is in the index.
+     *
+     * @param document the absolute path or the URL of the document, not null.
+     * @return the anchors of the document, or null if it is not in the index.
+     */
+    public Set<String> getAnchors( String document )
+    {
+        synchronized ( documents )
+        {
+            return documents.get( document );
+        }
+    }
+
+    /**
+     * Adds the anchors of a document to the index.
+     *
+     * @param document the absolute path or the URL of the document, not null.
+     * @param anchors the anchors of the document, not null. They should not be modified afterwards.
+     */
+    public void putAnchors( String document, Set<String> anchors )
+    {
+        synchronized ( documents )
+        {
+            documents.put( document, anchors );
+        }
+    }
+
+    /**
+     * Tells if a local file defines the given anchor.
+     *
+     * @param file the file, not null.
+     * @param encoding the encoding of the file.
+     * @param anchor the anchor, not null.
+     * @return true if the anchor is defined in the file.
+     */
+    public boolean hasAnchor( File file, String encoding, String anchor )
+    {
+        return getAnchors( file, encoding ).contains( anchor );
+    }
+}
@@ -19,14 +19,24 @@ package org.apache.maven.doxia.linkcheck.validation;
  * under the License.
  */
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.doxia.linkcheck.HtmlAttributeScanner;
 
 /**
  * A helper class to test if some content matches the given HTML anchor
  */
 public class Anchors
 {
+    /** The scanner for anchors, i.e. the name or id attributes of any element. */
+    private static final HtmlAttributeScanner SCANNER =
+        new HtmlAttributeScanner( null, new String[] { "id", "name" } );
+
     /**
      * Returns true if the given anchor can be found in the content markup.
      *
@@ -35,28 +45,140 @@ public class Anchors
      *
      * @return true if the given anchor can be found in the content markup.
      */
-    public static boolean matchesAnchor( String content, String anchor )
+    public static boolean matchesAnchor( String content, final String anchor )
     {
         if ( content != null && anchor.length() > 0 )
         {
-            // can use name or id attributes and also can use single or double quotes with whitespace around the =
-            String regex = "(?i)(name|id)(?-i)\\s*=\\s*('|\")" + escapeBrackets( anchor ) + "('|\")";
-            Pattern pattern = Pattern.compile( regex );
-            Matcher matcher = pattern.matcher( content );
-            return matcher.find();
+            final boolean[] found = new boolean[1];
+
+            try
+            {
+                SCANNER.scan( new StringReader( content ), new HtmlAttributeScanner.Handler()
+                {
+                    public boolean attribute( String element, String attribute, String value )
+                    {
+                        found[0] = anchor.equals( value );
+
+                        return !found[0];
+                    }
+                } );
+            }
+            catch ( IOException e )
+            {
+                // can't happen with a StringReader
+                throw new IllegalStateException( e.getMessage() );
+            }
+
+            return found[0];
         }
         return false;
     }
 
-    // for javadoc links, see DOXIA-410
-    private static String escapeBrackets( String content )
+    /**
+     * Returns all the anchors defined in the given markup, i.e. the values of the name and id attributes.
+     *
+     * @param reader the markup, not null. The reader is not closed.
+     * @return a new set with all the anchors.
+     * @throws IOException if the markup can't be read.
+     * @since 1.3
+     */
+    public static Set<String> getAnchors( Reader reader )
+        throws IOException
+    {
+        Set<String> anchors = new HashSet<String>();
+        SCANNER.scan( reader, new AnchorHandler( null, anchors ) );
+
+        return anchors;
+    }
+
+    /**
+     * Returns all the anchors defined in the given encoded markup, only the anchors being decoded.
+     *
+     * @param in the markup, not null. The stream is not closed.
+     * @param encoding the encoding of the markup, not null.
+     * @return a new set with all the anchors.
+     * @throws IOException if the markup can't be read.
+     * @since 1.3
+     */
+    public static Set<String> getAnchors( InputStream in, String encoding )
+        throws IOException
+    {
+        Set<String> anchors = new HashSet<String>();
+        SCANNER.scan( in, encoding, new AnchorHandler( null, anchors ) );
+
+        return anchors;
+    }
+
+    /**
+     * Scans the given markup for an anchor, stopping as soon as it is found, so the rest of the markup is not read.
+     *
+     * @param reader the markup, not null. The reader is not closed.
+     * @param anchor the anchor to find.
+     * @param anchors a set receiving the anchors read, which are all the anchors of the markup if the wanted one
+     * has not been found.
+     * @return true if the anchor has been found.
+     * @throws IOException if the markup can't be read.
+     * @since 1.3
+     */
+    public static boolean findAnchor( Reader reader, String anchor, Set<String> anchors )
+        throws IOException
+    {
+        AnchorHandler handler = new AnchorHandler( anchor, anchors );
+        SCANNER.scan( reader, handler );
+
+        return handler.found;
+    }
+
+    /**
+     * Scans the given encoded markup for an anchor, stopping as soon as it is found.
+     *
+     * @param in the markup, not null. The stream is not closed.
+     * @param encoding the encoding of the markup, not null.
+     * @param anchor the anchor to find.
+     * @param anchors a set receiving the anchors read, which are all the anchors of the markup if the wanted one
+     * has not been found.
+     * @return true if the anchor has been found.
+     * @throws IOException if the markup can't be read.
+     * @see #findAnchor(Reader, String, Set)
+     * @since 1.3
+     */
+    public static boolean findAnchor( InputStream in, String encoding, String anchor, Set<String> anchors )
+        throws IOException
     {
-        final String escaped = content.replace( "(", "\\(" ).replace( ")", "\\)" );
-        return escaped.replace( "[", "\\[" ).replace( "]", "\\]" );
+        AnchorHandler handler = new AnchorHandler( anchor, anchors );
+        SCANNER.scan( in, encoding, handler );
+
+        return handler.found;
     }
 
     private Anchors()
     {
         // utility class
     }
+
+    /** Adds the anchors read to a set, stopping at the wanted anchor if any. */
+    private static final class AnchorHandler
+        implements HtmlAttributeScanner.Handler
+    {
+        private final String anchor;
+
+        private final Set<String> anchors;
+
+        private boolean found;
+
+        AnchorHandler( String anchor, Set<String> anchors )
+        {
+            this.anchor = anchor;
+            this.anchors = anchors;
+        }
+
+        /** {@inheritDoc} */
+        public boolean attribute( String element, String attribute, String value )
+        {
+            anchors.add( value );
+            found = value.equals( anchor );
+
+            return !found;
+        }
+    }
 }
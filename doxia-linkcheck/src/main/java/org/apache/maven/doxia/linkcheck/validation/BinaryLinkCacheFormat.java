@@ -0,0 +1,440 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A compact binary link cache format, which doesn't depend on the classes of the results.
+ * <p>
+ * A cache file starts with the <code>DXLC</code> magic and the format version, followed by the number of entries.
+ * Each entry is prefixed by its length in bytes, so a reader skips the fields it doesn't know about and a cache
+ * written by a later version can still be read. Strings are length prefixed UTF-8, with a length of -1
+ * for <code>null</code>.
+ * </p>
+ * <pre>
+ * entry := key:string kind:byte status:int persistent:byte message:string [httpStatusCode:int]
+ *          checkTime:long [eTag:string lastModified:string]
+ * </pre>
+ * <p>
+ * The fields in brackets are only written for HTTP results. The check time and the HTTP validators were added
+ * by the version 2 of the format: results read from a version 1 file have a check time of <code>0</code>.
+ * </p>
+ * <p>
+ * Large files are memory-mapped when read. Files are written to a temporary file which then replaces the
+ * cache file, so an interrupted save never leaves a truncated cache behind.
+ * Only results with a String resource key are stored.
+ * </p>
+ *
+ * @since 1.3
+ */
+public class BinaryLinkCacheFormat
+    implements LinkCacheFormat
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( BinaryLinkCacheFormat.class );
+
+    /** The magic at the start of the file. */
+    private static final byte[] MAGIC = { 'D', 'X', 'L', 'C' };
+
+    /** The version of the format written. */
+    static final int VERSION = 2;
+
+    /** Entry kind of a {@link LinkValidationResult}. */
+    private static final byte PLAIN = 0;
+
+    /** Entry kind of a {@link HTTPLinkValidationResult}. */
+    private static final byte HTTP = 1;
+
+    /** The offset of the number of entries in the file. */
+    private static final long COUNT_OFFSET = MAGIC.length + 4;
+
+    /** Files of at least this size are memory-mapped, smaller ones are simply read. */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    /**
+     * Reads a cache file into a new map.
+     *
+     * @param cacheFile the cache file, an existing file.
+     * @return the cached results by resource key, or <code>null</code> if the file is not in this format
+     * or can't be decoded.
+     * @throws IOException if the file can't be read.
+     */
+    public Map<Object, LinkValidationResult> read( File cacheFile )
+        throws IOException
+    {
+        Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+
+        return read( cacheFile, cache ) ? cache : null;
+    }
+
+    /** {@inheritDoc} */
+    public boolean read( File cacheFile, Map<Object, LinkValidationResult> cache )
+        throws IOException
+    {
+        ByteBuffer buffer = load( cacheFile );
+
+        try
+        {
+            return decode( buffer, cache );
+        }
+        catch ( BufferUnderflowException e )
+        {
+            LOG.warn( "The cache file is truncated: " + cacheFile.getAbsolutePath() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            LOG.warn( "The cache file is corrupted: " + cacheFile.getAbsolutePath() );
+        }
+
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public void write( Map<Object, LinkValidationResult> cache, File cacheFile )
+        throws IOException
+    {
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if ( dir != null )
+        {
+            dir.mkdirs();
+        }
+
+        File tmp = File.createTempFile( cacheFile.getName(), ".tmp", dir );
+
+        boolean replaced = false;
+        FileOutputStream fos = null;
+        try
+        {
+            fos = new FileOutputStream( tmp );
+
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fos, 64 * 1024 ) );
+            int count = encode( cache, out );
+            out.flush();
+
+            // the entries are only iterated once, so their number is written afterwards
+            ByteBuffer countBuffer = ByteBuffer.allocate( 4 );
+            countBuffer.putInt( count ).flip();
+            fos.getChannel().write( countBuffer, COUNT_OFFSET );
+
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+
+            replace( tmp, cacheFile );
+            replaced = true;
+        }
+        finally
+        {
+            IOUtil.close( fos );
+
+            if ( !replaced )
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Private methods
+    // ----------------------------------------------------------------------
+
+    private static ByteBuffer load( File file )
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            FileChannel channel = raf.getChannel();
+
+            long size = channel.size();
+            if ( size > Integer.MAX_VALUE )
+            {
+                throw new IOException( "The cache file is too large: " + file.getAbsolutePath() );
+            }
+
+            if ( size >= MAP_THRESHOLD )
+            {
+                // the mapping stays valid once the channel is closed
+                return channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate( (int) size );
+            while ( buffer.hasRemaining() && channel.read( buffer ) != -1 )
+            {
+                // read the whole file
+            }
+            buffer.flip();
+
+            return buffer;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static boolean decode( ByteBuffer buffer, Map<Object, LinkValidationResult> cache )
+    {
+        if ( buffer.remaining() < MAGIC.length + 8 )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < MAGIC.length; i++ )
+        {
+            if ( buffer.get() != MAGIC[i] )
+            {
+                return false;
+            }
+        }
+
+        int version = buffer.getInt();
+        if ( version < 1 )
+        {
+            return false;
+        }
+
+        int count = buffer.getInt();
+        if ( count < 0 )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < count; i++ )
+        {
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+
+            if ( length < 0 || end > buffer.limit() )
+            {
+                throw new BufferUnderflowException();
+            }
+
+            String key = readString( buffer );
+            LinkValidationResult result = readResult( buffer, version );
+
+            if ( buffer.position() > end )
+            {
+                throw new BufferUnderflowException();
+            }
+
+            // skip the fields added by later versions
+            buffer.position( end );
+
+            if ( key != null && result != null )
+            {
+                cache.put( key, result );
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the result of an entry, after its key.
+     *
+     * @param buffer the buffer, positioned after the key.
+     * @param version the version of the format of the entry.
+     * @return the result, or null if the kind of the entry is unknown.
+     */
+    static LinkValidationResult readResult( ByteBuffer buffer, int version )
+    {
+        byte kind = buffer.get();
+
+        if ( kind != PLAIN && kind != HTTP )
+        {
+            return null;
+        }
+
+        int status = buffer.getInt();
+        boolean persistent = buffer.get() != 0;
+        String message = readString( buffer );
+        int httpStatusCode = ( kind == HTTP ) ? buffer.getInt() : -1;
+
+        long checkTime = 0;
+        String eTag = null;
+        String lastModified = null;
+        if ( version >= 2 )
+        {
+            checkTime = buffer.getLong();
+
+            if ( kind == HTTP )
+            {
+                eTag = readString( buffer );
+                lastModified = readString( buffer );
+            }
+        }
+
+        if ( kind == HTTP )
+        {
+            return new HTTPLinkValidationResult( status, persistent, httpStatusCode, message, eTag, lastModified,
+                                                 checkTime );
+        }
+
+        return new LinkValidationResult( status, persistent, message, checkTime );
+    }
+
+    static String readString( ByteBuffer buffer )
+    {
+        int length = buffer.getInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        if ( length > buffer.remaining() )
+        {
+            throw new BufferUnderflowException();
+        }
+
+        if ( buffer.hasArray() )
+        {
+            String s = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8 );
+            buffer.position( buffer.position() + length );
+
+            return s;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+
+        return new String( bytes, UTF_8 );
+    }
+
+    /**
+     * Writes the header and the entries, with a placeholder for the number of entries.
+     *
+     * @return the number of entries written.
+     */
+    private static int encode( Map<Object, LinkValidationResult> cache, DataOutputStream out )
+        throws IOException
+    {
+        out.write( MAGIC );
+        out.writeInt( VERSION );
+        out.writeInt( 0 );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+        DataOutputStream entryOut = new DataOutputStream( bytes );
+
+        int count = 0;
+        for ( Map.Entry<Object, LinkValidationResult> entry : cache.entrySet() )
+        {
+            if ( !( entry.getKey() instanceof String ) || entry.getValue() == null )
+            {
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( "[" + entry.getKey() + "] can't be stored in the cache." );
+                }
+                continue;
+            }
+
+            bytes.reset();
+            writeEntry( entryOut, (String) entry.getKey(), entry.getValue() );
+            entryOut.flush();
+
+            out.writeInt( bytes.size() );
+            bytes.writeTo( out );
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes an entry, without its length.
+     *
+     * @param out the output.
+     * @param key the resource key.
+     * @param result the result.
+     * @throws IOException if any
+     */
+    static void writeEntry( DataOutputStream out, String key, LinkValidationResult result )
+        throws IOException
+    {
+        boolean http = result instanceof HTTPLinkValidationResult;
+
+        writeString( out, key );
+        out.writeByte( http ? HTTP : PLAIN );
+        out.writeInt( result.getStatus() );
+        out.writeBoolean( result.isPersistent() );
+        writeString( out, result.getRawErrorMessage() );
+        if ( http )
+        {
+            out.writeInt( ( (HTTPLinkValidationResult) result ).getHttpStatusCode() );
+        }
+        out.writeLong( result.getCheckTime() );
+        if ( http )
+        {
+            writeString( out, ( (HTTPLinkValidationResult) result ).getETag() );
+            writeString( out, ( (HTTPLinkValidationResult) result ).getLastModified() );
+        }
+    }
+
+    private static void writeString( DataOutputStream out, String s )
+        throws IOException
+    {
+        if ( s == null )
+        {
+            out.writeInt( -1 );
+            return;
+        }
+
+        byte[] bytes = s.getBytes( UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    /**
+     * Replaces the target by the source. The rename is atomic where the platform supports renaming over
+     * an existing file, otherwise the target is deleted first.
+     */
+    private static void replace( File source, File target )
+        throws IOException
+    {
+        if ( source.renameTo( target ) )
+        {
+            return;
+        }
+
+        if ( ( target.exists() && !target.delete() ) || !source.renameTo( target ) )
+        {
+            throw new IOException( "Unable to replace " + target.getAbsolutePath() );
+        }
+    }
+}
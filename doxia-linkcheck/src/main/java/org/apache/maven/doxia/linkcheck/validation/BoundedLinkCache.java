@@ -0,0 +1,659 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A link cache keeping at most a given number of results in memory. The least recently used results are
+ * spilled to a temporary file in the {@link BinaryLinkCacheFormat} entry format, and are read back, and moved
+ * to memory again, when asked for. Only the resource keys and the file offsets of the spilled results stay
+ * in memory. The space of the spilled results read back or replaced is reclaimed by rewriting the file once
+ * it is mostly made of them.
+ * <p>
+ * The results in memory are split into segments by resource key, each with its own lock and its own share
+ * of the budget, so lookups of different keys seldom wait for each other. Results with a resource key
+ * which is not a String can't be spilled, they are dropped when evicted.
+ * </p>
+ *
+ * @since 1.3
+ */
+class BoundedLinkCache
+    extends AbstractMap<Object, LinkValidationResult>
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( BoundedLinkCache.class );
+
+    /** The maximum number of segments. */
+    private static final int SEGMENTS = 16;
+
+    /** The length under which the spill file is never compacted, in bytes. */
+    static final long MIN_COMPACTED_LENGTH = 1024 * 1024;
+
+    /** The segments. */
+    private final Segment[] segments;
+
+    /** The results evicted from memory. */
+    private final SpillFile spill;
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries the maximum number of results kept in memory, at least 1.
+     * @param directory the directory of the spill file, or <code>null</code> for the temporary directory.
+     */
+    BoundedLinkCache( int maxEntries, File directory )
+    {
+        if ( maxEntries < 1 )
+        {
+            throw new IllegalArgumentException( maxEntries + " should be positive." );
+        }
+
+        this.spill = new SpillFile( directory );
+
+        int count = Math.min( SEGMENTS, maxEntries );
+        this.segments = new Segment[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            this.segments[i] = new Segment( maxEntries / count + ( i < maxEntries % count ? 1 : 0 ) );
+        }
+    }
+
+    /** {@inheritDoc} */
+    public LinkValidationResult get( Object key )
+    {
+        Segment segment = segmentFor( key );
+
+        LinkValidationResult result = segment.get( key );
+        if ( result != null )
+        {
+            return result;
+        }
+
+        result = spill.remove( key );
+        if ( result == null )
+        {
+            return null;
+        }
+
+        // back to memory, unless a newer result was put meanwhile
+        return segment.putIfAbsent( key, result );
+    }
+
+    /** {@inheritDoc} */
+    public boolean containsKey( Object key )
+    {
+        return segmentFor( key ).containsKey( key ) || spill.containsKey( key );
+    }
+
+    /** {@inheritDoc} */
+    public LinkValidationResult put( Object key, LinkValidationResult result )
+    {
+        if ( key == null || result == null )
+        {
+            throw new NullPointerException();
+        }
+
+        return segmentFor( key ).put( key, result );
+    }
+
+    /** {@inheritDoc} */
+    public int size()
+    {
+        int size = spill.size();
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            size += segments[i].size();
+        }
+
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    public void clear()
+    {
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i].clear();
+        }
+        spill.clear();
+    }
+
+    /**
+     * Returns the results in memory followed by the spilled results, which are read one at a time
+     * while iterating. The entries can't be removed through this set.
+     *
+     * @return a view of the entries.
+     */
+    public Set<Map.Entry<Object, LinkValidationResult>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<Object, LinkValidationResult>>()
+        {
+            public Iterator<Map.Entry<Object, LinkValidationResult>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            public int size()
+            {
+                return BoundedLinkCache.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of spilled results.
+     *
+     * @return the number of results on disk.
+     */
+    int getSpilledEntries()
+    {
+        return spill.size();
+    }
+
+    /**
+     * Returns the length of the spill file.
+     *
+     * @return the length in bytes, 0 if nothing has been spilled.
+     */
+    long getSpillLength()
+    {
+        return spill.length();
+    }
+
+    /**
+     * Deletes the spill file. The spilled results are lost.
+     */
+    void close()
+    {
+        spill.close();
+    }
+
+    // ----------------------------------------------------------------------
+    // Private methods
+    // ----------------------------------------------------------------------
+
+    private Segment segmentFor( Object key )
+    {
+        int h = key.hashCode();
+        h ^= ( h >>> 16 );
+
+        return segments[( h & 0x7fffffff ) % segments.length];
+    }
+
+    /**
+     * The results of some keys, in access order. Eldest results are spilled once the budget is exceeded.
+     */
+    private final class Segment
+    {
+        /** The results, guarded by this. */
+        private final LinkedHashMap<Object, LinkValidationResult> results;
+
+        Segment( final int budget )
+        {
+            this.results = new LinkedHashMap<Object, LinkValidationResult>( 16, 0.75f, true )
+            {
+                private static final long serialVersionUID = 1L;
+
+                /** {@inheritDoc} */
+                protected boolean removeEldestEntry( Map.Entry<Object, LinkValidationResult> eldest )
+                {
+                    if ( size() > budget )
+                    {
+                        spill.write( eldest.getKey(), eldest.getValue() );
+
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        synchronized LinkValidationResult get( Object key )
+        {
+            return results.get( key );
+        }
+
+        synchronized boolean containsKey( Object key )
+        {
+            return results.containsKey( key );
+        }
+
+        synchronized LinkValidationResult put( Object key, LinkValidationResult result )
+        {
+            // the spilled result, if any, is outdated; discarded under the lock, before the new one may be spilled
+            spill.discard( key );
+
+            return results.put( key, result );
+        }
+
+        synchronized LinkValidationResult putIfAbsent( Object key, LinkValidationResult result )
+        {
+            LinkValidationResult current = results.get( key );
+            if ( current != null )
+            {
+                return current;
+            }
+
+            results.put( key, result );
+
+            return result;
+        }
+
+        synchronized int size()
+        {
+            return results.size();
+        }
+
+        synchronized void clear()
+        {
+            results.clear();
+        }
+
+        synchronized List<Map.Entry<Object, LinkValidationResult>> snapshot()
+        {
+            List<Map.Entry<Object, LinkValidationResult>> entries =
+                new ArrayList<Map.Entry<Object, LinkValidationResult>>( results.size() );
+            for ( Map.Entry<Object, LinkValidationResult> entry : results.entrySet() )
+            {
+                entries.add( new SimpleImmutableEntry<Object, LinkValidationResult>( entry ) );
+            }
+
+            return entries;
+        }
+    }
+
+    /**
+     * The spilled results, appended to a temporary file created on the first spill, and rewritten to a new file
+     * when the results read back or replaced take more than half of it.
+     */
+    private static final class SpillFile
+    {
+        /** The directory of the file, or null for the temporary directory. */
+        private final File directory;
+
+        /** The entries by key, guarded by this. */
+        private final Map<Object, Slot> slots = new HashMap<Object, Slot>();
+
+        /** The length of the entries of the slots, the rest of the file is garbage. */
+        private long liveLength;
+
+        /** The file, null until the first spill. */
+        private File file;
+
+        /** The opened file, null until the first spill. */
+        private RandomAccessFile raf;
+
+        /** The buffer of the entry being written. */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+
+        SpillFile( File directory )
+        {
+            this.directory = directory;
+        }
+
+        synchronized void write( Object key, LinkValidationResult result )
+        {
+            if ( !( key instanceof String ) )
+            {
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( "[" + key + "] can't be spilled, it is dropped from the cache." );
+                }
+                return;
+            }
+
+            try
+            {
+                if ( raf == null )
+                {
+                    file = createFile();
+                    raf = new RandomAccessFile( file, "rw" );
+                }
+
+                bytes.reset();
+                DataOutputStream out = new DataOutputStream( bytes );
+                BinaryLinkCacheFormat.writeEntry( out, (String) key, result );
+                out.flush();
+
+                long offset = raf.length();
+                raf.seek( offset );
+                raf.writeInt( bytes.size() );
+                raf.write( bytes.toByteArray() );
+
+                free( slots.put( key, new Slot( offset, 4 + bytes.size() ) ) );
+                liveLength += 4 + bytes.size();
+            }
+            catch ( IOException e )
+            {
+                LOG.warn( "Unable to spill the cached result of " + key + ": " + e.getMessage() );
+
+                return;
+            }
+
+            try
+            {
+                if ( raf.length() > MIN_COMPACTED_LENGTH && raf.length() > 2 * liveLength )
+                {
+                    compact();
+                }
+            }
+            catch ( IOException e )
+            {
+                LOG.warn( "Unable to compact the spilled results: " + e.getMessage() );
+            }
+        }
+
+        synchronized LinkValidationResult read( Object key )
+        {
+            Slot slot = slots.get( key );
+            if ( slot == null )
+            {
+                return null;
+            }
+
+            try
+            {
+                raf.seek( slot.offset + 4 );
+                byte[] entry = new byte[slot.length - 4];
+                raf.readFully( entry );
+
+                ByteBuffer buffer = ByteBuffer.wrap( entry );
+                BinaryLinkCacheFormat.readString( buffer );
+
+                return BinaryLinkCacheFormat.readResult( buffer, BinaryLinkCacheFormat.VERSION );
+            }
+            catch ( IOException e )
+            {
+                LOG.warn( "Unable to read the spilled result of " + key + ": " + e.getMessage() );
+
+                free( slots.remove( key ) );
+
+                return null;
+            }
+        }
+
+        synchronized LinkValidationResult remove( Object key )
+        {
+            LinkValidationResult result = read( key );
+            free( slots.remove( key ) );
+
+            return result;
+        }
+
+        synchronized void discard( Object key )
+        {
+            free( slots.remove( key ) );
+        }
+
+        synchronized boolean containsKey( Object key )
+        {
+            return slots.containsKey( key );
+        }
+
+        synchronized int size()
+        {
+            return slots.size();
+        }
+
+        synchronized long length()
+        {
+            try
+            {
+                return ( raf == null ) ? 0 : raf.length();
+            }
+            catch ( IOException e )
+            {
+                return 0;
+            }
+        }
+
+        synchronized List<Object> keys()
+        {
+            return new ArrayList<Object>( slots.keySet() );
+        }
+
+        synchronized void clear()
+        {
+            slots.clear();
+            liveLength = 0;
+
+            if ( raf != null )
+            {
+                try
+                {
+                    raf.setLength( 0 );
+                }
+                catch ( IOException e )
+                {
+                    LOG.warn( "Unable to truncate the spilled results: " + e.getMessage() );
+                }
+            }
+        }
+
+        synchronized void close()
+        {
+            slots.clear();
+            liveLength = 0;
+
+            if ( raf != null )
+            {
+                try
+                {
+                    raf.close();
+                }
+                catch ( IOException e )
+                {
+                    // nop
+                }
+                raf = null;
+
+                file.delete();
+            }
+        }
+
+        private File createFile()
+            throws IOException
+        {
+            File spillFile = File.createTempFile( "linkcheck", ".spill", directory );
+            spillFile.deleteOnExit();
+
+            return spillFile;
+        }
+
+        /**
+         * @param slot the slot of a result read back or replaced, may be null
+         */
+        private void free( Slot slot )
+        {
+            if ( slot != null )
+            {
+                liveLength -= slot.length;
+            }
+        }
+
+        /**
+         * Copies the live entries to a new file, which replaces the current one.
+         *
+         * @throws IOException if any, the current file being kept
+         */
+        private void compact()
+            throws IOException
+        {
+            File compactedFile = createFile();
+            RandomAccessFile compacted = new RandomAccessFile( compactedFile, "rw" );
+
+            Map<Object, Slot> moved = new HashMap<Object, Slot>( slots.size() * 2 );
+            try
+            {
+                byte[] entry = new byte[256];
+                long offset = 0;
+                for ( Map.Entry<Object, Slot> e : slots.entrySet() )
+                {
+                    Slot slot = e.getValue();
+                    if ( entry.length < slot.length )
+                    {
+                        entry = new byte[slot.length];
+                    }
+
+                    raf.seek( slot.offset );
+                    raf.readFully( entry, 0, slot.length );
+                    compacted.write( entry, 0, slot.length );
+
+                    moved.put( e.getKey(), new Slot( offset, slot.length ) );
+                    offset += slot.length;
+                }
+            }
+            catch ( IOException e )
+            {
+                compacted.close();
+                compactedFile.delete();
+
+                throw e;
+            }
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Spill file compacted from " + raf.length() + " to " + compacted.length() + " bytes." );
+            }
+
+            try
+            {
+                raf.close();
+            }
+            catch ( IOException e )
+            {
+                // nop
+            }
+            file.delete();
+
+            file = compactedFile;
+            raf = compacted;
+            slots.clear();
+            slots.putAll( moved );
+        }
+    }
+
+    /** The location of a spilled result: its offset and its length, including the length prefix. */
+    private static final class Slot
+    {
+        private final long offset;
+
+        private final int length;
+
+        Slot( long offset, int length )
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Iterates over the snapshots of the segments, then over the spilled keys, reading each spilled result
+     * without moving it to memory.
+     */
+    private final class EntryIterator
+        implements Iterator<Map.Entry<Object, LinkValidationResult>>
+    {
+        private int segment;
+
+        private Iterator<Map.Entry<Object, LinkValidationResult>> inMemory;
+
+        private Iterator<Object> spilled;
+
+        private Map.Entry<Object, LinkValidationResult> next;
+
+        /** {@inheritDoc} */
+        public boolean hasNext()
+        {
+            while ( next == null )
+            {
+                if ( inMemory != null && inMemory.hasNext() )
+                {
+                    next = inMemory.next();
+                }
+                else if ( segment < segments.length )
+                {
+                    inMemory = segments[segment++].snapshot().iterator();
+                }
+                else
+                {
+                    if ( spilled == null )
+                    {
+                        spilled = spill.keys().iterator();
+                    }
+
+                    if ( !spilled.hasNext() )
+                    {
+                        return false;
+                    }
+
+                    Object key = spilled.next();
+                    LinkValidationResult result = spill.read( key );
+                    if ( result != null )
+                    {
+                        next = new SimpleImmutableEntry<Object, LinkValidationResult>( key, result );
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public Map.Entry<Object, LinkValidationResult> next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<Object, LinkValidationResult> entry = next;
+            next = null;
+
+            return entry;
+        }
+
+        /** {@inheritDoc} */
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The excluded links compiled once into a single matcher, with the semantics of
+ * {@link LinkValidatorManager#matchPattern(String, String)} for each pattern:
+ * <ul>
+ * <li>the plain patterns, i.e. without <code>*</code>, match the links containing them. They are merged into
+ * one Aho-Corasick automaton, so they are all looked for in a single pass over the link;</li>
+ * <li>the wildcard patterns are tokenised once, and are only tried on the links starting with their
+ * leading literal character, if any.</li>
+ * </ul>
+ * The scheme of a link is read once by a simple scan, the link is only parsed as an URI when its scheme doesn't
+ * suit all the wildcard patterns, to skip the scheme check for illegal URIs as <code>matchPattern</code> does.
+ * <p>
+ * A matcher is immutable and can be used concurrently.
+ * </p>
+ *
+ * @since 1.3
+ */
+class ExclusionMatcher
+{
+    /** No pattern. */
+    private static final Glob[] NO_GLOBS = new Glob[0];
+
+    /** True if an empty pattern was given, it matches the empty links. */
+    private final boolean matchesEmpty;
+
+    /** True if a plain pattern matches any link, i.e. <code>/</code>. */
+    private final boolean matchesAll;
+
+    /** The automaton of the plain patterns, or null if there is none. */
+    private final Node literals;
+
+    /** The wildcard patterns starting with <code>*</code>, tried against the links made relative. */
+    private final Glob[] leadingStarGlobs;
+
+    /** The wildcard patterns starting with <code>?</code>. */
+    private final Glob[] leadingAnyGlobs;
+
+    /** The other wildcard patterns, by first character. */
+    private final Map<Character, Glob[]> globsByFirstChar;
+
+    /** True if there is at least one wildcard pattern. */
+    private final boolean hasGlobs;
+
+    /** Tells for each scheme met if all the wildcard patterns start with it. */
+    private final ConcurrentMap<String, Boolean> schemes = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns the patterns, may be null or contain null values which are ignored.
+     */
+    ExclusionMatcher( String[] patterns )
+    {
+        boolean empty = false;
+        boolean all = false;
+        List<String> plain = new ArrayList<String>();
+        List<Glob> leadingStar = new ArrayList<Glob>();
+        List<Glob> leadingAny = new ArrayList<Glob>();
+        Map<Character, List<Glob>> byFirstChar = new HashMap<Character, List<Glob>>();
+
+        for ( int i = 0; patterns != null && i < patterns.length; i++ )
+        {
+            String pattern = patterns[i];
+
+            if ( pattern == null )
+            {
+                continue;
+            }
+
+            if ( pattern.length() == 0 )
+            {
+                empty = true;
+            }
+            else if ( pattern.indexOf( '*' ) == -1 )
+            {
+                if ( pattern.endsWith( "/" ) )
+                {
+                    pattern = pattern.substring( 0, pattern.length() - 1 );
+                }
+
+                if ( pattern.length() == 0 )
+                {
+                    all = true;
+                }
+                else
+                {
+                    plain.add( pattern );
+                }
+            }
+            else
+            {
+                Glob glob = new Glob( pattern );
+
+                char first = pattern.charAt( 0 );
+                if ( glob.leadingStar )
+                {
+                    leadingStar.add( glob );
+                }
+                else if ( first == '*' || first == '?' )
+                {
+                    leadingAny.add( glob );
+                }
+                else
+                {
+                    List<Glob> globs = byFirstChar.get( Character.valueOf( first ) );
+                    if ( globs == null )
+                    {
+                        globs = new ArrayList<Glob>();
+                        byFirstChar.put( Character.valueOf( first ), globs );
+                    }
+                    globs.add( glob );
+                }
+            }
+        }
+
+        this.matchesEmpty = empty;
+        this.matchesAll = all;
+        this.literals = plain.isEmpty() ? null : Node.build( plain );
+        this.leadingStarGlobs = leadingStar.toArray( NO_GLOBS );
+        this.leadingAnyGlobs = leadingAny.toArray( NO_GLOBS );
+        this.globsByFirstChar = new HashMap<Character, Glob[]>();
+        for ( Map.Entry<Character, List<Glob>> entry : byFirstChar.entrySet() )
+        {
+            this.globsByFirstChar.put( entry.getKey(), entry.getValue().toArray( NO_GLOBS ) );
+        }
+        this.hasGlobs = leadingStarGlobs.length + leadingAnyGlobs.length + globsByFirstChar.size() > 0;
+    }
+
+    /**
+     * Tells if a link matches one of the patterns.
+     *
+     * @param link the link, not null.
+     * @return true if the link matches one of the patterns.
+     */
+    boolean matches( String link )
+    {
+        if ( matchesAll || ( matchesEmpty && link.length() == 0 ) )
+        {
+            return true;
+        }
+
+        if ( literals != null && literals.find( link ) )
+        {
+            return true;
+        }
+
+        if ( !hasGlobs )
+        {
+            return false;
+        }
+
+        String scheme = getScheme( link );
+        if ( scheme != null && !isCommonScheme( scheme ) && !isLegalUri( link ) )
+        {
+            scheme = null;
+        }
+
+        if ( link.length() > 0 )
+        {
+            Glob[] globs = globsByFirstChar.get( Character.valueOf( link.charAt( 0 ) ) );
+            if ( globs != null && matches( globs, link, scheme ) )
+            {
+                return true;
+            }
+        }
+        else
+        {
+            // the empty link may be matched by its "/" variant
+            for ( Glob[] globs : globsByFirstChar.values() )
+            {
+                if ( matches( globs, link, scheme ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        if ( matches( leadingAnyGlobs, link, scheme ) )
+        {
+            return true;
+        }
+
+        if ( leadingStarGlobs.length > 0 )
+        {
+            String relative = ( link.startsWith( "/" ) || link.startsWith( "./" ) ) ? link : "./" + link;
+
+            return matches( leadingStarGlobs, relative, scheme );
+        }
+
+        return false;
+    }
+
+    // ----------------------------------------------------------------------
+    // Private methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param scheme not null
+     * @return true if all the wildcard patterns start with the given scheme.
+     */
+    private boolean isCommonScheme( String scheme )
+    {
+        Boolean common = schemes.get( scheme );
+        if ( common == null )
+        {
+            common = Boolean.valueOf( startWith( leadingStarGlobs, scheme ) && startWith( leadingAnyGlobs, scheme ) );
+            for ( Glob[] globs : globsByFirstChar.values() )
+            {
+                common = Boolean.valueOf( common.booleanValue() && startWith( globs, scheme ) );
+            }
+            schemes.put( scheme, common );
+        }
+
+        return common.booleanValue();
+    }
+
+    private static boolean startWith( Glob[] globs, String scheme )
+    {
+        for ( int i = 0; i < globs.length; i++ )
+        {
+            if ( !globs[i].pattern.startsWith( scheme ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isLegalUri( String link )
+    {
+        try
+        {
+            new URI( link );
+
+            return true;
+        }
+        catch ( URISyntaxException e )
+        {
+            return false;
+        }
+    }
+
+    private static boolean matches( Glob[] globs, String link, String scheme )
+    {
+        for ( int i = 0; i < globs.length; i++ )
+        {
+            if ( globs[i].matches( link, scheme ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param link not null
+     * @return the scheme of the link as defined by RFC 2396, or null if it has none.
+     */
+    static String getScheme( String link )
+    {
+        if ( link.length() == 0 || !isAlpha( link.charAt( 0 ) ) )
+        {
+            return null;
+        }
+
+        for ( int i = 1; i < link.length(); i++ )
+        {
+            char c = link.charAt( i );
+
+            if ( c == ':' )
+            {
+                return link.substring( 0, i );
+            }
+
+            if ( !isAlpha( c ) && !( c >= '0' && c <= '9' ) && c != '+' && c != '-' && c != '.' )
+            {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isAlpha( char c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+    }
+
+    /**
+     * A pattern with wildcards: <code>*</code> matches zero or more characters, <code>?</code> exactly one.
+     */
+    private static final class Glob
+    {
+        /** The pattern. */
+        private final String pattern;
+
+        /** The characters of the pattern. */
+        private final char[] chars;
+
+        /** True if the links should be made relative before matching, as done by <code>matchPattern</code>. */
+        private final boolean leadingStar;
+
+        Glob( String pattern )
+        {
+            this.pattern = pattern;
+            this.chars = pattern.toCharArray();
+            this.leadingStar = pattern.matches( "\\*+/?.*" );
+        }
+
+        /**
+         * @param link the link, already made relative for a pattern with a leading star.
+         * @param scheme the scheme of the original link, or null.
+         * @return true if the link matches.
+         */
+        boolean matches( String link, String scheme )
+        {
+            if ( scheme != null && !pattern.startsWith( scheme ) )
+            {
+                return false;
+            }
+
+            // a directory pattern also matches the link of the directory without trailing slash
+            int common = 0;
+            int max = Math.min( link.length(), chars.length );
+            while ( common < max && link.charAt( common ) == chars[common] )
+            {
+                common++;
+            }
+
+            return match( link, common < chars.length && chars[common] == '/' );
+        }
+
+        /**
+         * Matches the whole link, with one backtracking point on the last star.
+         *
+         * @param link the link.
+         * @param slash true if a trailing <code>/</code> is appended to the link.
+         * @return true if the link matches.
+         */
+        private boolean match( String link, boolean slash )
+        {
+            int length = link.length() + ( slash ? 1 : 0 );
+            int p = 0;
+            int s = 0;
+            int star = -1;
+            int starS = 0;
+
+            while ( s < length )
+            {
+                char c = ( s < link.length() ) ? link.charAt( s ) : '/';
+
+                if ( p < chars.length && ( chars[p] == '?' || chars[p] == c ) )
+                {
+                    p++;
+                    s++;
+                }
+                else if ( p < chars.length && chars[p] == '*' )
+                {
+                    star = p++;
+                    starS = s;
+                }
+                else if ( star != -1 )
+                {
+                    p = star + 1;
+                    s = ++starS;
+                }
+                else
+                {
+                    return false;
+                }
+            }
+
+            while ( p < chars.length && chars[p] == '*' )
+            {
+                p++;
+            }
+
+            return p == chars.length;
+        }
+    }
+
+    /**
+     * A state of the Aho-Corasick automaton of the plain patterns.
+     */
+    private static final class Node
+    {
+        /** The sorted characters of the transitions. */
+        private char[] labels = new char[0];
+
+        /** The targets of the transitions, in the order of the labels. */
+        private Node[] targets = new Node[0];
+
+        /** The longest proper suffix state, null for the root. */
+        private Node fail;
+
+        /** True if a pattern ends here, or in one of the fail states. */
+        private boolean output;
+
+        /**
+         * @param patterns the non empty plain patterns.
+         * @return the root of the automaton.
+         */
+        static Node build( List<String> patterns )
+        {
+            Map<Node, TreeMap<Character, Node>> edges = new HashMap<Node, TreeMap<Character, Node>>();
+            Node root = new Node();
+
+            for ( String pattern : patterns )
+            {
+                Node node = root;
+                for ( int i = 0; i < pattern.length(); i++ )
+                {
+                    TreeMap<Character, Node> children = edges.get( node );
+                    if ( children == null )
+                    {
+                        children = new TreeMap<Character, Node>();
+                        edges.put( node, children );
+                    }
+
+                    Character c = Character.valueOf( pattern.charAt( i ) );
+                    Node next = children.get( c );
+                    if ( next == null )
+                    {
+                        next = new Node();
+                        children.put( c, next );
+                    }
+                    node = next;
+                }
+                node.output = true;
+            }
+
+            for ( Map.Entry<Node, TreeMap<Character, Node>> entry : edges.entrySet() )
+            {
+                Node node = entry.getKey();
+                TreeMap<Character, Node> children = entry.getValue();
+
+                node.labels = new char[children.size()];
+                node.targets = new Node[children.size()];
+                int i = 0;
+                for ( Map.Entry<Character, Node> child : children.entrySet() )
+                {
+                    node.labels[i] = child.getKey().charValue();
+                    node.targets[i] = child.getValue();
+                    i++;
+                }
+            }
+
+            // breadth first, so the fail state of a node is complete before its children
+            LinkedList<Node> queue = new LinkedList<Node>();
+            for ( Node child : root.targets )
+            {
+                child.fail = root;
+                queue.add( child );
+            }
+
+            while ( !queue.isEmpty() )
+            {
+                Node node = queue.removeFirst();
+
+                for ( int i = 0; i < node.labels.length; i++ )
+                {
+                    Node child = node.targets[i];
+
+                    Node fail = node.fail;
+                    Node target = fail.next( node.labels[i] );
+                    while ( target == null && fail != root )
+                    {
+                        fail = fail.fail;
+                        target = fail.next( node.labels[i] );
+                    }
+                    child.fail = ( target == null ) ? root : target;
+                    child.output |= child.fail.output;
+
+                    queue.add( child );
+                }
+            }
+
+            return root;
+        }
+
+        /**
+         * @param text not null
+         * @return true if one of the patterns occurs in the text.
+         */
+        boolean find( String text )
+        {
+            Node node = this;
+
+            for ( int i = 0; i < text.length(); i++ )
+            {
+                char c = text.charAt( i );
+
+                Node next = node.next( c );
+                while ( next == null && node.fail != null )
+                {
+                    node = node.fail;
+                    next = node.next( c );
+                }
+                node = ( next == null ) ? node : next;
+
+                if ( node.output )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private Node next( char c )
+        {
+            int i = Arrays.binarySearch( labels, c );
+
+            return ( i < 0 ) ? null : targets[i];
+        }
+    }
+}
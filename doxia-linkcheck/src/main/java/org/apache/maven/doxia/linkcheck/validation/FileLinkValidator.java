@@ -20,13 +20,9 @@ package org.apache.maven.doxia.linkcheck.validation;
  */
 
 import java.io.File;
-import java.io.IOException;
-import java.io.Reader;
 import java.util.Locale;
 
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
-import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.WriterFactory;
 
@@ -42,24 +38,64 @@ public final class FileLinkValidator
 {
     private String encoding;
 
+    /** The anchors of the files. */
+    private final AnchorIndex anchorIndex;
+
+    /** The files of the site, null to look each file up in the file system. */
+    private volatile SitePathIndex pathIndex;
+
     /**
      * @param encoding the encoding file used. If empty, using UTF-8.
      */
     public FileLinkValidator( String encoding )
+    {
+        this( encoding, new AnchorIndex() );
+    }
+
+    /**
+     * @param encoding the encoding file used. If empty, using UTF-8.
+     * @param anchorIndex the index of the anchors of the files, possibly shared with other validators, not null.
+     * @since 1.3
+     */
+    public FileLinkValidator( String encoding, AnchorIndex anchorIndex )
     {
         if ( StringUtils.isEmpty( encoding ) )
         {
             encoding = WriterFactory.UTF_8;
         }
         this.encoding = encoding;
+        this.anchorIndex = anchorIndex;
+    }
+
+    /**
+     * Returns the index of the files of the site.
+     *
+     * @return the path index, or null if each file is looked up in the file system.
+     * @since 1.3
+     */
+    public SitePathIndex getPathIndex()
+    {
+        return this.pathIndex;
+    }
+
+    /**
+     * Sets the index of the files of the site, used to check the files without a file system call per link.
+     *
+     * @param pathIndex the path index, or null to look each file up in the file system.
+     * @since 1.3
+     */
+    public void setPathIndex( SitePathIndex pathIndex )
+    {
+        this.pathIndex = pathIndex;
     }
 
     /** {@inheritDoc} */
     public LinkValidationResult validateLink( LinkValidationItem lvi )
     {
         File f = getFile( lvi );
+        SitePathIndex index = this.pathIndex;
 
-        if ( f.exists() )
+        if ( ( index == null ) ? f.exists() : index.exists( f ) )
         {
             return new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, "" );
         }
@@ -81,7 +117,7 @@ public final class FileLinkValidator
             return null;
         }
 
-        return getFile( lvi ).getAbsolutePath();
+        return SitePathIndex.normalize( getFile( lvi ) );
     }
 
     // ----------------------------------------------------------------------
@@ -107,8 +143,7 @@ public final class FileLinkValidator
             if ( link.trim().length() == 0 ) // in the same file
             {
                 // the anchor exists?
-                String content = read( lvi.getSource(), encoding );
-                if ( Anchors.matchesAnchor( content, anchor ) )
+                if ( anchorIndex.hasAnchor( lvi.getSource(), encoding, anchor ) )
                 {
                     return lvi.getSource();
                 }
@@ -118,10 +153,10 @@ public final class FileLinkValidator
             }
 
             // the anchor exists?
-            String content = read( new File( lvi.getSource().getParentFile(), link ), encoding );
-            if ( Anchors.matchesAnchor( content, anchor ) )
+            File target = new File( lvi.getSource().getParentFile(), link );
+            if ( anchorIndex.hasAnchor( target, encoding, anchor ) )
             {
-                return new File( lvi.getSource().getParentFile(), link );
+                return target;
             }
 
             // return an invalid file
@@ -142,29 +177,4 @@ public final class FileLinkValidator
 
         return new File( lvi.getSource().getParentFile(), link );
     }
-
-    /**
-     * @param f not null
-     * @param encoding the encoding file used
-     * @return the content of the file or null if an error occurred.
-     */
-    private static String read( File f, String encoding )
-    {
-        Reader reader = null;
-        try
-        {
-            reader = ReaderFactory.newReader( f, encoding );
-            return IOUtil.toString( reader );
-        }
-        catch ( IOException e )
-        {
-            // nop;
-        }
-        finally
-        {
-            IOUtil.close( reader );
-        }
-
-        return null;
-    }
 }
@@ -34,6 +34,15 @@ public class HTTPLinkValidationResult
     /** The httpStatusCode. */
     private final int httpStatusCode;
 
+    /** The ETag header of the response, if any. */
+    private final String eTag;
+
+    /** The Last-Modified header of the response, if any. */
+    private final String lastModified;
+
+    /** The number of times the link has been checked again because its host throttled the requests. */
+    private int retries;
+
     /**
      * Constructor: initializes status, persistent and errorMessage.
      * Using this constructor, the HTTP status code is by default <code>-1</code>.
@@ -44,9 +53,7 @@ public class HTTPLinkValidationResult
      */
     public HTTPLinkValidationResult( int stat, boolean persistent, String message )
     {
-        super( stat, persistent, message );
-
-        this.httpStatusCode = -1;
+        this( stat, persistent, -1, message );
     }
 
     /**
@@ -59,9 +66,47 @@ public class HTTPLinkValidationResult
      */
     public HTTPLinkValidationResult( int stat, boolean persistent, int httpStatusCode, String message )
     {
-        super( stat, persistent, message );
+        this( stat, persistent, httpStatusCode, message, null, null );
+    }
+
+    /**
+     * Constructor: initializes status, persistent, httpStatusCode, errorMessage and the validators of the response,
+     * used to revalidate the link later.
+     *
+     * @param stat The status.
+     * @param persistent The persistent.
+     * @param httpStatusCode The httpStatusCode returned.
+     * @param message The errorMessage.
+     * @param eTag The ETag header returned, may be null.
+     * @param lastModified The Last-Modified header returned, may be null.
+     * @since 1.3
+     */
+    public HTTPLinkValidationResult( int stat, boolean persistent, int httpStatusCode, String message, String eTag,
+                                     String lastModified )
+    {
+        this( stat, persistent, httpStatusCode, message, eTag, lastModified, System.currentTimeMillis() );
+    }
+
+    /**
+     * Constructor: initializes all the fields.
+     *
+     * @param stat The status.
+     * @param persistent The persistent.
+     * @param httpStatusCode The httpStatusCode returned.
+     * @param message The errorMessage.
+     * @param eTag The ETag header returned, may be null.
+     * @param lastModified The Last-Modified header returned, may be null.
+     * @param checkTime The time of the check, in milliseconds since the epoch.
+     * @since 1.3
+     */
+    protected HTTPLinkValidationResult( int stat, boolean persistent, int httpStatusCode, String message,
+                                        String eTag, String lastModified, long checkTime )
+    {
+        super( stat, persistent, message, checkTime );
 
         this.httpStatusCode = httpStatusCode;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
     }
 
     /** {@inheritDoc} */
@@ -80,6 +125,62 @@ public class HTTPLinkValidationResult
         return this.httpStatusCode;
     }
 
+    /**
+     * Returns the ETag header of the response.
+     *
+     * @return the ETag, or null if the response had none.
+     * @since 1.3
+     */
+    public String getETag()
+    {
+        return this.eTag;
+    }
+
+    /**
+     * Returns the Last-Modified header of the response.
+     *
+     * @return the last modification date, as sent by the server, or null if the response had none.
+     * @since 1.3
+     */
+    public String getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * Returns the number of times the link has been checked again because its host answered
+     * <code>429 Too Many Requests</code> or <code>503 Service Unavailable</code>.
+     *
+     * @return the number of retries, 0 if the first check was answered.
+     * @since 1.3
+     */
+    public int getRetries()
+    {
+        return this.retries;
+    }
+
+    /**
+     * Sets the number of retries, before the result is published.
+     *
+     * @param retries the number of retries.
+     */
+    void setRetries( int retries )
+    {
+        this.retries = retries;
+    }
+
+    /**
+     * Returns a copy of this result checked now, for a link found unchanged since the check of this result.
+     *
+     * @return the revalidated result.
+     * @since 1.3
+     */
+    public HTTPLinkValidationResult revalidated()
+    {
+        return new HTTPLinkValidationResult( getStatus(), isPersistent(), this.httpStatusCode, getRawErrorMessage(),
+                                             this.eTag, this.lastModified );
+    }
+
     /** {@inheritDoc} */
     public String toString()
     {
@@ -87,6 +188,18 @@ public class HTTPLinkValidationResult
 
         sb.append( '\n' );
         sb.append( "httpStatusCode=" ).append( this.httpStatusCode );
+        if ( this.eTag != null )
+        {
+            sb.append( '\n' ).append( "eTag=" ).append( this.eTag );
+        }
+        if ( this.lastModified != null )
+        {
+            sb.append( '\n' ).append( "lastModified=" ).append( this.lastModified );
+        }
+        if ( this.retries != 0 )
+        {
+            sb.append( '\n' ).append( "retries=" ).append( this.retries );
+        }
 
         return sb.toString();
     }
@@ -19,10 +19,35 @@ package org.apache.maven.doxia.linkcheck.validation;
  * under the License.
  */
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.HttpVersion;
+import org.apache.commons.httpclient.ProtocolException;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.codehaus.plexus.util.StringUtils;
 
 /**
  * Checks links which are normal URLs.
+ * <p>
+ * Since 1.3, this class retries the throttled links, follows the redirections, checks the anchors and maps the
+ * responses to results; the online subclasses only send the requests.
+ * </p>
  *
  * @author <a href="mailto:bwalding@apache.org">Ben Walding</a>
  * @author <a href="mailto:aheritier@apache.org">Arnaud Heritier</a>
@@ -31,6 +56,80 @@ import java.util.Locale;
 public abstract class HTTPLinkValidator
     implements LinkValidator
 {
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( HTTPLinkValidator.class );
+
+    /** The default maximum number of redirections for a link. */
+    private static final int MAX_NB_REDIRECT = 10;
+
+    /** Some web servers don't allow the default user-agent of the HTTP clients. */
+    static final String USER_AGENT = "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.0)";
+
+    /** The largest body read to its end to keep the connection alive, bigger bodies close the connection. */
+    static final int MAX_DRAINED_BYTES = 64 * 1024;
+
+    /** The known HttpClient parameters whose value is a Boolean. */
+    private static final Set<String> BOOLEAN_PARAMETERS = new HashSet<String>( Arrays.asList( new String[] {
+        HttpMethodParams.UNAMBIGUOUS_STATUS_LINE, HttpMethodParams.SINGLE_COOKIE_HEADER,
+        HttpMethodParams.STRICT_TRANSFER_ENCODING, HttpMethodParams.REJECT_HEAD_BODY,
+        HttpMethodParams.USE_EXPECT_CONTINUE, HttpMethodParams.WARN_EXTRA_INPUT,
+        HttpClientParams.PREEMPTIVE_AUTHENTICATION, HttpClientParams.REJECT_RELATIVE_REDIRECT,
+        HttpClientParams.ALLOW_CIRCULAR_REDIRECTS, HttpConnectionParams.TCP_NODELAY,
+        HttpConnectionParams.STALE_CONNECTION_CHECK } ) );
+
+    /** The known HttpClient parameters whose value is an Integer. */
+    private static final Set<String> INTEGER_PARAMETERS = new HashSet<String>( Arrays.asList( new String[] {
+        HttpMethodParams.SO_TIMEOUT, HttpMethodParams.HEAD_BODY_CHECK_TIMEOUT,
+        HttpMethodParams.STATUS_LINE_GARBAGE_LIMIT, HttpMethodParams.BUFFER_WARN_TRIGGER_LIMIT,
+        HttpClientParams.MAX_REDIRECTS, HttpConnectionParams.SO_SNDBUF, HttpConnectionParams.SO_RCVBUF,
+        HttpConnectionParams.SO_LINGER, HttpConnectionParams.CONNECTION_TIMEOUT,
+        HttpConnectionManagerParams.MAX_TOTAL_CONNECTIONS } ) );
+
+    /** The known HttpClient parameters whose value is neither a String nor convertible from one. */
+    private static final Set<String> OBJECT_PARAMETERS = new HashSet<String>( Arrays.asList( new String[] {
+        HttpMethodParams.RETRY_HANDLER, HttpMethodParams.DATE_PATTERNS, HttpMethodParams.MULTIPART_BOUNDARY,
+        HttpClientParams.CONNECTION_MANAGER_CLASS, HttpConnectionManagerParams.MAX_HOST_CONNECTIONS } ) );
+
+    /** The http bean encapsuling all http parameters supported. */
+    private final HttpBean http;
+
+    /** The maximum number of redirections for a link, read from the HttpClient parameters. */
+    private final int maxRedirects;
+
+    /** The base URL for links that start with '/'. */
+    private String baseURL;
+
+    /** The anchors of the documents. */
+    private AnchorIndex anchorIndex;
+
+    /** The limiter of the requests sent to each host. */
+    private HostRateLimiter rateLimiter;
+
+    /** The metrics of the requests sent to each host. */
+    private HostMetrics hostMetrics;
+
+    /**
+     * Constructor: initialize the default settings.
+     */
+    protected HTTPLinkValidator()
+    {
+        this( null );
+    }
+
+    /**
+     * Constructor: initialize settings.
+     *
+     * @param bean The http bean encapsuling all HTTP parameters supported, or null for the default ones.
+     * @since 1.3
+     */
+    protected HTTPLinkValidator( HttpBean bean )
+    {
+        this.http = ( bean == null ) ? new HttpBean() : bean;
+
+        Object max = getHttpClientParameter( this.http.getHttpClientParameters(), HttpClientParams.MAX_REDIRECTS );
+        this.maxRedirects = ( max == null ) ? MAX_NB_REDIRECT : ( (Integer) max ).intValue();
+    }
+
     /** {@inheritDoc} */
     public Object getResourceKey( LinkValidationItem lvi )
     {
@@ -52,4 +151,613 @@ public abstract class HTTPLinkValidator
         return link;
     }
 
+    /**
+     * Returns the HTTP settings of this validator.
+     *
+     * @return the http bean, never null.
+     * @since 1.3
+     */
+    protected HttpBean getHttpBean()
+    {
+        return this.http;
+    }
+
+    /**
+     * Returns the maximum number of redirections followed for a link, given by the
+     * <code>http.protocol.max-redirects</code> HttpClient parameter.
+     *
+     * @return the maximum number of redirections, 10 by default.
+     * @since 1.3
+     */
+    public int getMaxRedirects()
+    {
+        return this.maxRedirects;
+    }
+
+    /**
+     * The base URL.
+     *
+     * @return the base URL.
+     */
+    public String getBaseURL()
+    {
+        return this.baseURL;
+    }
+
+    /**
+     * Sets the base URL. This is pre-pended to links that start with '/'.
+     *
+     * @param url the base URL.
+     */
+    public void setBaseURL( String url )
+    {
+        this.baseURL = url;
+    }
+
+    /**
+     * Returns the index of the anchors of the documents.
+     *
+     * @return the anchor index, never null.
+     * @since 1.3
+     */
+    public synchronized AnchorIndex getAnchorIndex()
+    {
+        if ( this.anchorIndex == null )
+        {
+            this.anchorIndex = new AnchorIndex();
+        }
+
+        return this.anchorIndex;
+    }
+
+    /**
+     * Sets the index of the anchors of the documents, possibly shared with other validators.
+     *
+     * @param anchorIndex the anchor index, or null for a new one.
+     * @since 1.3
+     */
+    public synchronized void setAnchorIndex( AnchorIndex anchorIndex )
+    {
+        this.anchorIndex = anchorIndex;
+    }
+
+    /**
+     * Returns the limiter of the requests sent to each host.
+     *
+     * @return the rate limiter, never null.
+     * @since 1.3
+     */
+    public synchronized HostRateLimiter getRateLimiter()
+    {
+        if ( this.rateLimiter == null )
+        {
+            this.rateLimiter = new HostRateLimiter( this.http.getRequestsPerSecond() );
+        }
+
+        return this.rateLimiter;
+    }
+
+    /**
+     * Sets the limiter of the requests sent to each host, possibly shared with other validators.
+     *
+     * @param rateLimiter the rate limiter, or null for a new one.
+     * @since 1.3
+     */
+    public synchronized void setRateLimiter( HostRateLimiter rateLimiter )
+    {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Returns the metrics of the requests sent to each host, but for the requests sent for a manager with its own
+     * metrics.
+     *
+     * @return the host metrics, never null.
+     * @since 1.3
+     */
+    public synchronized HostMetrics getHostMetrics()
+    {
+        if ( this.hostMetrics == null )
+        {
+            this.hostMetrics = new HostMetrics();
+        }
+
+        return this.hostMetrics;
+    }
+
+    /**
+     * Sets the metrics of the requests sent to each host, possibly shared with other validators.
+     *
+     * @param hostMetrics the host metrics, or null for new ones.
+     * @since 1.3
+     */
+    public synchronized void setHostMetrics( HostMetrics hostMetrics )
+    {
+        this.hostMetrics = hostMetrics;
+    }
+
+    /**
+     * Closes the connections kept by this validator. The validator may still be used afterwards, with new
+     * connections.
+     * <p>
+     * This implementation does nothing.
+     * </p>
+     *
+     * @since 1.3
+     */
+    public void close()
+    {
+        // no connection
+    }
+
+    /** {@inheritDoc} */
+    public LinkValidationResult validateLink( LinkValidationItem lvi )
+    {
+        return validateLink( lvi, null );
+    }
+
+    /**
+     * Validates a link again.
+     * <p>
+     * If the previous result has an ETag or a Last-Modified date, a conditional request is sent,
+     * and the previous result is kept if the server answers that the resource has not been modified.
+     * </p>
+     *
+     * @param lvi the link to validate.
+     * @param previous the previous result of the link.
+     * @return the result.
+     * @see RevalidatingLinkValidator#revalidateLink(LinkValidationItem, LinkValidationResult)
+     * @since 1.3
+     */
+    public LinkValidationResult revalidateLink( LinkValidationItem lvi, LinkValidationResult previous )
+    {
+        if ( previous instanceof HTTPLinkValidationResult )
+        {
+            HTTPLinkValidationResult result = (HTTPLinkValidationResult) previous;
+
+            if ( result.getETag() != null || result.getLastModified() != null )
+            {
+                return validateLink( lvi, result );
+            }
+        }
+
+        return validateLink( lvi, null );
+    }
+
+    /**
+     * Sends one request for a link, without following its redirection, and reads its response so the connection
+     * can be released. The body of a found document is scanned for the anchor with
+     * {@link #hasAnchor(String, String, InputStream, String)}.
+     * <p>
+     * This implementation sends no request: it is overridden by the validators which check the links online.
+     * </p>
+     *
+     * @param link the URL to request, without anchor.
+     * @param previous the previous result of the link, whose validators are sent as conditional headers, or null.
+     * @param anchor the anchor to find in the document, or an empty String.
+     * @return the response.
+     * @throws IOException if something goes wrong.
+     */
+    Response request( String link, HTTPLinkValidationResult previous, String anchor )
+        throws IOException
+    {
+        throw new UnsupportedOperationException( getClass().getName() + " doesn't send requests" );
+    }
+
+    /**
+     * Validates a link, retrying it while its host is throttled.
+     *
+     * @param lvi the link to validate.
+     * @param previous the previous result to revalidate with a conditional request, or null.
+     * @return the result.
+     */
+    private LinkValidationResult validateLink( LinkValidationItem lvi, HTTPLinkValidationResult previous )
+    {
+        String link = lvi.getLink();
+        String anchor = "";
+        int idx = link.indexOf( '#' );
+        if ( idx != -1 )
+        {
+            anchor = link.substring( idx + 1 );
+            link = link.substring( 0, idx );
+        }
+
+        if ( link.startsWith( "/" ) )
+        {
+            if ( getBaseURL() == null )
+            {
+                if ( LOG.isWarnEnabled() )
+                {
+                    LOG.warn( "Cannot check link [" + link + "] in page [" + lvi.getSource()
+                        + "], as no base URL has been set!" );
+                }
+
+                return new LinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, false, "No base URL specified" );
+            }
+
+            link = getBaseURL() + link;
+        }
+
+        HostRateLimiter limiter = getRateLimiter();
+        HostMetrics metrics = HostMetrics.getCurrent( getHostMetrics() );
+        String host = HostDispatcher.getHost( link );
+        int retries = 0;
+
+        try
+        {
+            for ( ;; )
+            {
+                limiter.acquire( host );
+
+                Response response;
+                long start = System.nanoTime();
+                try
+                {
+                    response = checkLink( link, previous, anchor );
+                }
+                catch ( Throwable t )
+                {
+                    if ( LOG.isDebugEnabled() )
+                    {
+                        LOG.debug( "Received: [" + t + "] for [" + link + "] in page [" + lvi.getSource() + "]", t );
+                    }
+
+                    if ( Thread.currentThread().isInterrupted() )
+                    {
+                        // the check has been cancelled, the link may be valid
+                        return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Interrupted" );
+                    }
+
+                    return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, t.getClass().getName()
+                        + " : " + t.getMessage() );
+                }
+                finally
+                {
+                    metrics.addRequest( host, ( System.nanoTime() - start ) / 1000000 );
+                }
+
+                if ( !HostRateLimiter.isThrottled( response.statusCode ) )
+                {
+                    limiter.success( host );
+
+                    HTTPLinkValidationResult result = toResult( lvi, link, anchor, response, previous );
+                    result.setRetries( retries );
+
+                    return result;
+                }
+
+                long retryAfter = HostRateLimiter.parseRetryAfter( response.retryAfter );
+                limiter.throttled( host, retryAfter );
+
+                if ( retries >= this.http.getMaxRetries() || retryAfter > HostRateLimiter.MAX_RETRY_AFTER )
+                {
+                    if ( LOG.isWarnEnabled() )
+                    {
+                        LOG.warn( "Received: [" + response.statusCode + "] for [" + link + "] in page ["
+                            + lvi.getSource() + "] after " + retries + " retries" );
+                    }
+
+                    // the link may be valid, it will be checked again on the next run
+                    HTTPLinkValidationResult result =
+                        new HTTPLinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, false, response.statusCode,
+                                                      response.statusText );
+                    result.setRetries( retries );
+
+                    return result;
+                }
+
+                retries++;
+                metrics.addRetry( host );
+
+                // without Retry-After, back off; otherwise the limiter blocks the host until the given delay
+                if ( retryAfter < 0 )
+                {
+                    Thread.sleep( limiter.getBackoff( retries ) );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Interrupted" );
+        }
+    }
+
+    /**
+     * Converts the final response to a link into a result.
+     *
+     * @param lvi the link validated.
+     * @param link the link checked, without anchor.
+     * @param anchor the anchor of the link, or an empty String.
+     * @param response the final response, not throttled.
+     * @param previous the previous result revalidated, or null.
+     * @return the result.
+     */
+    private HTTPLinkValidationResult toResult( LinkValidationItem lvi, String link, String anchor, Response response,
+                                               HTTPLinkValidationResult previous )
+    {
+        if ( previous != null && response.statusCode == HttpStatus.SC_NOT_MODIFIED )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "[" + link + "] has not been modified" );
+            }
+
+            return previous.revalidated();
+        }
+
+        if ( response.statusCode == HttpStatus.SC_OK )
+        {
+            if ( anchor.length() > 0 && !response.anchorFound )
+            {
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false,
+                                                     "Missing anchor '" + anchor + "'" );
+            }
+
+            return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, response.statusCode,
+                                                 response.statusText, response.eTag, response.lastModified );
+        }
+
+        String msg = "Received: [" + response.statusCode + "] for [" + link + "] in page [" + lvi.getSource() + "]";
+        // If there's a redirection ... add a warning
+        if ( isRedirect( response.statusCode ) )
+        {
+            LOG.warn( msg );
+
+            return new HTTPLinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, true, response.statusCode,
+                                                 response.statusText, response.eTag, response.lastModified );
+        }
+
+        LOG.debug( msg );
+
+        return new HTTPLinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, response.statusCode,
+                                             response.statusText );
+    }
+
+    /**
+     * Checks the given link, following the redirections.
+     *
+     * @param link the link to check.
+     * @param previous the previous result of the link, whose validators are sent as conditional headers, or null.
+     * @param anchor the anchor to find in the final document, or an empty String.
+     * @return the final response, or the first redirection if redirections aren't followed and the final document
+     * has been found, to report it.
+     * @throws IOException if something goes wrong.
+     */
+    private Response checkLink( String link, HTTPLinkValidationResult previous, String anchor )
+        throws IOException
+    {
+        Response first = null;
+        String location = link;
+
+        for ( int nbRedirect = 0;; nbRedirect++ )
+        {
+            if ( nbRedirect > this.maxRedirects )
+            {
+                throw new IOException( "Maximum number of redirections (" + this.maxRedirects + ") exceeded" );
+            }
+
+            Response response = request( location, ( nbRedirect == 0 ) ? previous : null, anchor );
+
+            if ( !isRedirect( response.statusCode ) )
+            {
+                if ( first != null && response.statusCode == HttpStatus.SC_OK && !this.http.isFollowRedirects() )
+                {
+                    // report the redirection
+                    return first;
+                }
+
+                return response;
+            }
+
+            if ( response.location == null )
+            {
+                LOG.error( "Site sent redirect, but did not set Location header" );
+
+                return response;
+            }
+
+            if ( first == null )
+            {
+                first = response;
+            }
+
+            String newLink = response.location;
+
+            // Be careful to absolute/relative links
+            if ( !newLink.startsWith( "http://" ) && !newLink.startsWith( "https://" ) )
+            {
+                newLink = new URL( new URL( location ), newLink ).toExternalForm();
+            }
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "[" + location + "] is redirected to [" + newLink + "]" );
+            }
+
+            location = newLink;
+        }
+    }
+
+    /**
+     * Tells if a document has an anchor, from the index or from the body of the response. The body is scanned
+     * while it is received, and only until the anchor is found; the anchors of a document are indexed once
+     * its whole body has been scanned.
+     *
+     * @param link the link of the document, without anchor.
+     * @param anchor the anchor to find.
+     * @param in the body of the document, or null if the response has none.
+     * @param contentType the content type of the document, may be null.
+     * @return true if the document has the anchor, false if it hasn't or if the response has no body.
+     * @throws IOException if the body can't be read.
+     */
+    boolean hasAnchor( String link, String anchor, InputStream in, String contentType )
+        throws IOException
+    {
+        AnchorIndex index = getAnchorIndex();
+
+        Set<String> anchors = index.getAnchors( link );
+        if ( anchors != null )
+        {
+            return anchors.contains( anchor );
+        }
+
+        if ( in == null )
+        {
+            return false;
+        }
+
+        anchors = new HashSet<String>();
+        if ( Anchors.findAnchor( in, getCharset( contentType ), anchor, anchors ) )
+        {
+            return true;
+        }
+
+        index.putAnchors( link, anchors );
+
+        return false;
+    }
+
+    /**
+     * @param contentType the content type, may be null.
+     * @return the charset of the content type, ISO-8859-1 by default as specified by HTTP/1.1.
+     */
+    static String getCharset( String contentType )
+    {
+        if ( contentType != null )
+        {
+            int idx = contentType.toLowerCase( Locale.ENGLISH ).indexOf( "charset=" );
+            if ( idx != -1 )
+            {
+                String charset = contentType.substring( idx + "charset=".length() ).trim();
+                int end = charset.indexOf( ';' );
+                if ( end != -1 )
+                {
+                    charset = charset.substring( 0, end ).trim();
+                }
+                charset = StringUtils.replace( charset, "\"", "" );
+
+                try
+                {
+                    new String( new byte[0], charset );
+
+                    return charset;
+                }
+                catch ( UnsupportedEncodingException e )
+                {
+                    // use the default one
+                }
+            }
+        }
+
+        return "ISO-8859-1";
+    }
+
+    /**
+     * @param statusCode an HTTP status code.
+     * @return true if it is a redirection with a Location header.
+     */
+    static boolean isRedirect( int statusCode )
+    {
+        return statusCode == HttpStatus.SC_MOVED_PERMANENTLY || statusCode == HttpStatus.SC_MOVED_TEMPORARILY
+            || statusCode == HttpStatus.SC_TEMPORARY_REDIRECT;
+    }
+
+    /**
+     * Returns the value of an HttpClient parameter converted to the type declared by HttpClient.
+     *
+     * @param parameters the HttpClient parameters, may be null.
+     * @param name the parameter name.
+     * @return the converted value, or null if the parameter is not set or its value can't be converted.
+     * @see #toParameterValue(String, String)
+     */
+    static Object getHttpClientParameter( Properties parameters, String name )
+    {
+        Object value = ( parameters == null ) ? null : parameters.get( name );
+
+        return ( value == null ) ? null : toParameterValue( name, value.toString() );
+    }
+
+    /**
+     * Converts the value of an HttpClient parameter given as String to the type declared by HttpClient.
+     *
+     * @param name the parameter name.
+     * @param value the parameter value, not null.
+     * @return an HttpVersion, a Boolean, an Integer or a Long for the known parameters of these types, the String
+     * value for the other ones, or null if the value can't be converted.
+     */
+    static Object toParameterValue( String name, String value )
+    {
+        String trimmed = value.trim();
+
+        try
+        {
+            if ( HttpMethodParams.PROTOCOL_VERSION.equals( name ) )
+            {
+                return HttpVersion.parse( trimmed );
+            }
+            if ( BOOLEAN_PARAMETERS.contains( name ) )
+            {
+                if ( !"true".equalsIgnoreCase( trimmed ) && !"false".equalsIgnoreCase( trimmed ) )
+                {
+                    throw new IllegalArgumentException( "not a boolean" );
+                }
+
+                return Boolean.valueOf( trimmed );
+            }
+            if ( INTEGER_PARAMETERS.contains( name ) )
+            {
+                return Integer.valueOf( trimmed );
+            }
+            if ( HttpClientParams.CONNECTION_MANAGER_TIMEOUT.equals( name ) )
+            {
+                return Long.valueOf( trimmed );
+            }
+            if ( OBJECT_PARAMETERS.contains( name ) )
+            {
+                throw new IllegalArgumentException( "not a String parameter" );
+            }
+
+            return value;
+        }
+        catch ( ProtocolException e )
+        {
+            warnIgnoredParameter( name, value, e );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // includes NumberFormatException
+            warnIgnoredParameter( name, value, e );
+        }
+
+        return null;
+    }
+
+    private static void warnIgnoredParameter( String name, String value, Exception e )
+    {
+        if ( LOG.isWarnEnabled() )
+        {
+            LOG.warn( "Cannot convert the value '" + value + "' of the HttpClient parameter '" + name + "': "
+                + e.getMessage() + ". Ignoring!" );
+        }
+    }
+
+    /** The response to one request, whose body has been read or discarded. */
+    static final class Response
+    {
+        int statusCode;
+
+        String statusText;
+
+        String eTag;
+
+        String lastModified;
+
+        String location;
+
+        String retryAfter;
+
+        boolean anchorFound;
+    }
 }
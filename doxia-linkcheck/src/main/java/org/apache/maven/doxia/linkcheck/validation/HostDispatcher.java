@@ -0,0 +1,277 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatches tasks to an executor, with at most a given number of tasks running at the same time for each host.
+ * <p>
+ * Tasks over the limit of their host are queued here rather than in the executor, so a busy host never holds
+ * the threads of the executor while tasks for other hosts are waiting.
+ * </p>
+ *
+ * @since 1.3
+ */
+class HostDispatcher
+{
+    /** The executor running the tasks, it bounds the global number of running tasks. */
+    private final Executor executor;
+
+    /** The maximum number of running tasks per host. */
+    private final int maxPerHost;
+
+    /** The queues per host, guarded by this. */
+    private final Map<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+
+    /** The number of submitted tasks not yet completed, guarded by this. */
+    private int pending;
+
+    /** Whether the waiting tasks have been cancelled, guarded by this. */
+    private boolean cancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor running the tasks, not null.
+     * @param maxPerHost the maximum number of running tasks per host, at least 1.
+     */
+    HostDispatcher( Executor executor, int maxPerHost )
+    {
+        if ( maxPerHost < 1 )
+        {
+            throw new IllegalArgumentException( maxPerHost + " should be positive." );
+        }
+
+        this.executor = executor;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Runs the given task as soon as its host has a free slot.
+     *
+     * @param host the host the task connects to, not null.
+     * @param task the task.
+     */
+    void dispatch( String host, Runnable task )
+    {
+        HostQueue queue;
+        boolean run;
+
+        synchronized ( this )
+        {
+            if ( cancelled )
+            {
+                return;
+            }
+
+            queue = hosts.get( host );
+            if ( queue == null )
+            {
+                queue = new HostQueue();
+                hosts.put( host, queue );
+            }
+
+            pending++;
+
+            run = queue.running < maxPerHost;
+            if ( run )
+            {
+                queue.running++;
+            }
+            else
+            {
+                queue.waiting.add( task );
+            }
+        }
+
+        if ( run )
+        {
+            executor.execute( new HostTask( queue, task ) );
+        }
+    }
+
+    /**
+     * Waits until all dispatched tasks are completed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void await()
+        throws InterruptedException
+    {
+        while ( pending > 0 )
+        {
+            wait();
+        }
+    }
+
+    /**
+     * Waits until all dispatched tasks are completed, or until the timeout expires.
+     *
+     * @param timeout the maximum time to wait, in milliseconds.
+     * @return <code>true</code> if all the tasks are completed, <code>false</code> if the timeout expired.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized boolean await( long timeout )
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+
+        while ( pending > 0 )
+        {
+            long remaining = ( deadline - System.nanoTime() ) / 1000000L;
+            if ( remaining <= 0 )
+            {
+                return false;
+            }
+
+            wait( remaining );
+        }
+
+        return true;
+    }
+
+    /**
+     * Drops the tasks waiting for a free slot of their host, and the tasks dispatched from now on.
+     * The running tasks are not affected.
+     */
+    synchronized void cancel()
+    {
+        cancelled = true;
+
+        for ( HostQueue queue : hosts.values() )
+        {
+            pending -= queue.waiting.size();
+            queue.waiting.clear();
+        }
+
+        if ( pending == 0 )
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the host of a link, used to group the tasks.
+     *
+     * @param link a link, not null.
+     * @return the lower case host of the link, i.e. the domain of a mailto link, or an empty String if the link
+     * has no host.
+     */
+    static String getHost( String link )
+    {
+        int start = link.indexOf( "://" );
+        if ( start == -1 )
+        {
+            String domain = link.startsWith( "mailto:" ) ? MailtoLinkValidator.getDomain( link ) : null;
+
+            return ( domain == null ) ? "" : domain;
+        }
+        start += 3;
+
+        int end = start;
+        while ( end < link.length() && "/?#".indexOf( link.charAt( end ) ) == -1 )
+        {
+            end++;
+        }
+
+        return link.substring( start, end ).toLowerCase( Locale.ENGLISH );
+    }
+
+    /**
+     * Called when a task of the given host completes.
+     *
+     * @param queue the host queue.
+     * @return the next task of this host to run, or null if there is none.
+     */
+    private synchronized Runnable completed( HostQueue queue )
+    {
+        pending--;
+
+        Runnable next = queue.waiting.poll();
+        if ( next == null )
+        {
+            queue.running--;
+        }
+
+        if ( pending == 0 )
+        {
+            notifyAll();
+        }
+
+        return next;
+    }
+
+    /** The tasks of one host. */
+    private static class HostQueue
+    {
+        /** The number of running tasks. */
+        private int running;
+
+        /** The tasks waiting for a free slot. */
+        private final LinkedList<Runnable> waiting = new LinkedList<Runnable>();
+    }
+
+    /** Runs a task, then hands the slot of its host over to the next waiting task. */
+    private class HostTask
+        implements Runnable
+    {
+        private final HostQueue queue;
+
+        private final Runnable task;
+
+        HostTask( HostQueue queue, Runnable task )
+        {
+            this.queue = queue;
+            this.task = task;
+        }
+
+        /** {@inheritDoc} */
+        public void run()
+        {
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                Runnable next = completed( queue );
+                if ( next != null )
+                {
+                    try
+                    {
+                        executor.execute( new HostTask( queue, next ) );
+                    }
+                    catch ( RejectedExecutionException e )
+                    {
+                        // the executor has been shut down: the next task and the waiting ones are dropped
+                        cancel();
+                        completed( queue );
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The HTTP requests sent to each host: their number, their retries and a histogram of their latencies.
+ * <p>
+ * The metrics may be updated and read concurrently.
+ * </p>
+ *
+ * @since 1.3
+ */
+public class HostMetrics
+{
+    /** The upper bounds of the latency buckets, in milliseconds, the last bucket has no upper bound. */
+    private static final long[] LATENCY_BOUNDS = { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    /** The metrics of the manager validating a link in the current thread. */
+    private static final ThreadLocal<HostMetrics> CURRENT = new ThreadLocal<HostMetrics>();
+
+    /** The metrics by host. */
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+
+    /**
+     * Records a request.
+     *
+     * @param host the host, not null.
+     * @param time the latency of the request, in milliseconds.
+     */
+    public void addRequest( String host, long time )
+    {
+        Host metrics = getHost( host );
+
+        metrics.requests.incrementAndGet();
+        metrics.time.addAndGet( time );
+
+        int bucket = 0;
+        while ( bucket < LATENCY_BOUNDS.length && time > LATENCY_BOUNDS[bucket] )
+        {
+            bucket++;
+        }
+        metrics.latencies.incrementAndGet( bucket );
+    }
+
+    /**
+     * Records a request sent again because the host throttled the requests.
+     *
+     * @param host the host, not null.
+     */
+    public void addRetry( String host )
+    {
+        getHost( host ).retries.incrementAndGet();
+    }
+
+    /**
+     * @return the hosts which received requests, sorted.
+     */
+    public Set<String> getHosts()
+    {
+        return new TreeSet<String>( hosts.keySet() );
+    }
+
+    /**
+     * @param host a host.
+     * @return the number of requests sent to the host.
+     */
+    public int getRequests( String host )
+    {
+        Host metrics = hosts.get( host );
+
+        return ( metrics == null ) ? 0 : metrics.requests.get();
+    }
+
+    /**
+     * @param host a host.
+     * @return the number of requests sent again to the host because it throttled the requests.
+     */
+    public int getRetries( String host )
+    {
+        Host metrics = hosts.get( host );
+
+        return ( metrics == null ) ? 0 : metrics.retries.get();
+    }
+
+    /**
+     * @param host a host.
+     * @return the total time of the requests sent to the host, in milliseconds.
+     */
+    public long getTime( String host )
+    {
+        Host metrics = hosts.get( host );
+
+        return ( metrics == null ) ? 0 : metrics.time.get();
+    }
+
+    /**
+     * Returns the latency histogram of a host.
+     *
+     * @param host a host.
+     * @return the number of requests of each bucket, the buckets being bounded by {@link #getLatencyBounds()}.
+     */
+    public long[] getLatencies( String host )
+    {
+        long[] counts = new long[LATENCY_BOUNDS.length + 1];
+
+        Host metrics = hosts.get( host );
+        if ( metrics != null )
+        {
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                counts[i] = metrics.latencies.get( i );
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return the upper bounds of the latency buckets, in milliseconds, but for the last bucket which has none.
+     */
+    public static long[] getLatencyBounds()
+    {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    /**
+     * Returns the metrics of the manager validating a link in the current thread, so a validator shared by several
+     * managers records each request in the metrics of the manager it has been sent for.
+     *
+     * @param defaultMetrics the metrics to use if the manager has none.
+     * @return the metrics of the current manager, or <code>defaultMetrics</code>.
+     * @see LinkValidatorManager#setHostMetrics(HostMetrics)
+     */
+    static HostMetrics getCurrent( HostMetrics defaultMetrics )
+    {
+        HostMetrics current = CURRENT.get();
+
+        return ( current == null ) ? defaultMetrics : current;
+    }
+
+    /**
+     * Sets the metrics of the manager validating a link in the current thread.
+     *
+     * @param metrics the metrics, or null when the validation is over.
+     */
+    static void setCurrent( HostMetrics metrics )
+    {
+        if ( metrics == null )
+        {
+            CURRENT.remove();
+        }
+        else
+        {
+            CURRENT.set( metrics );
+        }
+    }
+
+    private Host getHost( String host )
+    {
+        Host metrics = hosts.get( host );
+        if ( metrics == null )
+        {
+            metrics = new Host();
+
+            Host previous = hosts.putIfAbsent( host, metrics );
+            if ( previous != null )
+            {
+                metrics = previous;
+            }
+        }
+
+        return metrics;
+    }
+
+    /** The metrics of a host. */
+    private static final class Host
+    {
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private final AtomicInteger retries = new AtomicInteger();
+
+        private final AtomicLong time = new AtomicLong();
+
+        private final AtomicLongArray latencies = new AtomicLongArray( LATENCY_BOUNDS.length + 1 );
+    }
+}
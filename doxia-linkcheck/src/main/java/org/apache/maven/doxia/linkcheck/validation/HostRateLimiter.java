@@ -0,0 +1,338 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An adaptive per-host token bucket, limiting the rate of the requests sent to each host.
+ * <p>
+ * A host starts at the configured rate, or without limit. When it answers <code>429 Too Many Requests</code>
+ * or <code>503 Service Unavailable</code>, its rate is halved, from the rate observed if there was no limit,
+ * and no request is sent to it before the end of the <code>Retry-After</code> delay. Each successful request then
+ * raises the rate slowly again, up to the configured rate, so each host is checked as fast as it allows.
+ * </p>
+ * A limiter may be used concurrently.
+ *
+ * @since 1.3
+ */
+public class HostRateLimiter
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( HostRateLimiter.class );
+
+    /** The status of a throttled request, not defined by HttpClient 3. */
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /** Retry-After delays longer than this are not waited for, in milliseconds. */
+    public static final long MAX_RETRY_AFTER = 60 * 1000;
+
+    /** The lowest rate of a host, in requests per second. */
+    static final double MIN_RATE = 0.2;
+
+    /** The first backoff delay, in milliseconds, doubled at each retry. */
+    private static final long BASE_BACKOFF = 500;
+
+    /** The longest backoff delay, in milliseconds. */
+    private static final long MAX_BACKOFF = 30 * 1000;
+
+    private static final long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+
+    private static final long NANOS_PER_MILLI = 1000L * 1000L;
+
+    /** The configured rate per host, infinite for no limit. */
+    private final double maxRate;
+
+    /** The state of the hosts, guarded by itself. */
+    private final Map<String, Host> hosts = new HashMap<String, Host>();
+
+    /** The source of the jitter. */
+    private final Random random = new Random();
+
+    /**
+     * Constructor.
+     *
+     * @param maxRate the maximum number of requests per second sent to a host, 0 or less for no limit
+     * until the host throttles the requests.
+     */
+    public HostRateLimiter( double maxRate )
+    {
+        this.maxRate = ( maxRate > 0 ) ? maxRate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Waits until a request can be sent to the given host.
+     *
+     * @param host the host, not null.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire( String host )
+        throws InterruptedException
+    {
+        Host state = getHost( host );
+
+        for ( ;; )
+        {
+            long wait;
+            synchronized ( state )
+            {
+                wait = state.tryAcquire( System.nanoTime() );
+            }
+
+            if ( wait <= 0 )
+            {
+                return;
+            }
+
+            Thread.sleep( Math.max( 1, wait / NANOS_PER_MILLI ) );
+        }
+    }
+
+    /**
+     * Tells that a request to the given host has not been throttled.
+     *
+     * @param host the host, not null.
+     */
+    public void success( String host )
+    {
+        Host state = getHost( host );
+
+        synchronized ( state )
+        {
+            if ( !Double.isInfinite( state.rate ) )
+            {
+                // additive increase: about one more request per second for each second at full rate
+                state.rate = Math.min( maxRate, state.rate + 1 / state.rate );
+            }
+        }
+    }
+
+    /**
+     * Tells that a request to the given host has been throttled.
+     *
+     * @param host the host, not null.
+     * @param retryAfter the delay asked by the host in milliseconds, or a negative value if none. The host is
+     * blocked for {@link #MAX_RETRY_AFTER} at most.
+     */
+    public void throttled( String host, long retryAfter )
+    {
+        Host state = getHost( host );
+
+        synchronized ( state )
+        {
+            long now = System.nanoTime();
+
+            double rate = Double.isInfinite( state.rate ) ? state.getObservedRate( now ) : state.rate;
+            state.rate = Math.max( MIN_RATE, rate / 2 );
+            state.tokens = 0;
+            // a host without limit never refilled its bucket
+            state.lastRefill = now;
+
+            if ( retryAfter > 0 )
+            {
+                long delay = Math.min( retryAfter, MAX_RETRY_AFTER );
+                state.blockedUntil = Math.max( state.blockedUntil, now + delay * NANOS_PER_MILLI );
+            }
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "[" + host + "] throttles the requests, rate lowered to " + state.rate + "/s" );
+            }
+        }
+    }
+
+    /**
+     * Returns the current rate of a host.
+     *
+     * @param host the host, not null.
+     * @return the number of requests per second allowed, infinite if there is no limit.
+     */
+    public double getRate( String host )
+    {
+        Host state = getHost( host );
+
+        synchronized ( state )
+        {
+            return state.rate;
+        }
+    }
+
+    /**
+     * Returns the delay before a retry, growing exponentially with the number of retries, with a full jitter
+     * so the retries of concurrent checks are spread.
+     *
+     * @param retry the number of the retry, starting at 1.
+     * @return the delay in milliseconds.
+     */
+    public long getBackoff( int retry )
+    {
+        long max = Math.min( MAX_BACKOFF, BASE_BACKOFF << Math.min( 16, Math.max( 0, retry - 1 ) ) );
+
+        synchronized ( random )
+        {
+            return 1 + (long) ( random.nextDouble() * max );
+        }
+    }
+
+    /**
+     * @param statusCode an HTTP status code.
+     * @return true if the status means that the host throttles the requests.
+     */
+    public static boolean isThrottled( int statusCode )
+    {
+        return statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * Parses a <code>Retry-After</code> header, given either as a number of seconds or as an HTTP date.
+     *
+     * @param value the header value, may be null.
+     * @return the delay in milliseconds, or -1 if there is no valid value.
+     */
+    public static long parseRetryAfter( String value )
+    {
+        if ( value == null || value.trim().length() == 0 )
+        {
+            return -1;
+        }
+
+        String trimmed = value.trim();
+        try
+        {
+            return Math.max( 0, Long.parseLong( trimmed ) * 1000 );
+        }
+        catch ( NumberFormatException e )
+        {
+            // an HTTP date
+        }
+
+        try
+        {
+            return Math.max( 0, DateUtil.parseDate( trimmed ).getTime() - System.currentTimeMillis() );
+        }
+        catch ( DateParseException e )
+        {
+            return -1;
+        }
+    }
+
+    private Host getHost( String host )
+    {
+        synchronized ( hosts )
+        {
+            Host state = hosts.get( host );
+            if ( state == null )
+            {
+                state = new Host( maxRate, System.nanoTime() );
+                hosts.put( host, state );
+            }
+
+            return state;
+        }
+    }
+
+    /** The bucket of a host, guarded by itself. */
+    private static final class Host
+    {
+        /** The allowed requests per second, infinite for no limit. */
+        private double rate;
+
+        /** The available tokens, at most one second of requests. */
+        private double tokens;
+
+        /** The last time the tokens were refilled. */
+        private long lastRefill;
+
+        /** No request before this time. */
+        private long blockedUntil;
+
+        /** The start of the window measuring the actual rate. */
+        private long windowStart;
+
+        /** The requests of the window. */
+        private int windowCount;
+
+        /** The rate measured over the previous window, in requests per second. */
+        private double observedRate;
+
+        Host( double rate, long now )
+        {
+            this.rate = rate;
+            this.tokens = Double.isInfinite( rate ) ? 0 : Math.max( 1, rate );
+            this.lastRefill = now;
+            this.blockedUntil = now;
+            this.windowStart = now;
+        }
+
+        /**
+         * @param now the current time in nanoseconds.
+         * @return 0 if a token has been taken, otherwise the time to wait in nanoseconds.
+         */
+        long tryAcquire( long now )
+        {
+            if ( now < blockedUntil )
+            {
+                return blockedUntil - now;
+            }
+
+            if ( !Double.isInfinite( rate ) )
+            {
+                tokens = Math.min( Math.max( 1, rate ), tokens + ( now - lastRefill ) * rate / NANOS_PER_SECOND );
+                lastRefill = now;
+
+                if ( tokens < 1 )
+                {
+                    return Math.max( 1, (long) ( ( 1 - tokens ) / rate * NANOS_PER_SECOND ) );
+                }
+
+                tokens -= 1;
+            }
+
+            if ( now - windowStart >= NANOS_PER_SECOND )
+            {
+                observedRate = windowCount * (double) NANOS_PER_SECOND / ( now - windowStart );
+                windowStart = now;
+                windowCount = 0;
+            }
+            windowCount++;
+
+            return 0;
+        }
+
+        /**
+         * @param now the current time in nanoseconds.
+         * @return the rate of the requests sent recently, at least the minimal rate.
+         */
+        double getObservedRate( long now )
+        {
+            double current = windowCount * (double) NANOS_PER_SECOND / Math.max( NANOS_PER_SECOND, now - windowStart );
+
+            return Math.max( MIN_RATE, Math.max( observedRate, current ) );
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Resolves the mail domains with the DNS service provider of JNDI, looking up their MX, A and AAAA records.
+ *
+ * @since 1.3
+ */
+public class JndiMailDomainResolver
+    implements MailDomainResolver
+{
+    /** The records telling that a domain has a mail server. */
+    private static final String[] RECORDS = { "MX", "A", "AAAA" };
+
+    /** The JNDI environment. */
+    private final Hashtable<String, String> env = new Hashtable<String, String>();
+
+    /**
+     * Constructor using the name servers of the system.
+     */
+    public JndiMailDomainResolver()
+    {
+        this( null );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param nameServer the host (and optional port) of the name server to use, or null to use the name
+     * servers of the system.
+     */
+    public JndiMailDomainResolver( String nameServer )
+    {
+        env.put( Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory" );
+
+        if ( nameServer != null )
+        {
+            env.put( Context.PROVIDER_URL, "dns://" + nameServer );
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasMailServer( String domain )
+        throws IOException
+    {
+        DirContext ctx = null;
+        try
+        {
+            ctx = new InitialDirContext( env );
+
+            Attributes attributes = ctx.getAttributes( domain, RECORDS );
+
+            return attributes.size() > 0;
+        }
+        catch ( NameNotFoundException e )
+        {
+            return false;
+        }
+        catch ( NamingException e )
+        {
+            IOException ioe = new IOException( "Unable to look " + domain + " up: " + e.getMessage() );
+            ioe.initCause( e );
+
+            throw ioe;
+        }
+        finally
+        {
+            if ( ctx != null )
+            {
+                try
+                {
+                    ctx.close();
+                }
+                catch ( NamingException e )
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.BasicScheme;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Checks links which are normal URLs with the <code>HttpURLConnection</code> of the JDK, which keeps the HTTP/1.1
+ * connections to each host alive between requests. Each response body is read to its end, or the connection
+ * closed if the body is too large, so the connection goes back to the pool of the JDK after each check
+ * and after each redirection, and the following checks of the same host reuse it.
+ * <p>
+ * This backend is selected by the <code>urlconnection</code> backend of the {@link HttpBean}. It supports the same
+ * settings as {@link OnlineHTTPLinkValidator}, except the NTLM proxy authentication and the HttpClient parameters
+ * but <code>http.protocol.max-redirects</code>. The number of idle connections kept per host is bounded by the
+ * <code>http.maxConnections</code> system property of the JDK.
+ * </p>
+ *
+ * @since 1.3
+ */
+public final class KeepAliveHTTPLinkValidator
+    extends HTTPLinkValidator
+    implements RevalidatingLinkValidator
+{
+    /** The name of this backend in the {@link HttpBean}. */
+    public static final String BACKEND = "urlconnection";
+
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( KeepAliveHTTPLinkValidator.class );
+
+    /** The proxy, or <code>Proxy.NO_PROXY</code>. */
+    private final Proxy proxy;
+
+    /** The value of the Proxy-Authorization header, or null. */
+    private final String proxyAuthorization;
+
+    /**
+     * Constructor: initialize settings, use "head" method.
+     */
+    public KeepAliveHTTPLinkValidator()
+    {
+        this( new HttpBean() );
+    }
+
+    /**
+     * Constructor: initialize settings.
+     *
+     * @param bean The http bean encapsuling all HTTP parameters supported.
+     */
+    public KeepAliveHTTPLinkValidator( HttpBean bean )
+    {
+        super( bean );
+
+        HttpBean http = getHttpBean();
+
+        if ( StringUtils.isNotEmpty( http.getProxyHost() ) )
+        {
+            InetSocketAddress address = new InetSocketAddress( http.getProxyHost(), http.getProxyPort() );
+            this.proxy = new Proxy( Proxy.Type.HTTP, address );
+
+            if ( StringUtils.isNotEmpty( http.getProxyUser() ) && http.getProxyPassword() != null )
+            {
+                if ( StringUtils.isNotEmpty( http.getProxyNtlmHost() ) )
+                {
+                    LOG.warn( "NTLM proxy authentication is not supported by the " + BACKEND
+                        + " backend, using basic authentication." );
+                }
+
+                this.proxyAuthorization =
+                    BasicScheme.authenticate( new UsernamePasswordCredentials( http.getProxyUser(),
+                                                                          http.getProxyPassword() ),
+                                              "ISO-8859-1" );
+            }
+            else
+            {
+                this.proxyAuthorization = null;
+            }
+        }
+        else
+        {
+            this.proxy = Proxy.NO_PROXY;
+            this.proxyAuthorization = null;
+        }
+
+        if ( http.getHttpClientParameters() != null )
+        {
+            Set<Object> ignored = new HashSet<Object>( http.getHttpClientParameters().keySet() );
+            ignored.remove( HttpClientParams.MAX_REDIRECTS );
+
+            if ( !ignored.isEmpty() )
+            {
+                LOG.warn( "The HttpClient parameters " + ignored + " are ignored by the " + BACKEND + " backend." );
+            }
+        }
+    }
+
+    /**
+     * Sends one request, and reads the response to its end so the connection can be reused.
+     *
+     * @param link the URL to request, without anchor.
+     * @param previous the previous result of the link, whose validators are sent as conditional headers, or null.
+     * @param anchor the anchor to find in the document if it is found, or an empty String.
+     * @return the response.
+     * @throws IOException if something goes wrong.
+     */
+    Response request( String link, HTTPLinkValidationResult previous, String anchor )
+        throws IOException
+    {
+        HttpBean http = getHttpBean();
+        HttpURLConnection connection = (HttpURLConnection) new URL( link ).openConnection( proxy );
+
+        boolean head = "head".equalsIgnoreCase( http.getMethod() );
+        if ( !head && !"get".equalsIgnoreCase( http.getMethod() ) && LOG.isErrorEnabled() )
+        {
+            LOG.error( "Unsupported method: " + http.getMethod() + ", using 'get'." );
+        }
+
+        connection.setRequestMethod( head ? "HEAD" : "GET" );
+        connection.setInstanceFollowRedirects( false );
+        connection.setUseCaches( false );
+        connection.setConnectTimeout( http.getTimeout() );
+        connection.setReadTimeout( http.getTimeout() );
+        connection.setRequestProperty( "User-Agent", USER_AGENT );
+        if ( proxyAuthorization != null )
+        {
+            connection.setRequestProperty( "Proxy-Authorization", proxyAuthorization );
+        }
+
+        if ( previous != null )
+        {
+            if ( previous.getETag() != null )
+            {
+                connection.setRequestProperty( "If-None-Match", previous.getETag() );
+            }
+            if ( previous.getLastModified() != null )
+            {
+                connection.setRequestProperty( "If-Modified-Since", previous.getLastModified() );
+            }
+        }
+
+        Response response = new Response();
+        response.statusCode = connection.getResponseCode();
+        response.statusText = connection.getResponseMessage();
+        response.eTag = connection.getHeaderField( "ETag" );
+        response.lastModified = connection.getHeaderField( "Last-Modified" );
+        response.location = connection.getHeaderField( "Location" );
+        response.retryAfter = connection.getHeaderField( "Retry-After" );
+
+        InputStream in = ( response.statusCode >= HttpURLConnection.HTTP_BAD_REQUEST )
+                        ? connection.getErrorStream() : connection.getInputStream();
+        if ( in == null )
+        {
+            return response;
+        }
+
+        boolean reusable = false;
+        try
+        {
+            if ( anchor.length() > 0 && response.statusCode == HttpURLConnection.HTTP_OK )
+            {
+                response.anchorFound = hasAnchor( link, anchor, in, connection.getContentType() );
+            }
+
+            // the rest of a document whose anchor has been found early is only read if it is small
+
+            reusable = drain( in );
+        }
+        finally
+        {
+            in.close();
+
+            if ( !reusable )
+            {
+                connection.disconnect();
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Reads the rest of a body.
+     *
+     * @param in the body.
+     * @return true if the body has been read to its end, false if it is too large.
+     * @throws IOException if any
+     */
+    private static boolean drain( InputStream in )
+        throws IOException
+    {
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        int n;
+        while ( ( n = in.read( buffer ) ) != -1 )
+        {
+            total += n;
+            if ( total > MAX_DRAINED_BYTES )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The on-disk format of the link cache, used by {@link LinkValidatorManager#loadCache(File)}
+ * and {@link LinkValidatorManager#saveCache(File)}.
+ *
+ * @since 1.3
+ * @see BinaryLinkCacheFormat
+ */
+public interface LinkCacheFormat
+{
+    /**
+     * Reads a cache file. The results are put into the given map as they are decoded, so the map decides
+     * how many of them stay in memory.
+     *
+     * @param cacheFile the cache file, an existing file.
+     * @param cache the map receiving the cached results by resource key, not null.
+     * @return <code>false</code> if the file is not in this format or can't be decoded, in which case some results
+     * may have been put into the map already.
+     * @throws IOException if the file can't be read.
+     */
+    boolean read( File cacheFile, Map<Object, LinkValidationResult> cache )
+        throws IOException;
+
+    /**
+     * Writes a cache file, replacing any previous one. Results which can't be represented by this format
+     * are skipped. The entries of the map are iterated once.
+     *
+     * @param cache the results to store by resource key, not null.
+     * @param cacheFile the cache file, not null.
+     * @throws IOException if the file can't be written.
+     */
+    void write( Map<Object, LinkValidationResult> cache, File cacheFile )
+        throws IOException;
+}
@@ -0,0 +1,548 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+
+/**
+ * The plan of the validations of a whole site. All the links of all the pages are added first, which indexes
+ * them by resource key, then each resource is validated once, whatever the number of pages referring to it.
+ * <p>
+ * Links may be added concurrently, and the results of the resources may be asked for concurrently.
+ * </p>
+ *
+ * @since 1.3
+ * @see LinkValidatorManager#createPlan()
+ */
+public class LinkValidationPlan
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( LinkValidationPlan.class );
+
+    /** The (unique) result for links without validator. */
+    private static final LinkValidationResult NO_VALIDATOR =
+        new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "No validator found for this link" );
+
+    /** The (unique) result for excluded links. */
+    private static final LinkValidationResult EXCLUDED =
+        new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, "" );
+
+    /** The (unique) result for the links not validated before the deadline. */
+    private static final LinkValidationResult DEADLINE_EXCEEDED =
+        new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Deadline exceeded" );
+
+    /** The manager. */
+    private final LinkValidatorManager manager;
+
+    /** The resources by resource key. */
+    private final ConcurrentMap<Object, Resource> resources = new ConcurrentHashMap<Object, Resource>();
+
+    /** The number of links added. */
+    private final AtomicInteger totalLinks = new AtomicInteger();
+
+    /** The number of links without resource key, i.e. excluded links or links without validator. */
+    private final AtomicInteger unresolvedLinks = new AtomicInteger();
+
+    /** The number of resources not validated before the deadline or the timeout. */
+    private final AtomicInteger expiredLinks = new AtomicInteger();
+
+    /** The time after which the resources are not validated anymore, 0 for no deadline. */
+    private volatile long deadline;
+
+    /**
+     * Constructor.
+     *
+     * @param manager the manager providing the validators, the excludes and the cache.
+     */
+    LinkValidationPlan( LinkValidatorManager manager )
+    {
+        this.manager = manager;
+    }
+
+    /**
+     * Adds a link to the plan. Nothing is validated at this point.
+     *
+     * @param lvi the link, not null.
+     * @return the resource the link refers to, shared by all the links with the same resource key.
+     */
+    public Resource addLink( LinkValidationItem lvi )
+    {
+        totalLinks.incrementAndGet();
+
+        if ( manager.isExcluded( lvi.getLink() ) )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Excluded " + lvi.getLink() );
+            }
+
+            unresolvedLinks.incrementAndGet();
+
+            return new Resource( null, null, lvi, EXCLUDED );
+        }
+
+        for ( LinkValidator lv : manager.getValidators() )
+        {
+            Object resourceKey = lv.getResourceKey( lvi );
+
+            if ( resourceKey != null )
+            {
+                Resource resource = resources.get( resourceKey );
+
+                if ( resource == null )
+                {
+                    resource = new Resource( lv, resourceKey, lvi, null );
+
+                    Resource previous = resources.putIfAbsent( resourceKey, resource );
+                    if ( previous != null )
+                    {
+                        resource = previous;
+                    }
+                }
+
+                return resource;
+            }
+        }
+
+        if ( LOG.isErrorEnabled() )
+        {
+            LOG.error( "Unable to validate link : " + lvi.getLink() );
+        }
+
+        unresolvedLinks.incrementAndGet();
+
+        return new Resource( null, null, lvi, NO_VALIDATOR );
+    }
+
+    /**
+     * Adds a link whose result is already known, e.g. a link to a page of a crawled site. The link is excluded
+     * like the others, but it is never validated nor cached.
+     *
+     * @param lvi the link, not null.
+     * @param resourceKey the key of the resource, shared by the links to the same resource, not null.
+     * @param result the result of the resource, not null.
+     * @return the resource the link refers to.
+     * @since 1.3
+     */
+    public Resource addLink( LinkValidationItem lvi, Object resourceKey, LinkValidationResult result )
+    {
+        totalLinks.incrementAndGet();
+
+        if ( manager.isExcluded( lvi.getLink() ) )
+        {
+            unresolvedLinks.incrementAndGet();
+
+            return new Resource( null, null, lvi, EXCLUDED );
+        }
+
+        Resource resource = resources.get( resourceKey );
+        if ( resource == null )
+        {
+            resource = new Resource( null, resourceKey, lvi, result );
+
+            Resource previous = resources.putIfAbsent( resourceKey, resource );
+            if ( previous != null )
+            {
+                resource = previous;
+            }
+        }
+
+        return resource;
+    }
+
+    /**
+     * Tells whether a link is excluded from the validation.
+     *
+     * @param link the link, not null.
+     * @return <code>true</code> if the link matches one of the excluded links of the manager.
+     * @since 1.3
+     */
+    public boolean isExcluded( String link )
+    {
+        return manager.isExcluded( link );
+    }
+
+    /**
+     * Returns the number of links added to the plan.
+     *
+     * @return the number of links.
+     */
+    public int getTotalLinks()
+    {
+        return totalLinks.get();
+    }
+
+    /**
+     * Returns the number of unique links, i.e. the number of validations needed for all the links of the plan.
+     *
+     * @return the number of unique links.
+     */
+    public int getUniqueLinks()
+    {
+        return resources.size() + unresolvedLinks.get();
+    }
+
+    /**
+     * Returns the number of unique links not validated because the deadline or the timeout of the validation
+     * of the external links expired. They have an unknown result.
+     *
+     * @return the number of expired links.
+     * @since 1.3
+     */
+    public int getExpiredLinks()
+    {
+        return expiredLinks.get();
+    }
+
+    /**
+     * Returns the deadline of the validations.
+     *
+     * @return the time after which no resource is validated anymore, as given by
+     * <code>System.currentTimeMillis()</code>, or <code>0</code> for no deadline.
+     * @since 1.3
+     */
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline of the validations. Once it has passed, the resources not validated yet get an unknown
+     * result, which is not cached, rather than being validated.
+     *
+     * @param deadline the time after which no resource is validated anymore, as given by
+     * <code>System.currentTimeMillis()</code>, or <code>0</code> for no deadline.
+     * @since 1.3
+     */
+    public void setDeadline( long deadline )
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return <code>true</code> if the deadline has passed.
+     */
+    private boolean isExpired()
+    {
+        long current = deadline;
+
+        return current > 0 && System.currentTimeMillis() >= current;
+    }
+
+    /**
+     * Validates concurrently the external resources of the plan, i.e. the resources handled by
+     * a {@link HTTPLinkValidator}. The other resources are validated when their result is first asked for.
+     *
+     * @param maxThreads the maximum number of resources validated at the same time.
+     * @param maxPerHost the maximum number of resources validated at the same time on the same host.
+     * @throws InterruptedException if interrupted while waiting for the validations.
+     */
+    public void validateExternalLinks( int maxThreads, int maxPerHost )
+        throws InterruptedException
+    {
+        validateExternalLinks( maxThreads, maxPerHost, false, 0 );
+    }
+
+    /**
+     * Validates concurrently the external resources of the plan, i.e. the resources handled by
+     * a {@link HTTPLinkValidator} and the mail domains looked up by a {@link MailtoLinkValidator}, each one in its
+     * own virtual thread if asked for and supported by the JDK.
+     * <p>
+     * If the timeout or the deadline of the plan expires, the validations in progress are interrupted and
+     * the resources not validated yet get an unknown result, which is not cached.
+     * </p>
+     *
+     * @param maxThreads the maximum number of resources validated at the same time.
+     * @param maxPerHost the maximum number of resources validated at the same time on the same host.
+     * @param virtualThreads whether each resource is validated in its own virtual thread rather than in a pool
+     * of <code>maxThreads</code> threads. The pool is used if the JDK doesn't support virtual threads.
+     * @param timeout the maximum time of the validations in milliseconds, <code>0</code> for no limit.
+     * @return <code>true</code> if all the external resources have been validated before the timeout.
+     * @throws InterruptedException if interrupted while waiting for the validations.
+     * @since 1.3
+     */
+    public boolean validateExternalLinks( int maxThreads, int maxPerHost, boolean virtualThreads, long timeout )
+        throws InterruptedException
+    {
+        int count = 0;
+        for ( Resource resource : resources.values() )
+        {
+            if ( resource.isExternal() )
+            {
+                count++;
+            }
+        }
+
+        if ( count == 0 )
+        {
+            return true;
+        }
+
+        long limit = timeout;
+        if ( deadline > 0 )
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if ( remaining <= 0 )
+            {
+                expireExternalLinks();
+
+                return false;
+            }
+
+            limit = ( limit > 0 ) ? Math.min( limit, remaining ) : remaining;
+        }
+
+        int threads = Math.max( 1, Math.min( maxThreads, count ) );
+
+        ExecutorService executor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if ( executor == null )
+        {
+            if ( LOG.isInfoEnabled() )
+            {
+                LOG.info( "Validating " + count + " external links with " + threads + " threads..." );
+            }
+
+            executor = Executors.newFixedThreadPool( threads );
+        }
+        else if ( LOG.isInfoEnabled() )
+        {
+            LOG.info( "Validating " + count + " external links with " + threads + " virtual threads at most..." );
+        }
+
+        HostDispatcher dispatcher = new HostDispatcher( executor, Math.max( 1, maxPerHost ) );
+
+        boolean completed;
+        try
+        {
+
+            // the pool bounds the validations running at the same time, virtual threads don't
+            final Semaphore running = new Semaphore( threads );
+
+            for ( final Resource resource : resources.values() )
+            {
+                if ( resource.isExternal() )
+                {
+                    dispatcher.dispatch( HostDispatcher.getHost( resource.key.toString() ), new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                running.acquire();
+                            }
+                            catch ( InterruptedException e )
+                            {
+                                return;
+                            }
+
+                            try
+                            {
+                                resource.getResult();
+                            }
+                            finally
+                            {
+                                running.release();
+                            }
+                        }
+                    } );
+                }
+            }
+
+            if ( limit > 0 )
+            {
+                completed = dispatcher.await( limit );
+                if ( !completed )
+                {
+                    dispatcher.cancel();
+
+                    // before the validations in progress are interrupted, so they don't get their results
+                    int expired = expireExternalLinks();
+
+                    if ( LOG.isWarnEnabled() )
+                    {
+                        LOG.warn( "The validation of the external links exceeded " + limit + " ms, " + expired
+                            + " links were not validated." );
+                    }
+                }
+            }
+            else
+            {
+                dispatcher.await();
+                completed = true;
+            }
+        }
+        finally
+        {
+            // e.g. if interrupted while waiting, so the running tasks don't hand their slot to the waiting ones
+            dispatcher.cancel();
+            executor.shutdownNow();
+        }
+
+        return completed;
+    }
+
+    /**
+     * Gives an unknown result to the external resources not validated yet. The validations in progress keep
+     * running until they are interrupted, but their results are ignored.
+     *
+     * @return the number of resources expired.
+     */
+    private int expireExternalLinks()
+    {
+        int expired = 0;
+        for ( Resource resource : resources.values() )
+        {
+            if ( resource.isExternal() && resource.expire() )
+            {
+                expired++;
+            }
+        }
+
+        return expired;
+    }
+
+    /**
+     * Creates an executor running each task in a new virtual thread, with <code>Executors</code>'s
+     * <code>newVirtualThreadPerTaskExecutor()</code> which is only available on recent JDKs.
+     *
+     * @return the executor, or null if virtual threads are not supported.
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return (ExecutorService) method.invoke( null );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            LOG.debug( "Virtual threads are not supported by this JDK." );
+        }
+        catch ( Exception e )
+        {
+            // e.g. a preview feature not enabled
+            LOG.debug( "Virtual threads are not available: " + e );
+        }
+
+        return null;
+    }
+
+    /**
+     * A resource referred to by one or more links. Its result is computed once, the first time it is asked for.
+     */
+    public final class Resource
+    {
+        /** The validator, null for an unresolved link. */
+        private final LinkValidator validator;
+
+        /** The resource key, null for an unresolved link. */
+        private final Object key;
+
+        /** The first link referring to this resource, validated on behalf of all of them. */
+        private final LinkValidationItem item;
+
+        /** The result, set once, guarded by this for writes. */
+        private volatile LinkValidationResult result;
+
+        Resource( LinkValidator validator, Object key, LinkValidationItem item, LinkValidationResult result )
+        {
+            this.validator = validator;
+            this.key = key;
+            this.item = item;
+            this.result = result;
+        }
+
+        /**
+         * Returns the result of this resource, validating it if it hasn't been done yet and if the deadline
+         * has not passed. No lock is held during the validation, concurrent validations of the same resource
+         * being coalesced by the manager.
+         *
+         * @return the result, never null.
+         */
+        public LinkValidationResult getResult()
+        {
+            LinkValidationResult current = result;
+            if ( current != null )
+            {
+                return current;
+            }
+
+            if ( isExpired() )
+            {
+                expire();
+
+                return result;
+            }
+
+            return complete( manager.validateResource( validator, key, item ) );
+        }
+
+        /**
+         * Gives an unknown result to this resource if it hasn't been validated yet.
+         *
+         * @return <code>true</code> if the resource had no result.
+         */
+        synchronized boolean expire()
+        {
+            if ( result != null )
+            {
+                return false;
+            }
+
+            result = DEADLINE_EXCEEDED;
+            expiredLinks.incrementAndGet();
+
+            return true;
+        }
+
+        /**
+         * Sets the result unless there is already one.
+         *
+         * @param lvr the result, not null.
+         * @return the result of this resource.
+         */
+        private synchronized LinkValidationResult complete( LinkValidationResult lvr )
+        {
+            if ( result == null )
+            {
+                result = lvr;
+            }
+
+            return result;
+        }
+
+        private boolean isExternal()
+        {
+            return validator instanceof HTTPLinkValidator || ( validator instanceof MailtoLinkValidator
+                && ( (MailtoLinkValidator) validator ).isCheckingDomains() );
+        }
+    }
+}
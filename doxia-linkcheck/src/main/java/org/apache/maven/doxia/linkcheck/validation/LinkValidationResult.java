@@ -47,6 +47,9 @@ public class LinkValidationResult
     /** The error message. */
     private final String errorMessage;
 
+    /** The time of the check, in milliseconds since the epoch. */
+    private final long checkTime;
+
     /**
      * Returns the persistent property.
      *
@@ -77,6 +80,28 @@ public class LinkValidationResult
         return this.errorMessage;
     }
 
+    /**
+     * Returns the errorMessage as given to the constructor, whatever the subclass adds to it.
+     *
+     * @return the errorMessage.
+     * @since 1.3
+     */
+    final String getRawErrorMessage()
+    {
+        return this.errorMessage;
+    }
+
+    /**
+     * Returns the time of the check. Results read from a cache keep the time of their original check.
+     *
+     * @return the time of the check, in milliseconds since the epoch.
+     * @since 1.3
+     */
+    public long getCheckTime()
+    {
+        return this.checkTime;
+    }
+
     /**
      * Constructor: initializes status, persistent and errorMessage.
      *
@@ -85,12 +110,28 @@ public class LinkValidationResult
      * @param message The errorMessage.
      */
     public LinkValidationResult( int stat, boolean persistent, String message )
+    {
+        this( stat, persistent, message, System.currentTimeMillis() );
+    }
+
+    /**
+     * Constructor: initializes status, persistent, errorMessage and checkTime.
+     *
+     * @param stat The status.
+     * @param persistent The persistent.
+     * @param message The errorMessage.
+     * @param checkTime The time of the check, in milliseconds since the epoch.
+     * @since 1.3
+     */
+    protected LinkValidationResult( int stat, boolean persistent, String message, long checkTime )
     {
         this.status = stat;
 
         this.persistent = persistent;
 
         this.errorMessage = message;
+
+        this.checkTime = checkTime;
     }
 
     /** {@inheritDoc} */
@@ -100,7 +141,8 @@ public class LinkValidationResult
 
         sb.append( "persistent=" ).append( this.persistent ).append( '\n' );
         sb.append( "status=" ).append( this.status ).append( '\n' );
-        sb.append( "errorMessage=" ).append( this.errorMessage );
+        sb.append( "errorMessage=" ).append( this.errorMessage ).append( '\n' );
+        sb.append( "checkTime=" ).append( this.checkTime );
 
         return sb.toString();
     }
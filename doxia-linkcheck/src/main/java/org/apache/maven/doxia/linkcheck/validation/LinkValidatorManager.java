@@ -26,22 +26,33 @@ import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.SelectorUtils;
 import org.codehaus.plexus.util.StringUtils;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
 import java.io.Serializable;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * A LinkValidator manager which manages validators with a cache.
@@ -61,14 +72,59 @@ public class LinkValidatorManager
     /** Log for debug output. */
     private static final Log LOG = LogFactory.getLog( LinkValidatorManager.class );
 
+    /** The (unique) result of the validations interrupted before their end, which is never cached. */
+    private static final LinkValidationResult INTERRUPTED =
+        new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Interrupted" );
+
     /** validators. */
     private List<LinkValidator> validators = new LinkedList<LinkValidator>();
 
     /** excludes. */
     private String[] excludedLinks = new String[0];
 
-    /** cache. */
-    private Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+    /** the excludes compiled once, null until first used. */
+    private transient volatile ExclusionMatcher exclusionMatcher;
+
+    /** cache, shared by the threads validating links. */
+    private Map<Object, LinkValidationResult> cache = new ConcurrentHashMap<Object, LinkValidationResult>();
+
+    /** the validations in progress by resource key, joined by the threads asking for the same resource. */
+    private transient ConcurrentMap<Object, FutureTask<LinkValidationResult>> pending =
+        new ConcurrentHashMap<Object, FutureTask<LinkValidationResult>>();
+
+    /** the number of results found in the cache. */
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /** the number of validations run because the cache had no fresh result. */
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /** the cache hits and misses by validator, not kept across serialization. */
+    private transient ConcurrentMap<LinkValidator, AtomicLongArray> validatorCounts =
+        new ConcurrentHashMap<LinkValidator, AtomicLongArray>();
+
+    /** the number of results obtained by waiting for the same validation in another thread. */
+    private final AtomicLong coalescedValidations = new AtomicLong();
+
+    /** the format of the cache files. */
+    private transient LinkCacheFormat cacheFormat;
+
+    /** the time to live of the cached results by status level, in milliseconds, negative for ever. */
+    private long[] timeToLive = { -1, -1, -1, -1, -1 };
+
+    /** the maximum number of cached results in memory, 0 for no limit. */
+    private int maxCacheEntries;
+
+    /** the cache shared with other managers, null if the cache is owned by this manager. */
+    private transient SharedLinkCache sharedCache;
+
+    /**
+     * the non-persistent results of this manager if the cache is shared, e.g. of local files which may change
+     * before the next execution, so they are not shared with the next managers.
+     */
+    private transient Map<Object, LinkValidationResult> ownResults;
+
+    /** the metrics of the HTTP requests sent for this manager, or null to leave them to the validators. */
+    private transient HostMetrics hostMetrics;
 
     /**
      * Returns the list of validators.
@@ -102,6 +158,145 @@ public class LinkValidatorManager
     public void setExcludedLinks( String[] excl )
     {
         this.excludedLinks = excl;
+        this.exclusionMatcher = null;
+    }
+
+    /**
+     * Returns the time to live of the cached results of the given status level.
+     *
+     * @param level the status level, one of the <code>LinkcheckFileResult</code> levels.
+     * @return the time to live in milliseconds, or a negative value if the results never expire.
+     * @since 1.3
+     */
+    public long getTimeToLive( int level )
+    {
+        return ( level >= 0 && level < this.timeToLive.length ) ? this.timeToLive[level] : -1;
+    }
+
+    /**
+     * Sets the time to live of the cached results of the given status level, i.e. the time after which
+     * a result read from the cache is validated again. As each result expires according to its own check time,
+     * the links of a large cache are checked again a few at a time over the runs.
+     * By default cached results never expire.
+     *
+     * @param level the status level, one of the <code>LinkcheckFileResult</code> levels.
+     * @param ttl the time to live in milliseconds, or a negative value if the results never expire.
+     * @see RevalidatingLinkValidator
+     * @since 1.3
+     */
+    public void setTimeToLive( int level, long ttl )
+    {
+        if ( level < 0 || level >= this.timeToLive.length )
+        {
+            throw new IllegalArgumentException( "This level [" + level + "] is unsupported." );
+        }
+
+        this.timeToLive[level] = ttl;
+    }
+
+    /**
+     * Returns the maximum number of cached results kept in memory.
+     *
+     * @return the maximum number of results in memory, or 0 if there is no limit.
+     * @since 1.3
+     */
+    public int getMaxCacheEntries()
+    {
+        return this.maxCacheEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached results kept in memory. Once it is reached, the least recently used
+     * results are spilled to a temporary file, from which they are read back when needed, so a large cache shared
+     * by many sites is used within a fixed heap. By default there is no limit.
+     *
+     * @param maxEntries the maximum number of results in memory, or 0 for no limit.
+     * @since 1.3
+     */
+    public void setMaxCacheEntries( int maxEntries )
+    {
+        if ( maxEntries < 0 )
+        {
+            throw new IllegalArgumentException( maxEntries + " should not be negative." );
+        }
+
+        this.maxCacheEntries = maxEntries;
+
+        if ( this.sharedCache != null )
+        {
+            // the shared results are not bounded
+            return;
+        }
+
+        Map<Object, LinkValidationResult> newCache = createCache();
+        newCache.putAll( this.cache );
+        setCache( newCache );
+    }
+
+    /**
+     * Returns the cache shared with other managers.
+     *
+     * @return the shared cache, or null if this manager has its own cache.
+     * @since 1.3
+     */
+    public SharedLinkCache getSharedCache()
+    {
+        return this.sharedCache;
+    }
+
+    /**
+     * Shares the cache of this manager with other managers: the results, including the ones already in the cache
+     * of this manager, are kept in the shared cache, and the validations in progress are shared, so a resource is
+     * validated once for all the managers. Only the persistent results are shared, the other ones are kept by this
+     * manager. The cache files are loaded once, and {@link #saveCache(File)} writes all the shared results.
+     * The maximum number of cached results is ignored.
+     *
+     * @param shared the shared cache, not null.
+     * @since 1.3
+     */
+    public void setSharedCache( SharedLinkCache shared )
+    {
+        Map<Object, LinkValidationResult> own = new ConcurrentHashMap<Object, LinkValidationResult>();
+        for ( Map.Entry<Object, LinkValidationResult> entry : this.cache.entrySet() )
+        {
+            if ( entry.getValue().isPersistent() )
+            {
+                shared.put( entry.getKey(), entry.getValue() );
+            }
+            else
+            {
+                own.put( entry.getKey(), entry.getValue() );
+            }
+        }
+
+        setCache( shared.getResults() );
+        this.ownResults = own;
+        this.pending = shared.getPending();
+        this.sharedCache = shared;
+    }
+
+    /**
+     * Returns the metrics of the HTTP requests sent for this manager.
+     *
+     * @return the metrics, or null if they are left to the validators.
+     * @since 1.3
+     */
+    public HostMetrics getHostMetrics()
+    {
+        return this.hostMetrics;
+    }
+
+    /**
+     * Sets the metrics of the HTTP requests sent for this manager. The requests are recorded in these metrics
+     * rather than in the ones of the validators, so the validators shared with other managers record the requests
+     * of each manager in its own metrics.
+     *
+     * @param hostMetrics the metrics, or null to leave them to the validators.
+     * @since 1.3
+     */
+    public void setHostMetrics( HostMetrics hostMetrics )
+    {
+        this.hostMetrics = hostMetrics;
     }
 
     /**
@@ -126,20 +321,19 @@ public class LinkValidatorManager
 
         if ( cachedResult != null )
         {
+            this.cacheHits.incrementAndGet();
+
             return cachedResult;
         }
 
-        for ( int i = 0; i < this.excludedLinks.length; i++ )
+        if ( isExcluded( lvi.getLink() ) )
         {
-            if ( this.excludedLinks[i] != null && matchPattern( lvi.getLink(), this.excludedLinks[i] ) )
+            if ( LOG.isDebugEnabled() )
             {
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( "Excluded " + lvi.getLink() );
-                }
-
-                return new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, "" );
+                LOG.debug( "Excluded " + lvi.getLink() );
             }
+
+            return new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, "" );
         }
 
         for ( LinkValidator lv : this.validators )
@@ -148,20 +342,13 @@ public class LinkValidatorManager
 
             if ( resourceKey != null )
             {
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( lv.getClass().getName() + " - Checking link " + lvi.getLink() );
-                }
-
-                LinkValidationResult lvr = lv.validateLink( lvi );
+                LinkValidationResult lvr = getResult( lv, resourceKey, lvi );
 
                 if ( lvr.getStatus() == LinkValidationResult.NOTMINE )
                 {
                     continue;
                 }
 
-                setCachedResult( resourceKey, lvr );
-
                 return lvr;
             }
         }
@@ -174,14 +361,53 @@ public class LinkValidatorManager
         return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "No validator found for this link" );
     }
 
+    /**
+     * Creates a new plan to validate the links of a whole site with the validators, the excludes and the cache
+     * of this manager.
+     *
+     * @return a new empty plan.
+     * @since 1.3
+     */
+    public LinkValidationPlan createPlan()
+    {
+        return new LinkValidationPlan( this );
+    }
+
+    /**
+     * Returns the format of the cache files.
+     *
+     * @return the cache format, a {@link BinaryLinkCacheFormat} by default.
+     * @since 1.3
+     */
+    public LinkCacheFormat getCacheFormat()
+    {
+        if ( this.cacheFormat == null )
+        {
+            this.cacheFormat = new BinaryLinkCacheFormat();
+        }
+
+        return this.cacheFormat;
+    }
+
+    /**
+     * Sets the format of the cache files.
+     *
+     * @param cacheFormat the cache format, or null for the default one.
+     * @since 1.3
+     */
+    public void setCacheFormat( LinkCacheFormat cacheFormat )
+    {
+        this.cacheFormat = cacheFormat;
+    }
+
     /**
      * Loads a cache file.
+     * Cache files serialized by the previous versions of linkcheck are still read.
      *
      * @param cacheFile The cache file.
      * May be null, in which case the request is ignored.
      * @throws IOException if any
      */
-    @SuppressWarnings( "unchecked" )
     public void loadCache( File cacheFile )
         throws IOException
     {
@@ -191,49 +417,72 @@ public class LinkValidatorManager
             return;
         }
 
+        if ( this.sharedCache != null )
+        {
+            this.sharedCache.load( this, cacheFile );
+            return;
+        }
+
+        Map<Object, LinkValidationResult> loaded = readCache( cacheFile );
+        if ( loaded != null )
+        {
+            setCache( loaded );
+        }
+    }
+
+    /**
+     * Reads a cache file with the format of this manager.
+     *
+     * @param cacheFile the cache file, not null.
+     * @return the results read, or null if the file doesn't exist or is incompatible.
+     * @throws IOException if any
+     */
+    Map<Object, LinkValidationResult> readCache( File cacheFile )
+        throws IOException
+    {
         if ( !cacheFile.exists() )
         {
             LOG.debug( "Specified cache file does not exist! Ignoring request to load." );
-            return;
+            return null;
         }
 
         if ( cacheFile.isDirectory() )
         {
             LOG.debug( "Cache file is a directory! Ignoring request to load." );
-            return;
+            return null;
         }
 
-        ObjectInputStream is = null;
-        try
-        {
-            is = new ObjectInputStream( new FileInputStream( cacheFile ) );
-
-            this.cache = (Map<Object, LinkValidationResult>) is.readObject();
+        Map<Object, LinkValidationResult> loaded = createCache();
+        boolean read = getCacheFormat().read( cacheFile, loaded );
 
-            if ( LOG.isDebugEnabled() )
+        if ( !read && isSerializedCache( cacheFile ) )
+        {
+            Map<Object, LinkValidationResult> serialized = readSerializedCache( cacheFile );
+            if ( serialized != null )
             {
-                LOG.debug( "Cache file loaded: " + cacheFile.getAbsolutePath() );
+                loaded.clear();
+                loaded.putAll( serialized );
+                read = true;
             }
         }
-        catch ( InvalidClassException e )
+
+        if ( !read )
         {
+            discard( loaded );
             LOG.warn( "Your cache is incompatible with this version of linkcheck. It will be recreated." );
+            return null;
         }
-        catch ( ClassNotFoundException e )
-        {
-            if ( LOG.isErrorEnabled() )
-            {
-                LOG.error( "Unable to load the cache: " + cacheFile.getAbsolutePath(), e );
-            }
-        }
-        finally
+
+        if ( LOG.isDebugEnabled() )
         {
-            IOUtil.close( is );
+            LOG.debug( "Cache file loaded: " + cacheFile.getAbsolutePath() );
         }
+
+        return loaded;
     }
 
     /**
-     * Saves a cache file.
+     * Saves a cache file. If the cache is shared, the file is written with the results of all the managers.
      *
      * @param cacheFile The name of the cache file.
      * May be null, in which case the request is ignored.
@@ -254,45 +503,43 @@ public class LinkValidatorManager
             return;
         }
 
-        // Remove non-persistent items from cache
-        Map<Object, LinkValidationResult> persistentCache = new HashMap<Object, LinkValidationResult>();
-
-        for ( Map.Entry<Object, LinkValidationResult> resource : this.cache.entrySet() )
+        if ( this.sharedCache != null )
         {
-            if ( resource.getValue().isPersistent() )
-            {
-                persistentCache.put( resource.getKey(), resource.getValue() );
-
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( "[" + resource.getKey() + "] with result [" + resource.getValue()
-                        + "] is stored in the cache." );
-                }
-            }
+            this.sharedCache.save( this, cacheFile );
+            return;
         }
 
-        File dir = cacheFile.getParentFile();
-        if ( dir != null )
-        {
-            dir.mkdirs();
-        }
+        writeCache( getCacheFormat(), this.timeToLive, this.cache, cacheFile );
+    }
 
-        ObjectOutputStream os = null;
-        try
-        {
-            os = new ObjectOutputStream( new FileOutputStream( cacheFile ) );
+    /**
+     * Writes the persistent and not expired results to a cache file.
+     *
+     * @param format the format of the cache file, not null.
+     * @param timeToLive the time to live of the results by status level, not null.
+     * @param results the results, not null.
+     * @param cacheFile the cache file, not null.
+     * @throws IOException if any
+     */
+    static void writeCache( LinkCacheFormat format, long[] timeToLive, Map<Object, LinkValidationResult> results,
+                            File cacheFile )
+        throws IOException
+    {
+        // Skip non-persistent and expired items, without copying the cache
+        format.write( new PersistentResults( results, timeToLive, System.currentTimeMillis() ), cacheFile );
+    }
 
-            os.writeObject( persistentCache );
-        }
-        finally
-        {
-            IOUtil.close( os );
-        }
+    /**
+     * @return a copy of the time to live of the results by status level.
+     */
+    long[] getTimeToLives()
+    {
+        return this.timeToLive.clone();
     }
 
     /**
      * Returns a LinkValidationResult for the given LinkValidationItem
-     * if it has been cached from a previous run, returns null otherwise.
+     * if it has been cached from a previous run and has not expired, returns null otherwise.
      *
      * @param lvi The LinkValidationItem.
      * @return LinkValidationResult
@@ -303,15 +550,16 @@ public class LinkValidatorManager
         {
             Object resourceKey = lv.getResourceKey( lvi );
 
-            if ( resourceKey != null && this.cache.containsKey( resourceKey ) )
+            LinkValidationResult cachedResult = ( resourceKey == null ) ? null : getCached( resourceKey );
+
+            if ( cachedResult != null && !isExpired( cachedResult, System.currentTimeMillis() ) )
             {
                 if ( LOG.isDebugEnabled() )
                 {
-                    LOG.debug( "The cache returns for [" + resourceKey + "] the result ["
-                        + this.cache.get( resourceKey ) + "]." );
+                    LOG.debug( "The cache returns for [" + resourceKey + "] the result [" + cachedResult + "]." );
                 }
 
-                return (LinkValidationResult) this.cache.get( resourceKey );
+                return cachedResult;
             }
         }
 
@@ -326,7 +574,434 @@ public class LinkValidatorManager
      */
     public void setCachedResult( Object resourceKey, LinkValidationResult lvr )
     {
-        this.cache.put( resourceKey, lvr );
+        if ( this.sharedCache == null )
+        {
+            this.cache.put( resourceKey, lvr );
+        }
+        else if ( lvr.isPersistent() )
+        {
+            this.sharedCache.put( resourceKey, lvr );
+            this.ownResults.remove( resourceKey );
+        }
+        else
+        {
+            this.ownResults.put( resourceKey, lvr );
+        }
+    }
+
+    /**
+     * Validates a resource with the given validator, unless its result is already cached, and caches the result.
+     *
+     * @param lv the validator, not null.
+     * @param resourceKey the resource key of the item for this validator, not null.
+     * @param lvi the item to validate, not null.
+     * @return the result, never null.
+     */
+    LinkValidationResult validateResource( LinkValidator lv, Object resourceKey, LinkValidationItem lvi )
+    {
+        LinkValidationResult lvr = getResult( lv, resourceKey, lvi );
+
+        if ( lvr.getStatus() == LinkValidationResult.NOTMINE )
+        {
+            // let the next validators try
+            return validateLink( lvi );
+        }
+
+        return lvr;
+    }
+
+    /**
+     * Returns the number of results found in the cache since this manager was created.
+     *
+     * @return the number of cache hits.
+     * @since 1.3
+     */
+    public long getCacheHits()
+    {
+        return this.cacheHits.get();
+    }
+
+    /**
+     * Returns the number of validations run because the cache had no fresh result, since this manager was created.
+     *
+     * @return the number of cache misses.
+     * @since 1.3
+     */
+    public long getCacheMisses()
+    {
+        return this.cacheMisses.get();
+    }
+
+    /**
+     * Returns the number of results of the given validator found in the cache since this manager was created.
+     *
+     * @param lv a validator.
+     * @return the number of cache hits of the validator.
+     * @since 1.3
+     */
+    public long getCacheHits( LinkValidator lv )
+    {
+        AtomicLongArray counts = this.validatorCounts.get( lv );
+
+        return ( counts == null ) ? 0 : counts.get( 0 );
+    }
+
+    /**
+     * Returns the number of validations run by the given validator because the cache had no fresh result,
+     * since this manager was created.
+     *
+     * @param lv a validator.
+     * @return the number of cache misses of the validator.
+     * @since 1.3
+     */
+    public long getCacheMisses( LinkValidator lv )
+    {
+        AtomicLongArray counts = this.validatorCounts.get( lv );
+
+        return ( counts == null ) ? 0 : counts.get( 1 );
+    }
+
+    /**
+     * Returns the number of results obtained by waiting for the validation of the same resource in another thread,
+     * since this manager was created.
+     *
+     * @return the number of coalesced validations.
+     * @since 1.3
+     */
+    public long getCoalescedValidations()
+    {
+        return this.coalescedValidations.get();
+    }
+
+    /**
+     * Returns the cached result of a resource if it is fresh, otherwise validates it and caches the result.
+     * Concurrent calls for the same resource key share a single validation, calls for other keys never wait.
+     *
+     * @param lv the validator, not null.
+     * @param resourceKey the resource key of the item for this validator, not null.
+     * @param lvi the item to validate, not null.
+     * @return the result, <code>NOTMINE</code> if the validator doesn't handle the item.
+     */
+    private LinkValidationResult getResult( final LinkValidator lv, final Object resourceKey,
+                                            final LinkValidationItem lvi )
+    {
+        LinkValidationResult cachedResult = getFreshResult( resourceKey );
+
+        if ( cachedResult != null )
+        {
+            this.cacheHits.incrementAndGet();
+            count( lv, 0 );
+
+            return cachedResult;
+        }
+
+        FutureTask<LinkValidationResult> task =
+            new FutureTask<LinkValidationResult>( new Callable<LinkValidationResult>()
+            {
+                public LinkValidationResult call()
+                {
+                    // another thread may have cached the result since the first lookup
+                    LinkValidationResult fresh = getFreshResult( resourceKey );
+                    if ( fresh != null )
+                    {
+                        cacheHits.incrementAndGet();
+                        count( lv, 0 );
+
+                        return fresh;
+                    }
+
+                    cacheMisses.incrementAndGet();
+                    count( lv, 1 );
+
+                    if ( LOG.isDebugEnabled() )
+                    {
+                        LOG.debug( lv.getClass().getName() + " - Checking link " + lvi.getLink() );
+                    }
+
+                    LinkValidationResult lvr;
+                    HostMetrics.setCurrent( hostMetrics );
+                    try
+                    {
+                        lvr = validate( lv, lvi, getCached( resourceKey ) );
+                    }
+                    finally
+                    {
+                        HostMetrics.setCurrent( null );
+                    }
+
+                    if ( Thread.currentThread().isInterrupted() )
+                    {
+                        // a cancelled validation, e.g. at the deadline: its result says nothing about the link
+                        return INTERRUPTED;
+                    }
+
+                    if ( lvr.getStatus() != LinkValidationResult.NOTMINE )
+                    {
+                        setCachedResult( resourceKey, lvr );
+                    }
+
+                    return lvr;
+                }
+            } );
+
+        FutureTask<LinkValidationResult> running = this.pending.putIfAbsent( resourceKey, task );
+        if ( running == null )
+        {
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                this.pending.remove( resourceKey, task );
+            }
+        }
+        else
+        {
+            this.coalescedValidations.incrementAndGet();
+
+            task = running;
+        }
+
+        LinkValidationResult lvr;
+        try
+        {
+            lvr = task.get();
+        }
+        catch ( ExecutionException e )
+        {
+            LOG.error( "Unable to validate link : " + lvi.getLink(), e.getCause() );
+
+            return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, e.getCause().getMessage() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            return INTERRUPTED;
+        }
+
+        if ( lvr == INTERRUPTED && running != null && !Thread.currentThread().isInterrupted() )
+        {
+            // the validation shared with this call has been cancelled, not this call: validate the link again
+            this.pending.remove( resourceKey, running );
+
+            return getResult( lv, resourceKey, lvi );
+        }
+
+        return lvr;
+    }
+
+    /**
+     * @param lv the validator, not null
+     * @param index 0 for a cache hit, 1 for a cache miss
+     */
+    private void count( LinkValidator lv, int index )
+    {
+        AtomicLongArray counts = this.validatorCounts.get( lv );
+        if ( counts == null )
+        {
+            counts = new AtomicLongArray( 2 );
+
+            AtomicLongArray previous = this.validatorCounts.putIfAbsent( lv, counts );
+            if ( previous != null )
+            {
+                counts = previous;
+            }
+        }
+
+        counts.incrementAndGet( index );
+    }
+
+    /**
+     * @param resourceKey not null
+     * @return the cached result of the resource if it has not expired, null otherwise
+     */
+    private LinkValidationResult getFreshResult( Object resourceKey )
+    {
+        LinkValidationResult cachedResult = getCached( resourceKey );
+
+        if ( cachedResult != null && !isExpired( cachedResult, System.currentTimeMillis() ) )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "The cache returns for [" + resourceKey + "] the result [" + cachedResult + "]." );
+            }
+
+            return cachedResult;
+        }
+
+        return null;
+    }
+
+    /**
+     * Validates a link, or revalidates it if the validator supports it and the link has an expired result.
+     *
+     * @param lv the validator, not null.
+     * @param lvi the item to validate, not null.
+     * @param expired the expired result of the resource, may be null.
+     * @return the result.
+     */
+    private static LinkValidationResult validate( LinkValidator lv, LinkValidationItem lvi,
+                                                  LinkValidationResult expired )
+    {
+        if ( expired != null && lv instanceof RevalidatingLinkValidator )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Revalidating the expired result of " + lvi.getLink() );
+            }
+
+            return ( (RevalidatingLinkValidator) lv ).revalidateLink( lvi, expired );
+        }
+
+        return lv.validateLink( lvi );
+    }
+
+    /**
+     * @param resourceKey not null
+     * @return the cached result of the resource, expired or not, null if there is none
+     */
+    private LinkValidationResult getCached( Object resourceKey )
+    {
+        LinkValidationResult own = ( this.ownResults == null ) ? null : this.ownResults.get( resourceKey );
+
+        return ( own != null ) ? own : this.cache.get( resourceKey );
+    }
+
+    /**
+     * @return a new empty cache, bounded if a maximum number of entries is set
+     */
+    private Map<Object, LinkValidationResult> createCache()
+    {
+        if ( this.maxCacheEntries > 0 )
+        {
+            return new BoundedLinkCache( this.maxCacheEntries, null );
+        }
+
+        return new ConcurrentHashMap<Object, LinkValidationResult>();
+    }
+
+    /**
+     * @param newCache the cache replacing the current one, not null
+     */
+    private void setCache( Map<Object, LinkValidationResult> newCache )
+    {
+        Map<Object, LinkValidationResult> previous = this.cache;
+        this.cache = newCache;
+        if ( previous != newCache )
+        {
+            discard( previous );
+        }
+    }
+
+    /**
+     * @param unused a cache no longer used, its spill file is deleted
+     */
+    static void discard( Map<Object, LinkValidationResult> unused )
+    {
+        if ( unused instanceof BoundedLinkCache )
+        {
+            ( (BoundedLinkCache) unused ).close();
+        }
+    }
+
+    /**
+     * @param lvr a cached result, not null
+     * @param now the current time
+     * @return true if the time to live of the result has elapsed
+     */
+    private boolean isExpired( LinkValidationResult lvr, long now )
+    {
+        return isExpired( lvr, this.timeToLive, now );
+    }
+
+    /**
+     * @param lvr a cached result, not null
+     * @param timeToLive the time to live by status level, not null
+     * @param now the current time
+     * @return true if the time to live of the result has elapsed
+     */
+    private static boolean isExpired( LinkValidationResult lvr, long[] timeToLive, long now )
+    {
+        int level = lvr.getStatus();
+        long ttl = ( level >= 0 && level < timeToLive.length ) ? timeToLive[level] : -1;
+
+        return ttl >= 0 && now - lvr.getCheckTime() > ttl;
+    }
+
+    /**
+     * @param cacheFile an existing file, not null
+     * @return true if the file is a serialized cache of a previous version
+     * @throws IOException if any
+     */
+    private static boolean isSerializedCache( File cacheFile )
+        throws IOException
+    {
+        DataInputStream is = null;
+        try
+        {
+            is = new DataInputStream( new FileInputStream( cacheFile ) );
+
+            return cacheFile.length() > 2 && is.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
+    /**
+     * @param cacheFile a serialized cache, not null
+     * @return the cached results, or null if they can't be deserialized
+     * @throws IOException if any
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Map<Object, LinkValidationResult> readSerializedCache( File cacheFile )
+        throws IOException
+    {
+        ObjectInputStream is = null;
+        try
+        {
+            is = new ObjectInputStream( new FileInputStream( cacheFile ) );
+
+            return (Map<Object, LinkValidationResult>) is.readObject();
+        }
+        catch ( InvalidClassException e )
+        {
+            return null;
+        }
+        catch ( ClassNotFoundException e )
+        {
+            if ( LOG.isErrorEnabled() )
+            {
+                LOG.error( "Unable to load the cache: " + cacheFile.getAbsolutePath(), e );
+            }
+
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
+    /**
+     * The excluded links are compiled on first use, and again after each call to <code>setExcludedLinks</code>.
+     *
+     * @param link not null
+     * @return true if the link matches one of the excluded links
+     */
+    boolean isExcluded( String link )
+    {
+        ExclusionMatcher matcher = this.exclusionMatcher;
+        if ( matcher == null )
+        {
+            matcher = new ExclusionMatcher( this.excludedLinks );
+            this.exclusionMatcher = matcher;
+        }
+
+        return matcher.matches( link );
     }
 
     /**
@@ -377,4 +1052,109 @@ public class LinkValidatorManager
 
         return SelectorUtils.match( pattern, link );
     }
+
+    /**
+     * Restores the transient state after deserialization.
+     *
+     * @param in the stream, not null
+     * @throws IOException if any
+     * @throws ClassNotFoundException if any
+     */
+    private void readObject( ObjectInputStream in )
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+
+        this.pending = new ConcurrentHashMap<Object, FutureTask<LinkValidationResult>>();
+        this.validatorCounts = new ConcurrentHashMap<LinkValidator, AtomicLongArray>();
+    }
+
+    /**
+     * A read-only view of the persistent and not expired results of a cache, filtered while iterating.
+     */
+    private static class PersistentResults
+        extends AbstractMap<Object, LinkValidationResult>
+    {
+        private final Map<Object, LinkValidationResult> results;
+
+        private final long[] timeToLive;
+
+        private final long now;
+
+        PersistentResults( Map<Object, LinkValidationResult> results, long[] timeToLive, long now )
+        {
+            this.results = results;
+            this.timeToLive = timeToLive;
+            this.now = now;
+        }
+
+        /** {@inheritDoc} */
+        public Set<Map.Entry<Object, LinkValidationResult>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Object, LinkValidationResult>>()
+            {
+                public Iterator<Map.Entry<Object, LinkValidationResult>> iterator()
+                {
+                    final Iterator<Map.Entry<Object, LinkValidationResult>> it = results.entrySet().iterator();
+
+                    return new Iterator<Map.Entry<Object, LinkValidationResult>>()
+                    {
+                        private Map.Entry<Object, LinkValidationResult> next;
+
+                        public boolean hasNext()
+                        {
+                            while ( next == null && it.hasNext() )
+                            {
+                                Map.Entry<Object, LinkValidationResult> resource = it.next();
+
+                                LinkValidationResult lvr = resource.getValue();
+
+                                if ( lvr.isPersistent() && !isExpired( lvr, timeToLive, now ) )
+                                {
+                                    if ( LOG.isDebugEnabled() )
+                                    {
+                                        LOG.debug( "[" + resource.getKey() + "] with result [" + resource.getValue()
+                                            + "] is stored in the cache." );
+                                    }
+
+                                    next = resource;
+                                }
+                            }
+
+                            return next != null;
+                        }
+
+                        public Map.Entry<Object, LinkValidationResult> next()
+                        {
+                            if ( !hasNext() )
+                            {
+                                throw new NoSuchElementException();
+                            }
+
+                            Map.Entry<Object, LinkValidationResult> resource = next;
+                            next = null;
+
+                            return resource;
+                        }
+
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                public int size()
+                {
+                    int size = 0;
+                    for ( Iterator<Map.Entry<Object, LinkValidationResult>> it = iterator(); it.hasNext(); it.next() )
+                    {
+                        size++;
+                    }
+
+                    return size;
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Tells whether a mail domain may receive mails, i.e. whether it has a mail server.
+ * <p>
+ * Implementations may be used concurrently.
+ * </p>
+ *
+ * @since 1.3
+ * @see MailtoLinkValidator#MailtoLinkValidator(MailDomainResolver)
+ */
+public interface MailDomainResolver
+{
+    /**
+     * Looks the given domain up.
+     *
+     * @param domain the lower case domain of a mail address, not null.
+     * @return <code>true</code> if the domain has a MX record, or a A or AAAA record used as implicit MX.
+     * @throws IOException if the lookup failed, e.g. if no name server could be reached.
+     */
+    boolean hasMailServer( String domain )
+        throws IOException;
+}
@@ -19,10 +19,20 @@ package org.apache.maven.doxia.linkcheck.validation;
  * under the License.
  */
 
+import java.io.IOException;
+import java.util.Locale;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
 
 /**
  * Validates mailto links.
+ * <p>
+ * By default any link containing a <code>@</code> is valid. If a {@link MailDomainResolver} is given, the domain
+ * of each address is looked up instead: the resource key of a link is its domain, so the addresses of the same
+ * domain are checked with one lookup, and its result is cached with the time to live of its level.
+ * </p>
  *
  * @author <a href="mailto:bwalding@apache.org">Ben Walding</a>
  * @author <a href="mailto:aheritier@apache.org">Arnaud Heritier</a>
@@ -31,24 +41,141 @@ import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
 public final class MailtoLinkValidator
     implements LinkValidator
 {
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( MailtoLinkValidator.class );
+
+    /** The prefix of the resource keys of the domains. */
+    private static final String DOMAIN_KEY = "mailto:@";
+
     /** The (unique) LinkValidationResult to be returned by this LinkValidator. */
     private static final LinkValidationResult LVR =
         new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false, "" );
 
+    /** The (unique) result of the addresses without domain. */
+    private static final LinkValidationResult INVALID_ADDRESS =
+        new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, "Invalid mail address" );
+
+    /** The resolver of the domains, or null if the domains are not checked. */
+    private final MailDomainResolver resolver;
+
+    /**
+     * Constructor of a validator accepting any link containing a <code>@</code>.
+     */
+    public MailtoLinkValidator()
+    {
+        this( null );
+    }
+
+    /**
+     * Constructor of a validator checking that the domain of each address has a mail server.
+     *
+     * @param resolver the resolver of the domains, or null to accept any link containing a <code>@</code>.
+     * @since 1.3
+     */
+    public MailtoLinkValidator( MailDomainResolver resolver )
+    {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Tells whether the domains of the addresses are looked up.
+     *
+     * @return <code>true</code> if this validator has a {@link MailDomainResolver}.
+     * @since 1.3
+     */
+    public boolean isCheckingDomains()
+    {
+        return resolver != null;
+    }
+
     /** {@inheritDoc} */
     public LinkValidationResult validateLink( LinkValidationItem lvi )
     {
-        return LVR;
+        if ( resolver == null )
+        {
+            return LVR;
+        }
+
+        String domain = getDomain( lvi.getLink() );
+        if ( domain == null )
+        {
+            return INVALID_ADDRESS;
+        }
+
+        try
+        {
+            // a new result for each lookup, its check time being the start of its time to live
+            if ( resolver.hasMailServer( domain ) )
+            {
+                return new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, "" );
+            }
+
+            return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, true,
+                                             "No MX or A record for domain " + domain );
+        }
+        catch ( IOException e )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Unable to look " + domain + " up", e );
+            }
+
+            return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, e.getMessage() );
+        }
     }
 
     /** {@inheritDoc} */
     public Object getResourceKey( LinkValidationItem lvi )
     {
-        if ( lvi.getLink().indexOf( '@' ) != -1 )
+        if ( lvi.getLink().indexOf( '@' ) == -1 )
+        {
+            return null;
+        }
+
+        if ( resolver == null )
         {
             return lvi.getLink();
         }
 
-        return null;
+        String domain = getDomain( lvi.getLink() );
+
+        return ( domain == null ) ? lvi.getLink() : DOMAIN_KEY + domain;
+    }
+
+    /**
+     * Returns the domain of the first address of a mailto link.
+     *
+     * @param link a link containing a <code>@</code>, or a domain resource key.
+     * @return the lower case domain, or null if the address has none.
+     */
+    static String getDomain( String link )
+    {
+        String address = link;
+
+        int end = address.indexOf( '?' );
+        if ( end != -1 )
+        {
+            address = address.substring( 0, end );
+        }
+
+        end = address.indexOf( ',' );
+        if ( end != -1 )
+        {
+            address = address.substring( 0, end );
+        }
+
+        int at = address.lastIndexOf( '@' );
+        if ( at == -1 )
+        {
+            return null;
+        }
+
+        String domain = address.substring( at + 1 ).trim();
+        if ( domain.length() == 0 )
+        {
+            return null;
+        }
+
+        return domain.toLowerCase( Locale.ENGLISH );
     }
 }
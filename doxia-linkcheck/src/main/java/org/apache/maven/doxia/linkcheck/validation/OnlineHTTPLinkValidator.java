@@ -20,8 +20,6 @@ package org.apache.maven.doxia.linkcheck.validation;
  */
 
 import java.io.IOException;
-
-import java.net.URL;
 import java.util.Map;
 
 import org.apache.commons.httpclient.Credentials;
@@ -34,7 +32,6 @@ import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NTCredentials;
-import org.apache.commons.httpclient.StatusLine;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -45,7 +42,6 @@ import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.maven.doxia.linkcheck.HttpBean;
-import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
 import org.codehaus.plexus.util.StringUtils;
 
 /**
@@ -58,25 +54,17 @@ import org.codehaus.plexus.util.StringUtils;
  */
 public final class OnlineHTTPLinkValidator
     extends HTTPLinkValidator
+    implements RevalidatingLinkValidator
 {
     /** Log for debug output. */
     private static final Log LOG = LogFactory.getLog( OnlineHTTPLinkValidator.class );
 
-    /** The maximum number of redirections for a link. */
-    private static final int MAX_NB_REDIRECT = 10;
-
     /** Use the get method to test pages. */
     private static final String GET_METHOD = "get";
 
     /** Use the head method to test pages. */
     private static final String HEAD_METHOD = "head";
 
-    /** The http bean encapsuling all http parameters supported. */
-    private HttpBean http;
-
-    /** The base URL for links that start with '/'. */
-    private String baseURL;
-
     /** The HttpClient. */
     private transient HttpClient cl;
 
@@ -95,227 +83,197 @@ public final class OnlineHTTPLinkValidator
      */
     public OnlineHTTPLinkValidator( HttpBean bean )
     {
-        if ( bean == null )
-        {
-            bean = new HttpBean();
-        }
+        super( bean );
 
         if ( LOG.isDebugEnabled() )
         {
-            LOG.debug( "Will use method : [" + bean.getMethod() + "]" );
+            LOG.debug( "Will use method : [" + getHttpBean().getMethod() + "]" );
         }
 
-        this.http = bean;
-
         initHttpClient();
     }
 
     /**
-     * The base URL.
-     *
-     * @return the base URL.
+     * {@inheritDoc}
+     * <p>
+     * The connection manager of the HttpClient is shut down, a new HttpClient is created if more links are checked.
+     * </p>
      */
-    public String getBaseURL()
+    public synchronized void close()
     {
-        return this.baseURL;
+        if ( this.cl != null )
+        {
+            ( (MultiThreadedHttpConnectionManager) this.cl.getHttpConnectionManager() ).shutdown();
+            this.cl = null;
+        }
     }
 
     /**
-     * Sets the base URL. This is pre-pended to links that start with '/'.
+     * Sends one request with the HttpClient, which doesn't follow the redirections. Only the part of the body
+     * scanned for the anchor is downloaded, but for small bodies read to their end to keep the connection alive.
      *
-     * @param url the base URL.
+     * @param link the URL to request, without anchor.
+     * @param previous the previous result of the link, whose validators are sent as conditional headers, or null.
+     * @param anchor the anchor to find in the document, or an empty String.
+     * @return the response.
+     * @throws IOException if something goes wrong.
      */
-    public void setBaseURL( String url )
+    Response request( String link, HTTPLinkValidationResult previous, String anchor )
+        throws IOException
     {
-        this.baseURL = url;
-    }
+        HttpClient client = getHttpClient();
+        HttpBean http = getHttpBean();
 
-    /** {@inheritDoc} */
-    public LinkValidationResult validateLink( LinkValidationItem lvi )
-    {
-        if ( this.cl == null )
+        HttpMethod hm;
+        if ( HEAD_METHOD.equalsIgnoreCase( http.getMethod() ) )
         {
-            initHttpClient();
+            hm = new HeadMethod( link );
         }
-
-        if ( this.http.getHttpClientParameters() != null )
+        else if ( GET_METHOD.equalsIgnoreCase( http.getMethod() ) )
+        {
+            hm = new GetMethod( link );
+        }
+        else
         {
-            for ( Map.Entry<Object, Object> entry : this.http.getHttpClientParameters().entrySet() )
+            if ( LOG.isErrorEnabled() )
             {
-                if ( entry.getValue() != null )
-                {
-                    System.setProperty( entry.getKey().toString(), entry.getValue().toString() );
-                }
+                LOG.error( "Unsupported method: " + http.getMethod() + ", using 'get'." );
             }
+            hm = new GetMethod( link );
         }
 
-        // Some web servers don't allow the default user-agent sent by httpClient
-        System.setProperty( HttpMethodParams.USER_AGENT, "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.0)" );
-        this.cl.getParams().setParameter( HttpMethodParams.USER_AGENT,
-                                          "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.0)" );
-
-        String link = lvi.getLink();
-        String anchor = "";
-        int idx = link.indexOf( '#' );
-        if ( idx != -1 )
-        {
-            anchor = link.substring( idx + 1 );
-            link = link.substring( 0, idx );
-        }
+        // the redirections are followed by the caller, so each one is checked
+        hm.setFollowRedirects( false );
 
-        try
+        if ( previous != null )
         {
-            if ( link.startsWith( "/" ) )
-            {
-                if ( getBaseURL() == null )
-                {
-                    if ( LOG.isWarnEnabled() )
-                    {
-                        LOG.warn( "Cannot check link [" + link + "] in page [" + lvi.getSource()
-                            + "], as no base URL has been set!" );
-                    }
-
-                    return new LinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, false,
-                                                     "No base URL specified" );
-                }
-
-                link = getBaseURL() + link;
-            }
-
-            HttpMethod hm = null;
-            try
-            {
-                hm = checkLink( link, 0 );
-            }
-            catch ( Throwable t )
+            if ( previous.getETag() != null )
             {
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( "Received: [" + t + "] for [" + link + "] in page [" + lvi.getSource() + "]", t );
-                }
-
-                return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, t.getClass().getName()
-                    + " : " + t.getMessage() );
+                hm.setRequestHeader( "If-None-Match", previous.getETag() );
             }
-
-            if ( hm == null )
+            if ( previous.getLastModified() != null )
             {
-                return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false,
-                                                 "Cannot retreive HTTP Status" );
+                hm.setRequestHeader( "If-Modified-Since", previous.getLastModified() );
             }
+        }
 
-            if ( hm.getStatusCode() == HttpStatus.SC_OK )
-            {
-                // lets check if the anchor is present
-                if ( anchor.length() > 0 )
-                {
-                    String content = hm.getResponseBodyAsString();
-
-                    if ( !Anchors.matchesAnchor( content, anchor ) )
-                    {
-                        return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, false,
-                            "Missing anchor '" + anchor + "'" );
-                    }
-                }
-                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, hm.getStatusCode(),
-                                                     hm.getStatusText() );
-            }
+        try
+        {
+            // the HttpClient derives the host from the absolute link on a copy of its host configuration,
+            // so the shared configuration is never modified and links may be checked concurrently
+            client.executeMethod( hm );
 
-            String msg =
-                "Received: [" + hm.getStatusCode() + "] for [" + link + "] in page [" + lvi.getSource() + "]";
-            // If there's a redirection ... add a warning
-            if ( hm.getStatusCode() == HttpStatus.SC_MOVED_PERMANENTLY
-                || hm.getStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY
-                || hm.getStatusCode() == HttpStatus.SC_TEMPORARY_REDIRECT )
+            if ( hm.getStatusLine() == null )
             {
-                LOG.warn( msg );
-
-                return new HTTPLinkValidationResult( LinkcheckFileResult.WARNING_LEVEL, true, hm.getStatusCode(),
-                                                     hm.getStatusText() );
+                throw new HttpException( "Cannot retreive HTTP Status" );
             }
 
-            LOG.debug( msg );
+            Response response = new Response();
+            response.statusCode = hm.getStatusCode();
+            response.statusText = hm.getStatusText();
+            response.eTag = getHeader( hm, "ETag" );
+            response.lastModified = getHeader( hm, "Last-Modified" );
+            response.location = getHeader( hm, "Location" );
+            response.retryAfter = getHeader( hm, "Retry-After" );
 
-            return new HTTPLinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, hm.getStatusCode(),
-                                                 hm.getStatusText() );
-        }
-        catch ( Throwable t )
-        {
-            String msg = "Received: [" + t + "] for [" + link + "] in page [" + lvi.getSource() + "]";
-            if ( LOG.isDebugEnabled() )
+            if ( anchor.length() > 0 && response.statusCode == HttpStatus.SC_OK )
             {
-                LOG.debug( msg, t );
-            }
-            else
-            {
-                LOG.error( msg );
+                response.anchorFound =
+                    hasAnchor( link, anchor, hm.getResponseBodyAsStream(), getHeader( hm, "Content-Type" ) );
             }
 
-            return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, t.getMessage() );
+            return response;
         }
         finally
         {
-            System.getProperties().remove( HttpMethodParams.USER_AGENT );
+            release( hm );
+        }
+    }
 
-            if ( this.http.getHttpClientParameters() != null )
-            {
-                for ( Map.Entry<Object, Object> entry : this.http.getHttpClientParameters().entrySet() )
-                {
-                    if ( entry.getValue() != null )
-                    {
-                        System.getProperties().remove( entry.getKey().toString() );
-                    }
-                }
-            }
+    /**
+     * @return the HttpClient, initialized if needed.
+     */
+    private synchronized HttpClient getHttpClient()
+    {
+        if ( this.cl == null )
+        {
+            initHttpClient();
         }
+
+        return this.cl;
     }
 
     /** Initialize the HttpClient. */
     private void initHttpClient()
     {
+        HttpBean http = getHttpBean();
+
         LOG.debug( "A new HttpClient instance is needed ..." );
 
         this.cl = new HttpClient( new MultiThreadedHttpConnectionManager() );
 
         // Default params
-        if ( this.http.getTimeout() != 0 )
+        this.cl.getHttpConnectionManager().getParams().setMaxTotalConnections( http.getMaxConnections() );
+        this.cl.getHttpConnectionManager().getParams().setDefaultMaxConnectionsPerHost(
+            http.getMaxConnectionsPerHost() );
+        if ( http.getTimeout() != 0 )
         {
-            this.cl.getHttpConnectionManager().getParams().setConnectionTimeout( this.http.getTimeout() );
-            this.cl.getHttpConnectionManager().getParams().setSoTimeout( this.http.getTimeout() );
+            this.cl.getHttpConnectionManager().getParams().setConnectionTimeout( http.getTimeout() );
+            this.cl.getHttpConnectionManager().getParams().setSoTimeout( http.getTimeout() );
         }
         this.cl.getParams().setBooleanParameter( HttpClientParams.ALLOW_CIRCULAR_REDIRECTS, true );
+        this.cl.getParams().setParameter( HttpMethodParams.USER_AGENT, USER_AGENT );
+
+        // The extra parameters are applied once to the parameters of this client, which are only read afterwards,
+        // and never to the system properties, which are shared by all threads.
+        if ( http.getHttpClientParameters() != null )
+        {
+            for ( Map.Entry<Object, Object> entry : http.getHttpClientParameters().entrySet() )
+            {
+                if ( entry.getValue() != null )
+                {
+                    String name = entry.getKey().toString();
+                    Object value = toParameterValue( name, entry.getValue().toString() );
+
+                    if ( value != null )
+                    {
+                        this.cl.getParams().setParameter( name, value );
+                    }
+                }
+            }
+        }
 
         HostConfiguration hc = new HostConfiguration();
 
         HttpState state = new HttpState();
-        if ( StringUtils.isNotEmpty( this.http.getProxyHost() ) )
+        if ( StringUtils.isNotEmpty( http.getProxyHost() ) )
         {
-            hc.setProxy( this.http.getProxyHost(), this.http.getProxyPort() );
+            hc.setProxy( http.getProxyHost(), http.getProxyPort() );
 
             if ( LOG.isDebugEnabled() )
             {
-                LOG.debug( "Proxy Host:" + this.http.getProxyHost() );
-                LOG.debug( "Proxy Port:" + this.http.getProxyPort() );
+                LOG.debug( "Proxy Host:" + http.getProxyHost() );
+                LOG.debug( "Proxy Port:" + http.getProxyPort() );
             }
 
-            if ( StringUtils.isNotEmpty( this.http.getProxyUser() ) && this.http.getProxyPassword() != null )
+            if ( StringUtils.isNotEmpty( http.getProxyUser() ) && http.getProxyPassword() != null )
             {
                 if ( LOG.isDebugEnabled() )
                 {
-                    LOG.debug( "Proxy User:" + this.http.getProxyUser() );
+                    LOG.debug( "Proxy User:" + http.getProxyUser() );
                 }
 
                 Credentials credentials;
-                if ( StringUtils.isNotEmpty( this.http.getProxyNtlmHost() ) )
+                if ( StringUtils.isNotEmpty( http.getProxyNtlmHost() ) )
                 {
                     credentials =
-                        new NTCredentials( this.http.getProxyUser(), this.http.getProxyPassword(),
-                                           this.http.getProxyNtlmHost(), this.http.getProxyNtlmDomain() );
+                        new NTCredentials( http.getProxyUser(), http.getProxyPassword(),
+                                           http.getProxyNtlmHost(), http.getProxyNtlmDomain() );
                 }
                 else
                 {
                     credentials =
-                        new UsernamePasswordCredentials( this.http.getProxyUser(), this.http.getProxyPassword() );
+                        new UsernamePasswordCredentials( http.getProxyUser(), http.getProxyPassword() );
                 }
 
                 state.setProxyCredentials( AuthScope.ANY, credentials );
@@ -333,138 +291,58 @@ public final class OnlineHTTPLinkValidator
     }
 
     /**
-     * Checks the given link.
+     * Releases the connection of an executed method. A body which isn't known to be small is not read to its end:
+     * the connection is closed instead of being reused, so only the headers, and the part of the body scanned for
+     * an anchor, are downloaded.
      *
-     * @param link the link to check.
-     * @param nbRedirect the number of current redirects.
-     * @return HttpMethod
-     * @throws IOException if something goes wrong.
+     * @param hm an executed method, not null.
      */
-    private HttpMethod checkLink( String link, int nbRedirect )
-        throws IOException
+    private static void release( HttpMethod hm )
     {
-        int max = MAX_NB_REDIRECT;
-        if ( this.http.getHttpClientParameters() != null
-            && this.http.getHttpClientParameters().get( HttpClientParams.MAX_REDIRECTS ) != null )
-        {
-            try
-            {
-                max =
-                    Integer.valueOf(
-                                     this.http.getHttpClientParameters().get( HttpClientParams.MAX_REDIRECTS )
-                                              .toString() ).intValue();
-            }
-            catch ( NumberFormatException e )
-            {
-                if ( LOG.isWarnEnabled() )
-                {
-                    LOG.warn( "HttpClient parameter '" + HttpClientParams.MAX_REDIRECTS
-                        + "' is not a number. Ignoring!" );
-                }
-            }
-        }
-        if ( nbRedirect > max )
+        if ( !( hm instanceof HeadMethod ) && !isSmallBody( hm ) )
         {
-            throw new HttpException( "Maximum number of redirections (" + max + ") exceeded" );
+            hm.abort();
         }
 
-        HttpMethod hm;
-        if ( HEAD_METHOD.equalsIgnoreCase( this.http.getMethod() ) )
-        {
-            hm = new HeadMethod( link );
-        }
-        else if ( GET_METHOD.equalsIgnoreCase( this.http.getMethod() ) )
+        hm.releaseConnection();
+    }
+
+    /**
+     * @param hm an executed method, not null.
+     * @return true if the response has no body or a body short enough to be read to keep the connection alive.
+     */
+    private static boolean isSmallBody( HttpMethod hm )
+    {
+        if ( hm.getStatusCode() == HttpStatus.SC_NOT_MODIFIED || hm.getStatusCode() == HttpStatus.SC_NO_CONTENT )
         {
-            hm = new GetMethod( link );
+            return true;
         }
-        else
+
+        String length = getHeader( hm, "Content-Length" );
+        if ( length == null )
         {
-            if ( LOG.isErrorEnabled() )
-            {
-                LOG.error( "Unsupported method: " + this.http.getMethod() + ", using 'get'." );
-            }
-            hm = new GetMethod( link );
+            return false;
         }
 
-        // Default
-        hm.setFollowRedirects( this.http.isFollowRedirects() );
-
         try
         {
-            URL url = new URL( link );
-
-            cl.getHostConfiguration().setHost( url.getHost(), url.getPort(), url.getProtocol() );
-
-            cl.executeMethod( hm );
-
-            StatusLine sl = hm.getStatusLine();
-            if ( sl == null )
-            {
-                if ( LOG.isErrorEnabled() )
-                {
-                    LOG.error( "Unknown error validating link : " + link );
-                }
-
-                return null;
-            }
-
-            if ( hm.getStatusCode() == HttpStatus.SC_MOVED_PERMANENTLY
-                || hm.getStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY
-                || hm.getStatusCode() == HttpStatus.SC_TEMPORARY_REDIRECT )
-            {
-                Header locationHeader = hm.getResponseHeader( "location" );
-
-                if ( locationHeader == null )
-                {
-                    LOG.error( "Site sent redirect, but did not set Location header" );
-
-                    return hm;
-                }
-
-                String newLink = locationHeader.getValue();
-
-                // Be careful to absolute/relative links
-                if ( !newLink.startsWith( "http://" ) && !newLink.startsWith( "https://" ) )
-                {
-                    if ( newLink.startsWith( "/" ) )
-                    {
-                        URL oldUrl = new URL( link );
-
-                        newLink =
-                            oldUrl.getProtocol() + "://" + oldUrl.getHost()
-                                + ( oldUrl.getPort() > 0 ? ":" + oldUrl.getPort() : "" ) + newLink;
-                    }
-                    else
-                    {
-                        newLink = link + newLink;
-                    }
-                }
-
-                HttpMethod oldHm = hm;
-
-                if ( LOG.isDebugEnabled() )
-                {
-                    LOG.debug( "[" + link + "] is redirected to [" + newLink + "]" );
-                }
-
-                oldHm.releaseConnection();
-
-                hm = checkLink( newLink, nbRedirect + 1 );
-
-                // Restore the hm to "Moved permanently" | "Moved temporarily" | "Temporary redirect"
-                // if the new location is found to allow us to report it
-                if ( hm.getStatusCode() == HttpStatus.SC_OK && nbRedirect == 0 )
-                {
-                    return oldHm;
-                }
-            }
-
+            return Long.parseLong( length.trim() ) <= MAX_DRAINED_BYTES;
         }
-        finally
+        catch ( NumberFormatException e )
         {
-            hm.releaseConnection();
+            return false;
         }
+    }
+
+    /**
+     * @param hm an executed method, not null.
+     * @param name the header name.
+     * @return the value of the response header, or null if there is none.
+     */
+    private static String getHeader( HttpMethod hm, String name )
+    {
+        Header header = hm.getResponseHeader( name );
 
-        return hm;
+        return ( header == null ) ? null : header.getValue();
     }
 }
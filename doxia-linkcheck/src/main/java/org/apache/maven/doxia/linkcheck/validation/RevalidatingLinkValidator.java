@@ -0,0 +1,41 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A LinkValidator able to revalidate a link cheaply, given the result of a previous validation,
+ * for instance with a conditional HTTP request.
+ *
+ * @since 1.3
+ * @see LinkValidatorManager#setTimeToLive(int, long)
+ */
+public interface RevalidatingLinkValidator
+    extends LinkValidator
+{
+    /**
+     * Revalidates a link whose cached result has expired.
+     * If getResourceKey(lvi) returned null, this will NOT be called.
+     *
+     * @param lvi The LinkValidationItem to validate.
+     * @param previous The expired result of the same resource, not null.
+     * @return The LinkValidationResult, with a new check time.
+     */
+    LinkValidationResult revalidateLink( LinkValidationItem lvi, LinkValidationResult previous );
+}
@@ -0,0 +1,306 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A cache of link validation results shared by several managers in the same JVM, e.g. by the linkcheck of
+ * each module of a multi-module build, so an external link is validated once per build rather than once per
+ * module.
+ * <p>
+ * The managers sharing a cache share its persistent results and their validations in progress, and may share
+ * their validators, e.g. one HTTP validator and its connections. Each cache file is loaded once, its results being
+ * merged with the results of the other files, and each cache file is written with the results of all the managers
+ * when a manager saves it. As the results keep changing while other managers validate links, {@link #save()}
+ * writes again the cache files changed since they were saved, which is done when the JVM exits for the
+ * {@link #getDefault() default} cache.
+ * </p>
+ * A shared cache may be used concurrently.
+ *
+ * @since 1.3
+ * @see LinkValidatorManager#setSharedCache(SharedLinkCache)
+ */
+public class SharedLinkCache
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( SharedLinkCache.class );
+
+    /** The default cache of the JVM, guarded by the class. */
+    private static SharedLinkCache defaultCache;
+
+    /** The results by resource key. */
+    private final ConcurrentMap<Object, LinkValidationResult> results =
+        new ConcurrentHashMap<Object, LinkValidationResult>();
+
+    /** The validations in progress by resource key. */
+    private final ConcurrentMap<Object, FutureTask<LinkValidationResult>> pending =
+        new ConcurrentHashMap<Object, FutureTask<LinkValidationResult>>();
+
+    /** The shared validators by key. */
+    private final ConcurrentMap<String, LinkValidator> validators = new ConcurrentHashMap<String, LinkValidator>();
+
+    /** The cache files already loaded, guarded by this. */
+    private final Set<File> loadedFiles = new HashSet<File>();
+
+    /** The cache files saved, guarded by this. */
+    private final Map<File, CacheFile> savedFiles = new LinkedHashMap<File, CacheFile>();
+
+    /** The number of changes of the results, to know which cache files are out of date. */
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Returns the default cache of the JVM, whose out of date cache files are saved again when the JVM exits.
+     *
+     * @return the default cache, never null.
+     */
+    public static synchronized SharedLinkCache getDefault()
+    {
+        if ( defaultCache == null )
+        {
+            final SharedLinkCache cache = new SharedLinkCache();
+
+            Runtime.getRuntime().addShutdownHook( new Thread( "linkcheck-cache" )
+            {
+                public void run()
+                {
+                    try
+                    {
+                        cache.save();
+                    }
+                    catch ( IOException e )
+                    {
+                        LOG.error( "Could not save the linkcheck cache: " + e.getMessage(), e );
+                    }
+                }
+            } );
+
+            defaultCache = cache;
+        }
+
+        return defaultCache;
+    }
+
+    /**
+     * Returns a validator shared by the managers of this cache, registering the given one if there is none
+     * for this key yet.
+     *
+     * @param key the key of the validator, which should identify its class and its configuration, not null.
+     * @param lv the validator to register if there is none yet, not null.
+     * @return the validator shared for this key.
+     */
+    public LinkValidator shareValidator( String key, LinkValidator lv )
+    {
+        LinkValidator previous = validators.putIfAbsent( key, lv );
+
+        return ( previous == null ) ? lv : previous;
+    }
+
+    /**
+     * Returns the number of results in the cache.
+     *
+     * @return the number of results, persistent or not.
+     */
+    public int size()
+    {
+        return results.size();
+    }
+
+    /**
+     * Saves again the cache files saved by the managers sharing this cache whose results have changed since.
+     * Each file is written with the cache format and the time to live of the last manager which saved it.
+     *
+     * @throws IOException if a cache file can't be written, the next files are still saved.
+     */
+    public synchronized void save()
+        throws IOException
+    {
+        IOException failure = null;
+
+        for ( Map.Entry<File, CacheFile> entry : savedFiles.entrySet() )
+        {
+            if ( entry.getValue().changes == changes.get() )
+            {
+                continue;
+            }
+
+            try
+            {
+                write( entry.getKey(), entry.getValue() );
+            }
+            catch ( IOException e )
+            {
+                LOG.error( "Could not save the cache file: " + entry.getKey().getAbsolutePath(), e );
+
+                failure = e;
+            }
+        }
+
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the results by resource key, shared by the managers.
+     */
+    ConcurrentMap<Object, LinkValidationResult> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Caches a result shared by the managers.
+     *
+     * @param resourceKey the resource key, not null.
+     * @param lvr the persistent result, not null.
+     */
+    void put( Object resourceKey, LinkValidationResult lvr )
+    {
+        results.put( resourceKey, lvr );
+        changes.incrementAndGet();
+    }
+
+    /**
+     * @return the validations in progress by resource key, shared by the managers.
+     */
+    ConcurrentMap<Object, FutureTask<LinkValidationResult>> getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * Loads a cache file, unless it has already been loaded. The results of the file are merged with the results
+     * of the cache, the most recent result of a resource being kept.
+     *
+     * @param manager the manager loading the file, giving the cache format.
+     * @param cacheFile the cache file, not null.
+     * @throws IOException if the file can't be read.
+     */
+    synchronized void load( LinkValidatorManager manager, File cacheFile )
+        throws IOException
+    {
+        if ( !loadedFiles.add( cacheFile.getAbsoluteFile() ) )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( "Cache file already loaded: " + cacheFile.getAbsolutePath() );
+            }
+
+            return;
+        }
+
+        Map<Object, LinkValidationResult> loaded = manager.readCache( cacheFile );
+        if ( loaded == null )
+        {
+            return;
+        }
+
+        try
+        {
+            for ( Map.Entry<Object, LinkValidationResult> entry : loaded.entrySet() )
+            {
+                LinkValidationResult previous = results.putIfAbsent( entry.getKey(), entry.getValue() );
+
+                if ( previous != null && previous.getCheckTime() < entry.getValue().getCheckTime() )
+                {
+                    results.replace( entry.getKey(), previous, entry.getValue() );
+                }
+            }
+
+            changes.incrementAndGet();
+        }
+        finally
+        {
+            LinkValidatorManager.discard( loaded );
+        }
+    }
+
+    /**
+     * Writes a cache file with all the shared results, and saves it again with the next {@link #save()} if the
+     * results change.
+     *
+     * @param manager the manager saving the file, giving the cache format and the time to live.
+     * @param cacheFile the cache file, not null.
+     * @throws IOException if the file can't be written.
+     */
+    synchronized void save( LinkValidatorManager manager, File cacheFile )
+        throws IOException
+    {
+        // only the settings of the manager are kept, so it isn't reachable from the cache of the JVM
+        CacheFile saved = new CacheFile( manager.getCacheFormat(), manager.getTimeToLives() );
+        savedFiles.put( cacheFile.getAbsoluteFile(), saved );
+
+        write( cacheFile, saved );
+    }
+
+    /**
+     * @param cacheFile the cache file, not null.
+     * @param saved the settings of the file, updated with the changes written.
+     * @throws IOException if the file can't be written.
+     */
+    private void write( File cacheFile, CacheFile saved )
+        throws IOException
+    {
+        long written = changes.get();
+
+        LinkValidatorManager.writeCache( saved.format, saved.timeToLive, results, cacheFile );
+        saved.changes = written;
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "Shared cache saved: " + cacheFile.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * The settings of a saved cache file.
+     */
+    private static final class CacheFile
+    {
+        /** The format of the file. */
+        private final LinkCacheFormat format;
+
+        /** The time to live of the results by status level. */
+        private final long[] timeToLive;
+
+        /** The number of changes of the results written in the file, -1 if it has not been written. */
+        private long changes = -1;
+
+        CacheFile( LinkCacheFormat format, long[] timeToLive )
+        {
+            this.format = format;
+            this.timeToLive = timeToLive;
+        }
+    }
+}
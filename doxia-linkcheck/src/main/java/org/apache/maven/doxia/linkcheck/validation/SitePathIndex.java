@@ -0,0 +1,196 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A snapshot of the files and directories of a site, taken with a single walk of its directory tree, so the local
+ * links can be checked without a file system call per link.
+ * <p>
+ * The paths are normalized, i.e. absolute and without <code>.</code> or <code>..</code> segments.
+ * A path found in the index exists; a path not found, or outside the site, is looked up in the file system,
+ * so files added after the snapshot or reached through a link outside the site are still found.
+ * An index is immutable once built and may be used concurrently.
+ * </p>
+ *
+ * @since 1.3
+ */
+public class SitePathIndex
+{
+    /** Log for debug output. */
+    private static final Log LOG = LogFactory.getLog( SitePathIndex.class );
+
+    /** The normalized path of the root directory. */
+    private final String root;
+
+    /** The normalized paths of the files and directories of the site, the root included. */
+    private final Set<String> paths = new HashSet<String>();
+
+    /**
+     * Constructor: walks the given directory.
+     *
+     * @param root the root directory of the site, not null.
+     */
+    public SitePathIndex( File root )
+    {
+        this.root = normalize( root );
+
+        long start = System.currentTimeMillis();
+
+        File dir = new File( this.root );
+        if ( dir.isDirectory() )
+        {
+            paths.add( this.root );
+            walk( dir, this.root, new HashSet<String>() );
+        }
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "Indexed " + paths.size() + " paths of " + root + " in "
+                + ( System.currentTimeMillis() - start ) + " ms." );
+        }
+    }
+
+    /**
+     * Whether a file or directory exists.
+     *
+     * @param file a file, not null.
+     * @return <code>true</code> if it is in the index or if it exists in the file system.
+     */
+    public boolean exists( File file )
+    {
+        return paths.contains( normalize( file ) ) || file.exists();
+    }
+
+    /**
+     * @return the number of files and directories in the index.
+     */
+    public int size()
+    {
+        return paths.size();
+    }
+
+    /**
+     * Returns the normalized path of a file, i.e. its absolute path without <code>.</code> or <code>..</code>
+     * segments. Unlike the canonical path, it is computed without accessing the file system.
+     *
+     * @param file a file, not null.
+     * @return the normalized path.
+     */
+    public static String normalize( File file )
+    {
+        String path = file.getAbsolutePath();
+
+        if ( path.indexOf( File.separatorChar + "." ) == -1 )
+        {
+            return path;
+        }
+
+        char sep = File.separatorChar;
+
+        // the prefix is kept as is: the root separator on Unix, the drive or the UNC prefix on Windows
+        int prefix = path.indexOf( sep ) + 1;
+        if ( prefix == 1 && path.length() > 1 && path.charAt( 1 ) == sep )
+        {
+            prefix = 2;
+        }
+
+        StringBuilder sb = new StringBuilder( path.length() );
+        sb.append( path, 0, prefix );
+
+        int start = prefix;
+        while ( start < path.length() )
+        {
+            int end = path.indexOf( sep, start );
+            if ( end == -1 )
+            {
+                end = path.length();
+            }
+
+            String segment = path.substring( start, end );
+            if ( "..".equals( segment ) )
+            {
+                // back to the parent, or stay at the root
+                sb.setLength( Math.max( sb.lastIndexOf( String.valueOf( sep ) ), prefix ) );
+            }
+            else if ( segment.length() > 0 && !".".equals( segment ) )
+            {
+                if ( sb.length() > prefix )
+                {
+                    sb.append( sep );
+                }
+                sb.append( segment );
+            }
+
+            start = end + 1;
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Adds the content of a directory to the index, and the content of its sub-directories.
+     *
+     * @param dir the directory.
+     * @param path the normalized path of the directory.
+     * @param visited the canonical paths of the directories already walked, to stop at symbolic link loops.
+     */
+    private void walk( File dir, String path, Set<String> visited )
+    {
+        try
+        {
+            if ( !visited.add( dir.getCanonicalPath() ) )
+            {
+                return;
+            }
+        }
+        catch ( IOException e )
+        {
+            return;
+        }
+
+        String[] names = dir.list();
+        if ( names == null )
+        {
+            return;
+        }
+
+        String prefix = path.endsWith( File.separator ) ? path : path + File.separatorChar;
+
+        for ( int i = 0; i < names.length; i++ )
+        {
+            String child = prefix + names[i];
+            paths.add( child );
+
+            File file = new File( child );
+            if ( file.isDirectory() )
+            {
+                walk( file, child, visited );
+            }
+        }
+    }
+}
@@ -22,10 +22,18 @@ package org.apache.maven.doxia.linkcheck;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFile;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckMetrics;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.apache.maven.doxia.linkcheck.validation.MailDomainResolver;
 import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
 
 /**
  * @author Ben Walding
@@ -96,6 +104,263 @@ public class LinkCheckTest
         //assertEquals( "Non-existent links", 0, ftc.getSuccessful() );
     }
 
+    /**
+     * @throws Exception
+     */
+    public void testParallelScan()
+        throws Exception
+    {
+        LinkcheckModel sequential = scan( 1 );
+        LinkcheckModel parallel = scan( 4 );
+
+        assertEquals( "files.size()", sequential.getFiles().size(), parallel.getFiles().size() );
+
+        for ( int i = 0; i < sequential.getFiles().size(); i++ )
+        {
+            LinkcheckFile expected = sequential.getFiles().get( i );
+            LinkcheckFile actual = parallel.getFiles().get( i );
+
+            assertEquals( "file order", expected.getRelativePath(), actual.getRelativePath() );
+            assertEquals( expected.getRelativePath(), expected.getResults().size(), actual.getResults().size() );
+            assertEquals( expected.getRelativePath(), expected.getSuccessful(), actual.getSuccessful() );
+            assertEquals( expected.getRelativePath(), expected.getUnsuccessful(), actual.getUnsuccessful() );
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    public void testIncremental()
+        throws Exception
+    {
+        File dir = new File( getBasedir(), "target/linkcheck/incremental" );
+        FileUtils.deleteDirectory( dir );
+
+        File site = new File( dir, "site" );
+        FileUtils.copyDirectoryStructure( new File( getBasedir(), "src/test/resources" ), site );
+
+        File page = new File( site, "page.html" );
+        FileUtils.fileWrite( page.getPath(), "<a href=\"nolink.html\">link</a>" );
+        long lastModified = page.lastModified();
+
+        LinkcheckModel full = scan( 1 );
+        assertEquals( "nolink.html", getTarget( incrementalScan( site ), "page.html" ) );
+        assertTrue( new File( dir, "linkcheck.cache.pages" ).exists() );
+
+        // same size and modification time: the links of the previous run are reused
+        FileUtils.fileWrite( page.getPath(), "<a href=\"missng.html\">link</a>" );
+        page.setLastModified( lastModified );
+        LinkcheckModel incremental = incrementalScan( site );
+        assertEquals( "nolink.html", getTarget( incremental, "page.html" ) );
+        assertEquals( "files.size()", full.getFiles().size() + 1, incremental.getFiles().size() );
+
+        // the content changed
+        page.setLastModified( lastModified + 10000 );
+        assertEquals( "missng.html", getTarget( incrementalScan( site ), "page.html" ) );
+    }
+
+    /**
+     * @throws Exception
+     */
+    public void testStreamingReport()
+        throws Exception
+    {
+        LinkcheckModel full = scan( 1 );
+
+        File report = new File( getBasedir(), "target/linkcheck/streaming/linkcheck.xml" );
+
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+        lc.setOnline( false );
+        lc.setBasedir( new File( getBasedir(), "src/test/resources" ) );
+        lc.setParallelism( 2 );
+        lc.setReportOutput( report );
+        lc.setReportOutputEncoding( "UTF-8" );
+        lc.setStreamingReport( true );
+        lc.setReportValidLinks( false );
+
+        LinkcheckModel model = lc.execute();
+        assertEquals( "files are not kept", 0, model.getFiles().size() );
+
+        Xpp3Dom dom = Xpp3DomBuilder.build( ReaderFactory.newXmlReader( report ) );
+        assertEquals( String.valueOf( full.getTotalLinks() ), dom.getChild( "totalLinks" ).getValue() );
+
+        Xpp3Dom[] files = dom.getChild( "files" ).getChildren( "file" );
+        assertEquals( "files.size()", full.getFiles().size(), files.length );
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            LinkcheckFile expected = full.getFiles().get( i );
+            String name = expected.getRelativePath();
+
+            assertEquals( "file order", name, files[i].getChild( "relativePath" ).getValue() );
+            assertEquals( name, String.valueOf( expected.getSuccessful() ),
+                          files[i].getChild( "successful" ).getValue() );
+
+            Xpp3Dom results = files[i].getChild( "results" );
+            int reported = ( results == null ) ? 0 : results.getChildCount();
+            assertEquals( name, expected.getResults().size() - expected.getSuccessful(), reported );
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    public void testMetrics()
+        throws Exception
+    {
+        LinkcheckModel full = scan( 1 );
+
+        File report = new File( getBasedir(), "target/linkcheck/metrics/linkcheck.xml" );
+
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+        lc.setOnline( false );
+        lc.setBasedir( new File( getBasedir(), "src/test/resources" ) );
+        lc.setParallelism( 2 );
+        lc.setReportOutput( report );
+        lc.setReportOutputEncoding( "UTF-8" );
+        lc.setStreamingReport( true );
+        lc.setReportMetrics( true );
+
+        lc.execute();
+
+        LinkcheckMetrics metrics = lc.getMetrics();
+        assertNotNull( metrics );
+        assertEquals( "pages", full.getFiles().size(), metrics.getPages() );
+        assertEquals( "links", full.getTotalLinks(), metrics.getLinks() );
+        assertTrue( "bytesRead", metrics.getBytesRead() > 0 );
+        assertTrue( "maxParseTime", metrics.getMaxParseTime() <= metrics.getParseTime() );
+        assertEquals( "retries", 0, metrics.getRetries() );
+        assertEquals( "hosts", 0, metrics.getHosts().size() );
+
+        long misses = 0;
+        for ( int i = 0; i < metrics.getValidators().size(); i++ )
+        {
+            misses += metrics.getValidators().get( i ).getCacheMisses();
+        }
+        assertTrue( "cacheMisses", misses > 0 );
+
+        Xpp3Dom dom = Xpp3DomBuilder.build( ReaderFactory.newXmlReader( report ) );
+        Xpp3Dom written = dom.getChild( "metrics" );
+        assertNotNull( written );
+        assertEquals( String.valueOf( metrics.getPages() ), written.getChild( "pages" ).getValue() );
+        assertEquals( metrics.getValidators().size(), written.getChild( "validators" ).getChildCount() );
+        assertNotNull( dom.getChild( "files" ).getChildren( "file" )[0].getChild( "parseTime" ) );
+    }
+
+    /**
+     * @throws Exception
+     */
+    public void testSettingsOfLaterExecutions()
+        throws Exception
+    {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+        lc.setOnline( false );
+        lc.setBasedir( new File( getBasedir(), "src/test/resources" ) );
+        lc.setReportOutput( new File( getBasedir(), "target/linkcheck/settings/linkcheck.xml" ) );
+        lc.setReportOutputEncoding( "UTF-8" );
+        lc.execute();
+
+        lc.setMailDomainResolver( new MailDomainResolver()
+        {
+            public boolean hasMailServer( String domain )
+            {
+                lookups.incrementAndGet();
+
+                return true;
+            }
+        } );
+        lc.execute();
+
+        assertTrue( "the resolver set after the first execution is used", lookups.get() > 0 );
+    }
+
+    /**
+     * @throws Exception
+     */
+    public void testTimeBudget()
+        throws Exception
+    {
+        File report = new File( getBasedir(), "target/linkcheck/budget/linkcheck.xml" );
+        File cache = new File( getBasedir(), "target/linkcheck/budget/linkcheck.cache" );
+        FileUtils.deleteDirectory( report.getParentFile() );
+
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+        lc.setOnline( false );
+        lc.setBasedir( new File( getBasedir(), "src/test/resources" ) );
+        lc.setReportOutput( report );
+        lc.setReportOutputEncoding( "UTF-8" );
+        lc.setLinkCheckCache( cache );
+        lc.setTimeBudget( 1 );
+
+        LinkcheckModel model = lc.execute();
+
+        int expired = 0;
+        for ( LinkcheckFile file : model.getFiles() )
+        {
+            for ( LinkcheckFileResult result : file.getResults() )
+            {
+                if ( "Deadline exceeded".equals( result.getErrorMessage() ) )
+                {
+                    assertEquals( LinkcheckFileResult.UNKNOWN_LEVEL, result.getStatusLevel() );
+                    expired++;
+                }
+            }
+        }
+
+        assertTrue( "expired links", expired > 0 );
+        assertTrue( "report written", report.exists() );
+        assertTrue( "cache written", cache.exists() );
+    }
+
+    private LinkcheckModel incrementalScan( File site )
+        throws Exception
+    {
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+
+        lc.setOnline( false );
+
+        lc.setBasedir( site );
+
+        lc.setLinkCheckCache( new File( site.getParentFile(), "linkcheck.cache" ) );
+
+        lc.setIncremental( true );
+
+        return lc.execute();
+    }
+
+    private String getTarget( LinkcheckModel model, String name )
+    {
+        for ( LinkcheckFile ftc : model.getFiles() )
+        {
+            if ( ftc.getRelativePath().equals( name ) )
+            {
+                assertEquals( 1, ftc.getResults().size() );
+
+                return ftc.getResults().get( 0 ).getTarget();
+            }
+        }
+
+        fail( name + " not found" );
+
+        return null;
+    }
+
+    private LinkcheckModel scan( int parallelism )
+        throws Exception
+    {
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+
+        lc.setOnline( false );
+
+        lc.setBasedir( new File( getBasedir(), "src/test/resources" ) );
+
+        lc.setParallelism( parallelism );
+
+        return lc.execute();
+    }
+
     private void check( Map<String, LinkcheckFile> map, String name, int linkCount )
     {
         LinkcheckFile ftc = map.get( name );
@@ -0,0 +1,136 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+public class LinkMatcherTest
+    extends TestCase
+{
+    public void testMatch()
+        throws Exception
+    {
+        assertLinks( "<a href=\"a.html\">A</a> <A HREF='b.html'>B</A>", new String[] { "a.html", "b.html" } );
+        assertLinks( "<img\n  alt=\"x\"\n  src = \"img.png\" />", new String[] { "img.png" } );
+        assertLinks( "<link rel=stylesheet href=style.css>", new String[] { "style.css" } );
+        assertLinks( "<script type=\"text/javascript\" src=\"app.js\"></script>", new String[] { "app.js" } );
+        assertLinks( "<area shape=\"rect\" href=\"map.html\">", new String[] { "map.html" } );
+        assertLinks( "<a href=\"  spaced.html \">", new String[] { "spaced.html" } );
+        assertLinks( "<a title=\"a > b\" href=\"quoted.html\">", new String[] { "quoted.html" } );
+        assertLinks( "<a href=\"what's.html\">", new String[] { "what's.html" } );
+
+        // not links
+        assertLinks( "<div href=\"div.html\"></div><a name=\"top\"></a><a href=\"\"></a>", new String[0] );
+        assertLinks( "<a href=\"javascript:void(0)\"></a>", new String[0] );
+        assertLinks( "<abbr title=\"x\">y</abbr> a < b <!DOCTYPE html> <?xml version=\"1.0\"?>", new String[0] );
+    }
+
+    public void testComments()
+        throws Exception
+    {
+        assertLinks( "<!-- <a href=\"comment.html\"> --><a href=\"real.html\">", new String[] { "real.html" } );
+        assertLinks( "<!--\n<a href=\"one.html\">\n-- still a comment <a href=\"two.html\">\n--->"
+            + "<a href=\"after.html\">", new String[] { "after.html" } );
+        assertLinks( "<!-- unterminated <a href=\"comment.html\">", new String[0] );
+    }
+
+    public void testAnchors()
+        throws Exception
+    {
+        String content = "<a name=\"top\" href=\"a.html\">A</a><div id=\"main\" href=\"div.html\">"
+            + "<img id=\"logo\" src=\"logo.png\"/><!-- <p id=\"comment\"> --></div>";
+
+        Set<String> anchors = new HashSet<String>();
+        Set<String> links = LinkMatcher.match( new ByteArrayInputStream( content.getBytes( "UTF-8" ) ), "UTF-8",
+                                               anchors );
+
+        assertEquals( 2, links.size() );
+        assertTrue( links.contains( "a.html" ) );
+        assertTrue( links.contains( "logo.png" ) );
+
+        assertEquals( 3, anchors.size() );
+        assertTrue( anchors.contains( "top" ) );
+        assertTrue( anchors.contains( "main" ) );
+        assertTrue( anchors.contains( "logo" ) );
+    }
+
+    public void testFreshResult()
+        throws Exception
+    {
+        Set<String> first = LinkMatcher.match( new StringReader( "<a href=\"a.html\">" ) );
+        Set<String> second = LinkMatcher.match( new StringReader( "<a href=\"b.html\">" ) );
+
+        assertNotSame( first, second );
+        assertTrue( first.contains( "a.html" ) );
+        assertFalse( first.contains( "b.html" ) );
+    }
+
+    public void testEncodings()
+        throws Exception
+    {
+        // a long value over the buffer boundaries
+        String longLink = StringUtils.repeat( "\u00e9t\u00e9/", 2000 ) + "index.html";
+        String content = "<html><body>" + StringUtils.repeat( "<p>caf\u00e9 cr\u00e8me</p>", 300 )
+            + "<a href=\"r\u00e9sum\u00e9.html\">CV</a><a href='" + longLink + "'>long</a></body></html>";
+
+        File file = File.createTempFile( "linkmatcher", ".html" );
+        try
+        {
+            String[] encodings = { "UTF-8", "ISO-8859-1", "windows-1252", "UTF-16" };
+            for ( int i = 0; i < encodings.length; i++ )
+            {
+                FileUtils.fileWrite( file.getPath(), encodings[i], content );
+
+                Set<String> links = LinkMatcher.match( file, encodings[i] );
+
+                assertEquals( encodings[i], 2, links.size() );
+                assertTrue( encodings[i], links.contains( "r\u00e9sum\u00e9.html" ) );
+                assertTrue( encodings[i], links.contains( longLink ) );
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private static void assertLinks( String content, String[] expected )
+        throws IOException
+    {
+        Set<String> links = LinkMatcher.match( new StringReader( content ) );
+
+        assertEquals( content, expected.length, links.size() );
+
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertTrue( content + " should contain " + expected[i], links.contains( expected[i] ) );
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class PageManifestTest
+    extends TestCase
+{
+    private File dir;
+
+    private File manifestFile;
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        dir = new File( PlexusTestCase.getBasedir(), "target/linkcheck/manifest" );
+        FileUtils.deleteDirectory( dir );
+        dir.mkdirs();
+
+        manifestFile = new File( dir, "linkcheck.cache.pages" );
+    }
+
+    public void testRoundTrip()
+        throws Exception
+    {
+        File page = new File( dir, "page.html" );
+        FileUtils.fileWrite( page.getPath(), "<a href=\"index.html\">link</a>" );
+
+        PageManifest manifest = new PageManifest( "UTF-8" );
+        manifest.put( "page.html", manifest.lookup( "page.html", page ).withHrefs( new String[] { "index.html" } ) );
+        manifest.save( manifestFile );
+
+        PageManifest loaded = PageManifest.load( manifestFile, "UTF-8" );
+        assertEquals( 1, loaded.size() );
+        assertEquals( "index.html", loaded.lookup( "page.html", page ).getHrefs()[0] );
+
+        assertEquals( "another encoding", 0, PageManifest.load( manifestFile, "ISO-8859-1" ).size() );
+    }
+
+    public void testCorruptedManifest()
+        throws Exception
+    {
+        writeManifest( Integer.MAX_VALUE, 0 );
+        assertEquals( "page count", 0, PageManifest.load( manifestFile, null ).size() );
+
+        writeManifest( 1, -1 );
+        assertEquals( "negative link count", 0, PageManifest.load( manifestFile, null ).size() );
+
+        writeManifest( 1, Integer.MAX_VALUE );
+        assertEquals( "link count", 0, PageManifest.load( manifestFile, null ).size() );
+
+        writeManifest( 1, 0 );
+        assertEquals( 1, PageManifest.load( manifestFile, null ).size() );
+
+        RandomAccessFile raf = new RandomAccessFile( manifestFile, "rw" );
+        try
+        {
+            raf.setLength( raf.length() - 1 );
+        }
+        finally
+        {
+            raf.close();
+        }
+        assertEquals( "truncated", 0, PageManifest.load( manifestFile, null ).size() );
+    }
+
+    /**
+     * Writes a manifest with one page without links, but with the given counts.
+     */
+    private void writeManifest( int pageCount, int linkCount )
+        throws Exception
+    {
+        DataOutputStream out = new DataOutputStream( new FileOutputStream( manifestFile ) );
+        try
+        {
+            out.writeInt( 0x44584C50 );
+            out.writeInt( 1 );
+            out.writeUTF( "" );
+            out.writeInt( pageCount );
+
+            out.writeInt( 9 );
+            out.write( "page.html".getBytes( "UTF-8" ) );
+            out.writeLong( 10 );
+            out.writeLong( 20 );
+            out.writeByte( 16 );
+            out.write( new byte[16] );
+            out.writeInt( linkCount );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
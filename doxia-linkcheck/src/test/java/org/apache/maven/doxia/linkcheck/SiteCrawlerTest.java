@@ -0,0 +1,279 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFile;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckModel;
+import org.apache.maven.doxia.linkcheck.validation.LinkValidationPlan;
+import org.apache.maven.doxia.linkcheck.validation.LinkValidatorManager;
+import org.codehaus.plexus.PlexusTestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Crawls a site served by an embedded HTTP server.
+ *
+ * @version $Id$
+ */
+public class SiteCrawlerTest
+    extends PlexusTestCase
+{
+    private StubHttpServer server;
+
+    private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** Released when the test ends, to answer the slow requests. */
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        server = new StubHttpServer( new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+
+                requests.putIfAbsent( path, new AtomicInteger() );
+                requests.get( path ).incrementAndGet();
+
+                if ( path.equals( "/site/index.html" ) )
+                {
+                    sendPage( exchange, "<a href=\"page1.html\">1</a> <a href=\"page1.html#top\">top</a>"
+                        + "<a href=\"page1.html#bottom\">bottom</a> <a href=\"/site/sub/page2.html\">2</a>"
+                        + "<a href=\"missing.html\">missing</a> <img src=\"logo.png\"/>"
+                        + "<a href=\"" + url( "/site/index.html" ) + "\">self</a> <a href=\"#top\">top</a>"
+                        + "<a href=\"mailto:dev@maven.apache.org\">mail</a>"
+                        + "<a href=\"http://www.example.invalid/\">external</a>" );
+                }
+                else if ( path.equals( "/site/page1.html" ) )
+                {
+                    sendPage( exchange, "<a name=\"top\"></a><a href=\"index.html\">index</a>"
+                        + "<a href=\"sub/page2.html#top\">2</a>" );
+                }
+                else if ( path.equals( "/site/sub/page2.html" ) )
+                {
+                    sendPage( exchange, "<h1 id=\"top\">2</h1><a href=\"../index.html\">index</a>" );
+                }
+                else if ( path.equals( "/site/orphan.html" ) )
+                {
+                    sendPage( exchange, "<a href=\"index.html\">index</a>" );
+                }
+                else if ( path.equals( "/site/deadline.html" ) )
+                {
+                    sendPage( exchange, "<a href=\"slow.html\">slow</a>" );
+                }
+                else if ( path.equals( "/site/slow.html" ) )
+                {
+                    try
+                    {
+                        release.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    sendPage( exchange, "slow" );
+                }
+                else if ( path.equals( "/site/logo.png" ) )
+                {
+                    exchange.getResponseHeaders().add( "Content-Type", "image/png" );
+                    StubHttpServer.send( exchange, 200, "PNG" );
+                }
+                else if ( path.equals( "/site/sitemap.xml" ) )
+                {
+                    exchange.getResponseHeaders().add( "Content-Type", "application/xml" );
+                    StubHttpServer.send( exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                        + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                        + "<url><loc>" + url( "/site/index.html" ) + "</loc></url>"
+                        + "<url><loc>" + url( "/site/orphan.html" ) + "</loc></url></urlset>" );
+                }
+                else
+                {
+                    StubHttpServer.send( exchange, 404, "Not found" );
+                }
+            }
+        } );
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown()
+        throws Exception
+    {
+        release.countDown();
+        server.stop();
+
+        super.tearDown();
+    }
+
+    public void testCrawl()
+        throws Exception
+    {
+        Map<String, SiteCrawler.Page> pages = crawl( "/site/index.html" );
+
+        List<String> urls = new ArrayList<String>( pages.keySet() );
+        assertEquals( url( "/site/index.html" ), urls.get( 0 ) );
+        assertEquals( "in the order of the links", url( "/site/sub/page2.html" ), urls.get( 1 ) );
+        assertEquals( url( "/site/page1.html" ), urls.get( 4 ) );
+        assertEquals( 5, urls.size() );
+        assertFalse( urls.contains( url( "/site/orphan.html" ) ) );
+
+        for ( Map.Entry<String, AtomicInteger> entry : requests.entrySet() )
+        {
+            assertEquals( entry.getKey() + " fetched once", 1, entry.getValue().get() );
+        }
+
+        SiteCrawler.Page page1 = pages.get( url( "/site/page1.html" ) );
+        assertEquals( 200, page1.getStatusCode() );
+        assertTrue( page1.getAnchors().contains( "top" ) );
+        assertEquals( 2, page1.getHrefs().length );
+
+        assertEquals( 404, pages.get( url( "/site/missing.html" ) ).getStatusCode() );
+
+        SiteCrawler.Page logo = pages.get( url( "/site/logo.png" ) );
+        assertEquals( 200, logo.getStatusCode() );
+        assertNull( logo.getHrefs() );
+    }
+
+    public void testSitemap()
+        throws Exception
+    {
+        Map<String, SiteCrawler.Page> pages = crawl( "/site/sitemap.xml" );
+
+        List<String> urls = new ArrayList<String>( pages.keySet() );
+        assertEquals( url( "/site/index.html" ), urls.get( 0 ) );
+        assertEquals( url( "/site/orphan.html" ), urls.get( 1 ) );
+        assertEquals( 6, urls.size() );
+    }
+
+    public void testDeadline()
+        throws Exception
+    {
+        LinkValidationPlan plan = new LinkValidatorManager().createPlan();
+        plan.setDeadline( System.currentTimeMillis() + 500 );
+
+        SiteCrawler crawler = new SiteCrawler( url( "/site/deadline.html" ), new HttpBean(), "UTF-8", 2, plan );
+        Map<String, SiteCrawler.Page> pages;
+        long start = System.currentTimeMillis();
+        try
+        {
+            pages = crawler.crawl();
+        }
+        finally
+        {
+            crawler.close();
+        }
+
+        assertTrue( "the slow fetch is cancelled", System.currentTimeMillis() - start < 5000 );
+        assertEquals( 1, pages.size() );
+        assertTrue( pages.containsKey( url( "/site/deadline.html" ) ) );
+    }
+
+    public void testLinkCheck()
+        throws Exception
+    {
+        LinkCheck lc = (LinkCheck) lookup( LinkCheck.ROLE );
+        lc.setOnline( false );
+        lc.setCrawlURL( url( "/site/index.html" ) );
+        lc.setParallelism( 2 );
+
+        LinkcheckModel model = lc.execute();
+
+        assertEquals( 3, model.getFiles().size() );
+
+        LinkcheckFile index = model.getFiles().get( 0 );
+        assertEquals( "index.html", index.getRelativePath() );
+        assertEquals( url( "/site/index.html" ), index.getAbsolutePath() );
+        assertEquals( "sub/page2.html", model.getFiles().get( 1 ).getRelativePath() );
+        assertEquals( "page1.html", model.getFiles().get( 2 ).getRelativePath() );
+
+        assertEquals( LinkcheckFileResult.VALID, getResult( index, "page1.html" ).getStatus() );
+        assertEquals( LinkcheckFileResult.VALID, getResult( index, "page1.html#top" ).getStatus() );
+        assertEquals( LinkcheckFileResult.ERROR, getResult( index, "page1.html#bottom" ).getStatus() );
+        assertEquals( LinkcheckFileResult.VALID, getResult( index, "/site/sub/page2.html" ).getStatus() );
+        assertEquals( LinkcheckFileResult.ERROR, getResult( index, "missing.html" ).getStatus() );
+        assertEquals( LinkcheckFileResult.VALID, getResult( index, "logo.png" ).getStatus() );
+        assertEquals( LinkcheckFileResult.ERROR, getResult( index, "#top" ).getStatus() );
+
+        LinkcheckFile page1 = model.getFiles().get( 2 );
+        assertEquals( LinkcheckFileResult.VALID, getResult( page1, "sub/page2.html#top" ).getStatus() );
+
+        assertEquals( "one request per resource", 5, requests.size() );
+        assertEquals( 1, requests.get( "/site/page1.html" ).get() );
+    }
+
+    private Map<String, SiteCrawler.Page> crawl( String path )
+        throws Exception
+    {
+        SiteCrawler crawler =
+            new SiteCrawler( url( path ), new HttpBean(), "UTF-8", 2, new LinkValidatorManager().createPlan() );
+        try
+        {
+            return crawler.crawl();
+        }
+        finally
+        {
+            crawler.close();
+        }
+    }
+
+    private static LinkcheckFileResult getResult( LinkcheckFile file, String target )
+    {
+        for ( LinkcheckFileResult result : file.getResults() )
+        {
+            if ( result.getTarget().equals( target ) )
+            {
+                return result;
+            }
+        }
+
+        fail( target + " not found" );
+
+        return null;
+    }
+
+    private static void sendPage( HttpExchange exchange, String body )
+        throws IOException
+    {
+        exchange.getResponseHeaders().add( "Content-Type", "text/html; charset=UTF-8" );
+        StubHttpServer.send( exchange, 200, "<html><body>" + body + "</body></html>" );
+    }
+
+    private String url( String path )
+    {
+        return server.url( path );
+    }
+}
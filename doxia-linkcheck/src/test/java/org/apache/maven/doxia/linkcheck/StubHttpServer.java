@@ -0,0 +1,88 @@
+package org.apache.maven.doxia.linkcheck;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server on a free port of localhost, serving the responses of a handler to the tests.
+ *
+ * @version $Id$
+ */
+public class StubHttpServer
+{
+    private final HttpServer server;
+
+    /**
+     * Starts a server.
+     *
+     * @param handler the handler of all the requests.
+     * @throws IOException if the server can't be started.
+     */
+    public StubHttpServer( HttpHandler handler )
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/", handler );
+        server.start();
+    }
+
+    /**
+     * @param path an absolute path.
+     * @return the URL of the path on this server.
+     */
+    public String url( String path )
+    {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop()
+    {
+        server.stop( 0 );
+    }
+
+    /**
+     * Sends a response with a body.
+     *
+     * @param exchange the exchange.
+     * @param status the status code.
+     * @param body the body, encoded in UTF-8.
+     * @throws IOException if any.
+     */
+    public static void send( HttpExchange exchange, int status, String body )
+        throws IOException
+    {
+        byte[] bytes = body.getBytes( "UTF-8" );
+        exchange.sendResponseHeaders( status, bytes.length );
+
+        OutputStream os = exchange.getResponseBody();
+        os.write( bytes );
+        os.close();
+    }
+}
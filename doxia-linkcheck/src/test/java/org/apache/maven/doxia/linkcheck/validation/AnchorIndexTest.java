@@ -0,0 +1,79 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class AnchorIndexTest
+    extends TestCase
+{
+    public void testGetAnchors()
+        throws Exception
+    {
+        Set<String> anchors =
+            Anchors.getAnchors( new StringReader( "<a name=top></a><!-- <p id='hidden'> --><h1 ID=\"foo\">x</h1>" ) );
+
+        assertEquals( 2, anchors.size() );
+        assertTrue( anchors.contains( "top" ) );
+        assertTrue( anchors.contains( "foo" ) );
+        assertFalse( anchors.contains( "hidden" ) );
+    }
+
+    public void testFileAnchors()
+    {
+        File file = new File( getBasedir(), "src/test/resources/anchorTest/testAnchor.html" );
+
+        AnchorIndex index = new AnchorIndex();
+
+        assertNull( index.getAnchors( file.getAbsolutePath() ) );
+        assertTrue( index.hasAnchor( file, "UTF-8", "foo" ) );
+        assertFalse( index.hasAnchor( file, "UTF-8", "bar" ) );
+
+        Set<String> anchors = index.getAnchors( file.getAbsolutePath() );
+        assertNotNull( anchors );
+        assertSame( anchors, index.getAnchors( file, "UTF-8" ) );
+
+        assertTrue( index.getAnchors( new File( getBasedir(), "missing.html" ), "UTF-8" ).isEmpty() );
+    }
+
+    public void testEviction()
+    {
+        AnchorIndex index = new AnchorIndex( 2 );
+
+        index.putAnchors( "a", Collections.singleton( "1" ) );
+        index.putAnchors( "b", Collections.singleton( "2" ) );
+        index.getAnchors( "a" );
+        index.putAnchors( "c", Collections.singleton( "3" ) );
+
+        assertNotNull( index.getAnchors( "a" ) );
+        assertNull( index.getAnchors( "b" ) );
+        assertNotNull( index.getAnchors( "c" ) );
+    }
+
+    private static String getBasedir()
+    {
+        return System.getProperty( "basedir", new File( "" ).getAbsolutePath() );
+    }
+}
@@ -0,0 +1,158 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.codehaus.plexus.PlexusTestCase;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class BinaryLinkCacheFormatTest
+    extends TestCase
+{
+    private File cacheFile;
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        cacheFile = new File( PlexusTestCase.getBasedir(), "target/linkcheck/cacheFormat/linkcheck.cache" );
+        cacheFile.delete();
+    }
+
+    public void testRoundTrip()
+        throws Exception
+    {
+        Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+        cache.put( "http://maven.apache.org/", new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true,
+                                                                               200, "OK" ) );
+        cache.put( "http://www.example.org/\u00e9t\u00e9", new HTTPLinkValidationResult(
+            LinkcheckFileResult.WARNING_LEVEL, true, 301, "Moved Permanently", "\"etag\"",
+            "Thu, 01 Jan 2015 00:00:00 GMT", 1234L ) );
+        cache.put( "mailto:dev@maven.apache.org", new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true,
+                                                                              null ) );
+        cache.put( new File( "not/a/string/key" ), new LinkValidationResult( LinkcheckFileResult.VALID_LEVEL,
+                                                                               true, "" ) );
+
+        BinaryLinkCacheFormat format = new BinaryLinkCacheFormat();
+        format.write( cache, cacheFile );
+        Map<Object, LinkValidationResult> read = format.read( cacheFile );
+
+        assertNotNull( read );
+        assertEquals( "only String keys are stored", 3, read.size() );
+
+        HTTPLinkValidationResult http = (HTTPLinkValidationResult) read.get( "http://www.example.org/\u00e9t\u00e9" );
+        assertEquals( LinkcheckFileResult.WARNING_LEVEL, http.getStatus() );
+        assertTrue( http.isPersistent() );
+        assertEquals( 301, http.getHttpStatusCode() );
+        assertEquals( "301 Moved Permanently", http.getErrorMessage() );
+        assertEquals( "\"etag\"", http.getETag() );
+        assertEquals( "Thu, 01 Jan 2015 00:00:00 GMT", http.getLastModified() );
+        assertEquals( 1234L, http.getCheckTime() );
+        assertNull( ( (HTTPLinkValidationResult) read.get( "http://maven.apache.org/" ) ).getETag() );
+
+        LinkValidationResult mailto = read.get( "mailto:dev@maven.apache.org" );
+        assertFalse( mailto instanceof HTTPLinkValidationResult );
+        assertNull( mailto.getErrorMessage() );
+
+        assertEquals( "no temporary file is left", 1, cacheFile.getParentFile().list().length );
+    }
+
+    public void testLargeCache()
+        throws Exception
+    {
+        Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+        for ( int i = 0; i < 50000; i++ )
+        {
+            cache.put( "http://www.example.org/some/rather/long/path/to/page" + i + ".html",
+                       new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" ) );
+        }
+
+        BinaryLinkCacheFormat format = new BinaryLinkCacheFormat();
+        format.write( cache, cacheFile );
+        assertTrue( "the file is memory-mapped", cacheFile.length() > 1024 * 1024 );
+
+        Map<Object, LinkValidationResult> read = format.read( cacheFile );
+        assertEquals( 50000, read.size() );
+        assertEquals( 200, ( (HTTPLinkValidationResult) read.get(
+            "http://www.example.org/some/rather/long/path/to/page49999.html" ) ).getHttpStatusCode() );
+
+        // replace the mapped file
+        cache.clear();
+        format.write( cache, cacheFile );
+        assertEquals( 0, format.read( cacheFile ).size() );
+    }
+
+    public void testUnreadableFile()
+        throws Exception
+    {
+        Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+        cache.put( "http://maven.apache.org/", new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true,
+                                                                               200, "OK" ) );
+
+        BinaryLinkCacheFormat format = new BinaryLinkCacheFormat();
+        format.write( cache, cacheFile );
+
+        RandomAccessFile raf = new RandomAccessFile( cacheFile, "rw" );
+        raf.setLength( raf.length() - 3 );
+        raf.close();
+        assertNull( "truncated", format.read( cacheFile ) );
+
+        raf = new RandomAccessFile( cacheFile, "rw" );
+        raf.write( "<html>".getBytes( "US-ASCII" ) );
+        raf.close();
+        assertNull( "not a cache", format.read( cacheFile ) );
+    }
+
+    public void testSerializedCache()
+        throws Exception
+    {
+        Map<Object, LinkValidationResult> cache = new HashMap<Object, LinkValidationResult>();
+        cache.put( "http://maven.apache.org/", new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true,
+                                                                               200, "OK" ) );
+
+        cacheFile.getParentFile().mkdirs();
+        ObjectOutputStream os = new ObjectOutputStream( new FileOutputStream( cacheFile ) );
+        os.writeObject( cache );
+        os.close();
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new OfflineHTTPLinkValidator() );
+        lvm.loadCache( cacheFile );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "index.html" ), "http://maven.apache.org/" );
+        assertEquals( 200, ( (HTTPLinkValidationResult) lvm.getCachedResult( lvi ) ).getHttpStatusCode() );
+
+        lvm.saveCache( cacheFile );
+        assertNotNull( "the cache is migrated", new BinaryLinkCacheFormat().read( cacheFile ) );
+    }
+}
@@ -0,0 +1,159 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.codehaus.plexus.PlexusTestCase;
+
+import junit.framework.TestCase;
+
+public class BoundedLinkCacheTest
+    extends TestCase
+{
+    private File directory;
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        directory = new File( PlexusTestCase.getBasedir(), "target/linkcheck/boundedCache" );
+        directory.mkdirs();
+    }
+
+    public void testSpill()
+    {
+        BoundedLinkCache cache = new BoundedLinkCache( 10, directory );
+        try
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                cache.put( "http://www.example.org/" + i, result( i ) );
+            }
+
+            assertEquals( 100, cache.size() );
+            assertTrue( cache.getSpilledEntries() >= 90 );
+
+            for ( int i = 0; i < 100; i++ )
+            {
+                HTTPLinkValidationResult result = (HTTPLinkValidationResult) cache.get( "http://www.example.org/" + i );
+                assertNotNull( "entry " + i, result );
+                assertEquals( 200 + i, result.getHttpStatusCode() );
+                assertEquals( "\"" + i + "\"", result.getETag() );
+                assertEquals( i, result.getCheckTime() );
+            }
+            assertEquals( 100, cache.size() );
+
+            cache.put( "http://www.example.org/0", result( 1000 ) );
+            for ( int i = 1; i < 100; i++ )
+            {
+                cache.get( "http://www.example.org/" + i );
+            }
+            assertEquals( "the newest result wins", 1200,
+                          ( (HTTPLinkValidationResult) cache.get( "http://www.example.org/0" ) ).getHttpStatusCode() );
+
+            Map<Object, LinkValidationResult> copy = new HashMap<Object, LinkValidationResult>( cache );
+            assertEquals( 100, copy.size() );
+            assertFalse( cache.containsKey( "http://www.example.org/100" ) );
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    public void testSpillCompaction()
+    {
+        BoundedLinkCache cache = new BoundedLinkCache( 1, directory );
+        try
+        {
+            for ( int i = 0; i < 10; i++ )
+            {
+                cache.put( "http://www.example.org/" + i, result( i ) );
+            }
+
+            // each lookup reads a result back and spills another one, leaving garbage in the spill file
+            long maxLength = 0;
+            for ( int round = 0; round < 5000; round++ )
+            {
+                for ( int i = 0; i < 10; i++ )
+                {
+                    assertEquals( 200 + i,
+                                  ( (HTTPLinkValidationResult) cache.get( "http://www.example.org/" + i ) )
+                                      .getHttpStatusCode() );
+                }
+                maxLength = Math.max( maxLength, cache.getSpillLength() );
+            }
+
+            assertTrue( String.valueOf( maxLength ), maxLength <= BoundedLinkCache.MIN_COMPACTED_LENGTH + 1024 );
+            assertEquals( 10, cache.size() );
+            assertEquals( 9, cache.getSpilledEntries() );
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    public void testBoundedManager()
+        throws Exception
+    {
+        File cacheFile = new File( directory, "linkcheck.cache" );
+        cacheFile.delete();
+
+        Map<Object, LinkValidationResult> results = new HashMap<Object, LinkValidationResult>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            results.put( "http://www.example.org/" + i, result( i ) );
+        }
+        new BinaryLinkCacheFormat().write( results, cacheFile );
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.setMaxCacheEntries( 5 );
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                throw new AssertionError( "all the results are cached" );
+            }
+        } );
+        lvm.loadCache( cacheFile );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            LinkValidationItem lvi = new LinkValidationItem( new File( "index.html" ), "http://www.example.org/" + i );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, lvm.validateLink( lvi ).getStatus() );
+        }
+
+        lvm.saveCache( cacheFile );
+        assertEquals( 50, new BinaryLinkCacheFormat().read( cacheFile ).size() );
+    }
+
+    private static HTTPLinkValidationResult result( int i )
+    {
+        return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200 + i, "OK", "\"" + i + "\"",
+                                             null, i );
+    }
+}
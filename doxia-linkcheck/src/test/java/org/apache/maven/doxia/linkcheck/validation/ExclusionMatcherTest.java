@@ -0,0 +1,83 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+
+public class ExclusionMatcherTest
+    extends TestCase
+{
+    private static final String[] LINKS = {
+        "", "/", "./", "index.html", "./index.html", "/index.html", "../index.html", "#top",
+        "http://maven.apache.org", "http://maven.apache.org/", "http://maven.apache.org/test.html",
+        "http://maven.apache.org/test/test.html", "HTTP://maven.apache.org/test.jsp", "https://maven.apache.org/",
+        "http://java.sun.com/", "mailto:dev@maven.apache.org", "ftp://ftp.apache.org/dist/",
+        "apidocs/org/Foo.html", "../../exclude/foo.html", "exclude/", "exclude", "http://host/a b/" };
+
+    private static final String[] PATTERNS = {
+        "", "/", "http://maven.apache.org", "http://maven.apache.org/", "http://maven.apache.org/*",
+        "http://maven.apache.org/**/*", "http://maven.apache.org/*.html", "http://maven.apache.org/**/*.jsp",
+        "../../exclude/*", "*/exclude/*", "**/*.html", "*", "?ttp://*", "apidocs/", "apidocs/**",
+        "index.html", "mailto:*", "ftp://*/dist/", "http://host/a b/*", "exclude/*", "*exclude", "java.sun" };
+
+    public void testSinglePatterns()
+    {
+        for ( int i = 0; i < PATTERNS.length; i++ )
+        {
+            ExclusionMatcher matcher = new ExclusionMatcher( new String[] { PATTERNS[i] } );
+
+            for ( int j = 0; j < LINKS.length; j++ )
+            {
+                assertEquals( "link: '" + LINKS[j] + "' pattern: '" + PATTERNS[i] + "'",
+                              LinkValidatorManager.matchPattern( LINKS[j], PATTERNS[i] ),
+                              matcher.matches( LINKS[j] ) );
+            }
+        }
+    }
+
+    public void testCombinedPatterns()
+    {
+        String[] patterns = { "index.html", "java.sun", null, "apidocs/", "ftp://*/dist/", "*/exclude/*" };
+        ExclusionMatcher matcher = new ExclusionMatcher( patterns );
+
+        for ( int j = 0; j < LINKS.length; j++ )
+        {
+            boolean expected = false;
+            for ( int i = 0; i < patterns.length; i++ )
+            {
+                expected |= patterns[i] != null && LinkValidatorManager.matchPattern( LINKS[j], patterns[i] );
+            }
+
+            assertEquals( "link: '" + LINKS[j] + "'", expected, matcher.matches( LINKS[j] ) );
+        }
+
+        assertFalse( new ExclusionMatcher( null ).matches( "index.html" ) );
+        assertFalse( new ExclusionMatcher( new String[0] ).matches( "" ) );
+    }
+
+    public void testOverlappingLiterals()
+    {
+        ExclusionMatcher matcher = new ExclusionMatcher( new String[] { "abcd", "bce", "cf" } );
+
+        assertTrue( matcher.matches( "xabcfy" ) );
+        assertTrue( matcher.matches( "abce" ) );
+        assertFalse( matcher.matches( "abcbc" ) );
+    }
+}
@@ -20,9 +20,24 @@ package org.apache.maven.doxia.linkcheck.validation;
  */
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.httpclient.HttpVersion;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.apache.maven.doxia.linkcheck.StubHttpServer;
 import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
 import junit.framework.TestCase;
 
 /**
@@ -67,6 +82,168 @@ public class HTTPLinkValidatorTest extends TestCase
         }
     }
 
+    public void testHttpClientParameterValues()
+    {
+        assertEquals( Boolean.TRUE, HTTPLinkValidator.toParameterValue( "http.protocol.expect-continue", "true" ) );
+        assertEquals( Integer.valueOf( 5 ),
+                      HTTPLinkValidator.toParameterValue( "http.protocol.max-redirects", " 5 " ) );
+        assertEquals( Long.valueOf( 1000 ),
+                      HTTPLinkValidator.toParameterValue( "http.connection-manager.timeout", "1000" ) );
+        assertEquals( "compatibility",
+                      HTTPLinkValidator.toParameterValue( "http.protocol.cookie-policy", "compatibility" ) );
+        assertEquals( HttpVersion.HTTP_1_0, HTTPLinkValidator.toParameterValue( "http.protocol.version", "HTTP/1.0" ) );
+        assertEquals( HttpVersion.HTTP_1_1, HTTPLinkValidator.toParameterValue( "http.protocol.version", "HTTP/1.1" ) );
+        assertEquals( "2", HTTPLinkValidator.toParameterValue( "http.useragent", "2" ) );
+
+        assertNull( HTTPLinkValidator.toParameterValue( "http.protocol.version", "1.1" ) );
+        assertNull( HTTPLinkValidator.toParameterValue( "http.protocol.max-redirects", "many" ) );
+        assertNull( HTTPLinkValidator.toParameterValue( "http.protocol.expect-continue", "yes" ) );
+        assertNull( HTTPLinkValidator.toParameterValue( "http.method.retry-handler", "none" ) );
+    }
+
+    public void testNoSystemProperties()
+        throws Exception
+    {
+        Properties parameters = new Properties();
+        parameters.setProperty( "linkcheck.test.parameter", "value" );
+
+        HttpBean bean = new HttpBean();
+        bean.setTimeout( 100 );
+        bean.setHttpClientParameters( parameters );
+
+        this.hlv = new OnlineHTTPLinkValidator( bean );
+        checkLink( "http://localhost:1/" );
+
+        assertNull( System.getProperty( "linkcheck.test.parameter" ) );
+        assertNull( System.getProperty( HttpMethodParams.USER_AGENT ) );
+    }
+
+    public void testConditionalRevalidation()
+        throws Exception
+    {
+        final AtomicInteger notModified = new AtomicInteger();
+
+        StubHttpServer server = new StubHttpServer( new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                if ( "\"v1\"".equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) )
+                {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders( 304, -1 );
+                }
+                else
+                {
+                    exchange.getResponseHeaders().add( "ETag", "\"v1\"" );
+                    exchange.sendResponseHeaders( 200, -1 );
+                }
+                exchange.close();
+            }
+        } );
+        try
+        {
+            OnlineHTTPLinkValidator validator = new OnlineHTTPLinkValidator();
+            this.hlv = validator;
+
+            String link = server.url( "/index.html" );
+            HTTPLinkValidationResult first = (HTTPLinkValidationResult) checkLink( link );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, first.getStatus() );
+            assertEquals( "\"v1\"", first.getETag() );
+            assertEquals( 0, notModified.get() );
+
+            Thread.sleep( 5 );
+
+            LinkValidationItem lvi = new LinkValidationItem( new File( "." ), link );
+            HTTPLinkValidationResult second = (HTTPLinkValidationResult) validator.revalidateLink( lvi, first );
+            assertEquals( 1, notModified.get() );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, second.getStatus() );
+            assertEquals( 200, second.getHttpStatusCode() );
+            assertEquals( "\"v1\"", second.getETag() );
+            assertTrue( second.getCheckTime() > first.getCheckTime() );
+
+            // a closed validator opens new connections
+            validator.close();
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, checkLink( link ).getStatus() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    public void testStreamingAnchorCheck()
+        throws Exception
+    {
+        final AtomicInteger written = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch( 1 );
+
+        StubHttpServer server = new StubHttpServer( new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                boolean large = exchange.getRequestURI().getPath().equals( "/large.html" );
+                byte[] head = "<html><body><h1 id=\"top\">Top</h1>".getBytes( "UTF-8" );
+                byte[] filler = new byte[8192];
+                Arrays.fill( filler, (byte) 'x' );
+                int chunks = large ? 1024 : 1;
+
+                exchange.sendResponseHeaders( 200, head.length + chunks * filler.length );
+                OutputStream os = exchange.getResponseBody();
+                try
+                {
+                    os.write( head );
+                    for ( int i = 0; i < chunks; i++ )
+                    {
+                        os.write( filler );
+                        written.addAndGet( filler.length );
+                    }
+                    os.close();
+                }
+                catch ( IOException e )
+                {
+                    // the client closed the connection
+                }
+                finally
+                {
+                    if ( large )
+                    {
+                        done.countDown();
+                    }
+                }
+            }
+        } );
+        try
+        {
+            HttpBean bean = new HttpBean();
+            bean.setMethod( "get" );
+            OnlineHTTPLinkValidator validator = new OnlineHTTPLinkValidator( bean );
+
+            String base = server.url( "" );
+
+            this.hlv = validator;
+            HTTPLinkValidationResult found = (HTTPLinkValidationResult) checkLink( base + "/large.html#top" );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, found.getStatus() );
+            assertTrue( found.isPersistent() );
+            assertTrue( "the body has been scanned up to the anchor only",
+                        done.await( 10, TimeUnit.SECONDS ) && written.get() < 1024 * 8192 );
+            assertNull( "the anchors of a partly read document are not indexed",
+                        validator.getAnchorIndex().getAnchors( base + "/large.html" ) );
+
+            LinkValidationResult missing = checkLink( base + "/small.html#bottom" );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, missing.getStatus() );
+            assertFalse( missing.isPersistent() );
+            assertTrue( missing.getErrorMessage().endsWith( "Missing anchor 'bottom'" ) );
+            assertEquals( Collections.singleton( "top" ),
+                          validator.getAnchorIndex().getAnchors( base + "/small.html" ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
     protected LinkValidationResult checkLink( String link ) throws Exception
     {
 
@@ -0,0 +1,202 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class HostDispatcherTest
+    extends TestCase
+{
+    public void testGetHost()
+    {
+        assertEquals( "maven.apache.org", HostDispatcher.getHost( "http://Maven.Apache.org/index.html" ) );
+        assertEquals( "localhost:8080", HostDispatcher.getHost( "https://localhost:8080?q=1" ) );
+        assertEquals( "example.com", HostDispatcher.getHost( "http://example.com" ) );
+        assertEquals( "", HostDispatcher.getHost( "/absolute/path.html" ) );
+    }
+
+    public void testLimitPerHost()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            HostDispatcher dispatcher = new HostDispatcher( executor, 2 );
+
+            final Map<String, AtomicInteger> running = new HashMap<String, AtomicInteger>();
+            final Map<String, AtomicInteger> maxRunning = new HashMap<String, AtomicInteger>();
+            final AtomicInteger completed = new AtomicInteger();
+
+            String[] hosts = new String[] { "a", "b", "c" };
+            for ( int i = 0; i < hosts.length; i++ )
+            {
+                running.put( hosts[i], new AtomicInteger() );
+                maxRunning.put( hosts[i], new AtomicInteger() );
+            }
+
+            for ( int i = 0; i < 60; i++ )
+            {
+                final String host = hosts[i % hosts.length];
+
+                dispatcher.dispatch( host, new Runnable()
+                {
+                    public void run()
+                    {
+                        int current = running.get( host ).incrementAndGet();
+                        synchronized ( maxRunning )
+                        {
+                            if ( current > maxRunning.get( host ).get() )
+                            {
+                                maxRunning.get( host ).set( current );
+                            }
+                        }
+
+                        try
+                        {
+                            Thread.sleep( 2 );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        running.get( host ).decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                } );
+            }
+
+            dispatcher.await();
+
+            assertEquals( 60, completed.get() );
+            for ( int i = 0; i < hosts.length; i++ )
+            {
+                assertTrue( "too many tasks for " + hosts[i], maxRunning.get( hosts[i] ).get() <= 2 );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testExecutorShutDown()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        try
+        {
+            HostDispatcher dispatcher = new HostDispatcher( executor, 1 );
+
+            final CountDownLatch started = new CountDownLatch( 1 );
+            final CountDownLatch release = new CountDownLatch( 1 );
+            final AtomicInteger completed = new AtomicInteger();
+
+            for ( int i = 0; i < 3; i++ )
+            {
+                dispatcher.dispatch( "a", new Runnable()
+                {
+                    public void run()
+                    {
+                        started.countDown();
+                        try
+                        {
+                            release.await();
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        completed.incrementAndGet();
+                    }
+                } );
+            }
+
+            assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+            executor.shutdown();
+            release.countDown();
+
+            assertTrue( "the waiting tasks are dropped", dispatcher.await( 5000 ) );
+            assertEquals( 1, completed.get() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testCancel()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            HostDispatcher dispatcher = new HostDispatcher( executor, 1 );
+
+            final AtomicInteger completed = new AtomicInteger();
+
+            for ( int i = 0; i < 5; i++ )
+            {
+                dispatcher.dispatch( "a", new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            Thread.sleep( 200 );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        completed.incrementAndGet();
+                    }
+                } );
+            }
+
+            assertFalse( "timeout", dispatcher.await( 50 ) );
+
+            dispatcher.cancel();
+            dispatcher.dispatch( "b", new Runnable()
+            {
+                public void run()
+                {
+                    completed.incrementAndGet();
+                }
+            } );
+
+            assertTrue( "the running task completes", dispatcher.await( 5000 ) );
+            assertEquals( "the waiting tasks are dropped", 1, completed.get() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
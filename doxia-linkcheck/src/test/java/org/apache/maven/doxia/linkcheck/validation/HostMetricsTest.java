@@ -0,0 +1,69 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the metrics of the requests sent to each host.
+ */
+public class HostMetricsTest
+    extends TestCase
+{
+    public void testHistogram()
+    {
+        HostMetrics metrics = new HostMetrics();
+
+        metrics.addRequest( "b.example.org", 5 );
+        metrics.addRequest( "b.example.org", 10 );
+        metrics.addRequest( "b.example.org", 11 );
+        metrics.addRequest( "b.example.org", 60000 );
+        metrics.addRequest( "a.example.org", 300 );
+        metrics.addRetry( "b.example.org" );
+
+        assertEquals( Arrays.asList( new String[] { "a.example.org", "b.example.org" } ),
+                      Arrays.asList( metrics.getHosts().toArray() ) );
+
+        assertEquals( 4, metrics.getRequests( "b.example.org" ) );
+        assertEquals( 1, metrics.getRetries( "b.example.org" ) );
+        assertEquals( 60026, metrics.getTime( "b.example.org" ) );
+
+        long[] latencies = metrics.getLatencies( "b.example.org" );
+        assertEquals( HostMetrics.getLatencyBounds().length + 1, latencies.length );
+        assertEquals( "up to 10 ms", 2, latencies[0] );
+        assertEquals( "up to 50 ms", 1, latencies[1] );
+        assertEquals( "over the last bound", 1, latencies[latencies.length - 1] );
+
+        assertEquals( 1, metrics.getLatencies( "a.example.org" )[4] );
+    }
+
+    public void testUnknownHost()
+    {
+        HostMetrics metrics = new HostMetrics();
+
+        assertEquals( 0, metrics.getRequests( "example.org" ) );
+        assertEquals( 0, metrics.getRetries( "example.org" ) );
+        assertEquals( 0, metrics.getTime( "example.org" ) );
+        assertEquals( 0, metrics.getLatencies( "example.org" )[0] );
+        assertTrue( metrics.getHosts().isEmpty() );
+    }
+}
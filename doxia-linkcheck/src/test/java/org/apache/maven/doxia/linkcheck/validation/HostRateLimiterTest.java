@@ -0,0 +1,201 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.util.DateUtil;
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.apache.maven.doxia.linkcheck.StubHttpServer;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import junit.framework.TestCase;
+
+public class HostRateLimiterTest
+    extends TestCase
+{
+    public void testParseRetryAfter()
+    {
+        assertEquals( -1, HostRateLimiter.parseRetryAfter( null ) );
+        assertEquals( -1, HostRateLimiter.parseRetryAfter( " " ) );
+        assertEquals( -1, HostRateLimiter.parseRetryAfter( "soon" ) );
+        assertEquals( 0, HostRateLimiter.parseRetryAfter( "0" ) );
+        assertEquals( 120000, HostRateLimiter.parseRetryAfter( " 120 " ) );
+
+        long delay = HostRateLimiter.parseRetryAfter( DateUtil.formatDate( new Date( System.currentTimeMillis()
+            + 30000 ) ) );
+        assertTrue( String.valueOf( delay ), delay > 25000 && delay <= 30000 );
+        assertEquals( 0, HostRateLimiter.parseRetryAfter( "Thu, 01 Jan 1970 00:00:00 GMT" ) );
+    }
+
+    public void testIsThrottled()
+    {
+        assertTrue( HostRateLimiter.isThrottled( 429 ) );
+        assertTrue( HostRateLimiter.isThrottled( 503 ) );
+        assertFalse( HostRateLimiter.isThrottled( 200 ) );
+        assertFalse( HostRateLimiter.isThrottled( 500 ) );
+    }
+
+    public void testBackoff()
+    {
+        HostRateLimiter limiter = new HostRateLimiter( 0 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            long first = limiter.getBackoff( 1 );
+            assertTrue( String.valueOf( first ), first >= 1 && first <= 501 );
+
+            long late = limiter.getBackoff( 30 );
+            assertTrue( String.valueOf( late ), late >= 1 && late <= 30001 );
+        }
+    }
+
+    public void testAdaptiveRate()
+        throws Exception
+    {
+        HostRateLimiter limiter = new HostRateLimiter( 8 );
+        assertEquals( 8.0, limiter.getRate( "a" ), 0 );
+
+        limiter.throttled( "a", -1 );
+        assertEquals( 4.0, limiter.getRate( "a" ), 0 );
+        assertEquals( "hosts are independent", 8.0, limiter.getRate( "b" ), 0 );
+
+        limiter.success( "a" );
+        assertEquals( 4.25, limiter.getRate( "a" ), 0 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            limiter.success( "a" );
+        }
+        assertEquals( "the rate never exceeds the configured one", 8.0, limiter.getRate( "a" ), 0 );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            limiter.throttled( "a", -1 );
+        }
+        assertEquals( HostRateLimiter.MIN_RATE, limiter.getRate( "a" ), 0 );
+
+        HostRateLimiter unlimited = new HostRateLimiter( 0 );
+        assertTrue( Double.isInfinite( unlimited.getRate( "a" ) ) );
+        unlimited.success( "a" );
+        assertTrue( Double.isInfinite( unlimited.getRate( "a" ) ) );
+        unlimited.throttled( "a", -1 );
+        assertFalse( Double.isInfinite( unlimited.getRate( "a" ) ) );
+    }
+
+    public void testAcquire()
+        throws Exception
+    {
+        HostRateLimiter limiter = new HostRateLimiter( 20 );
+
+        // a throttled host empties its bucket: the next request waits for a token, at 10 per second
+        limiter.throttled( "a", -1 );
+        long start = System.currentTimeMillis();
+        limiter.acquire( "a" );
+        limiter.acquire( "a" );
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue( String.valueOf( elapsed ), elapsed >= 150 );
+
+        // Retry-After blocks the host
+        limiter.throttled( "b", 300 );
+        start = System.currentTimeMillis();
+        limiter.acquire( "b" );
+        elapsed = System.currentTimeMillis() - start;
+        assertTrue( String.valueOf( elapsed ), elapsed >= 250 );
+    }
+
+    public void testThrottledUnlimitedHost()
+        throws Exception
+    {
+        HostRateLimiter limiter = new HostRateLimiter( 0 );
+
+        for ( int i = 0; i < 40; i++ )
+        {
+            limiter.acquire( "a" );
+        }
+        Thread.sleep( 500 );
+
+        // halved from the observed 40 per second, with an empty bucket rather than the tokens of the last 500 ms
+        limiter.throttled( "a", -1 );
+        long start = System.currentTimeMillis();
+        for ( int i = 0; i < 3; i++ )
+        {
+            limiter.acquire( "a" );
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue( String.valueOf( elapsed ), elapsed >= 100 );
+    }
+
+    public void testRetries()
+        throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+
+        StubHttpServer server = new StubHttpServer( new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                if ( path.equals( "/busy.html" ) && requests.incrementAndGet() > 2 )
+                {
+                    StubHttpServer.send( exchange, 200, "<html/>" );
+                }
+                else
+                {
+                    exchange.getResponseHeaders().add( "Retry-After", "0" );
+                    StubHttpServer.send( exchange, path.equals( "/busy.html" ) ? 429 : 503, "Busy" );
+                }
+            }
+        } );
+
+        try
+        {
+            HttpBean bean = new HttpBean();
+            bean.setMethod( "get" );
+            bean.setRequestsPerSecond( 50 );
+            KeepAliveHTTPLinkValidator validator = new KeepAliveHTTPLinkValidator( bean );
+            String base = server.url( "" );
+
+            HTTPLinkValidationResult busy = (HTTPLinkValidationResult) validator.validateLink(
+                new LinkValidationItem( new File( "." ), base + "/busy.html" ) );
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, busy.getStatus() );
+            assertEquals( 2, busy.getRetries() );
+            assertEquals( 3, requests.get() );
+
+            HTTPLinkValidationResult down = (HTTPLinkValidationResult) validator.validateLink(
+                new LinkValidationItem( new File( "." ), base + "/down.html" ) );
+            assertEquals( "a link still throttled is a warning", LinkcheckFileResult.WARNING_LEVEL,
+                          down.getStatus() );
+            assertFalse( down.isPersistent() );
+            assertEquals( 503, down.getHttpStatusCode() );
+            assertEquals( bean.getMaxRetries(), down.getRetries() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.doxia.linkcheck.HttpBean;
+import org.apache.maven.doxia.linkcheck.StubHttpServer;
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import junit.framework.TestCase;
+
+public class KeepAliveHTTPLinkValidatorTest
+    extends TestCase
+{
+    private StubHttpServer server;
+
+    private final Set<Integer> connections = Collections.synchronizedSet( new HashSet<Integer>() );
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        server = new StubHttpServer( new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                connections.add( Integer.valueOf( exchange.getRemoteAddress().getPort() ) );
+
+                // the embedded server closes the connection after an empty response, so all the responses
+                // but the 304 have a body
+                String path = exchange.getRequestURI().getPath();
+                if ( path.equals( "/old.html" ) )
+                {
+                    exchange.getResponseHeaders().add( "Location", "/index.html" );
+                    StubHttpServer.send( exchange, 301, "Moved" );
+                }
+                else if ( path.equals( "/index.html" ) )
+                {
+                    if ( "\"v1\"".equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) )
+                    {
+                        exchange.sendResponseHeaders( 304, -1 );
+                        exchange.close();
+                    }
+                    else
+                    {
+                        exchange.getResponseHeaders().add( "Content-Type", "text/html; charset=UTF-8" );
+                        exchange.getResponseHeaders().add( "ETag", "\"v1\"" );
+                        StubHttpServer.send( exchange, 200, "<html><body><h1 id=\"top\">Top</h1></body></html>" );
+                    }
+                }
+                else
+                {
+                    StubHttpServer.send( exchange, 404, "Not found" );
+                }
+            }
+        } );
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown()
+        throws Exception
+    {
+        server.stop();
+
+        super.tearDown();
+    }
+
+    public void testKeepAlive()
+        throws Exception
+    {
+        HttpBean bean = new HttpBean();
+        bean.setMethod( "get" );
+        KeepAliveHTTPLinkValidator validator = new KeepAliveHTTPLinkValidator( bean );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertEquals( LinkcheckFileResult.VALID_LEVEL, check( validator, "/index.html#top" ).getStatus() );
+        }
+
+        LinkValidationResult missing = check( validator, "/index.html#bottom" );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, missing.getStatus() );
+        assertFalse( missing.isPersistent() );
+        assertTrue( missing.getErrorMessage().endsWith( "Missing anchor 'bottom'" ) );
+
+        HTTPLinkValidationResult redirect = (HTTPLinkValidationResult) check( validator, "/old.html" );
+        assertEquals( LinkcheckFileResult.WARNING_LEVEL, redirect.getStatus() );
+        assertEquals( 301, redirect.getHttpStatusCode() );
+
+        assertEquals( LinkcheckFileResult.ERROR_LEVEL, check( validator, "/missing.html" ).getStatus() );
+
+        assertEquals( "all the requests share one connection", 1, connections.size() );
+    }
+
+    public void testFollowRedirectsAndRevalidation()
+        throws Exception
+    {
+        HttpBean bean = new HttpBean();
+        bean.setMethod( "get" );
+        bean.setFollowRedirects( true );
+        KeepAliveHTTPLinkValidator validator = new KeepAliveHTTPLinkValidator( bean );
+
+        HTTPLinkValidationResult result = (HTTPLinkValidationResult) check( validator, "/old.html" );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, result.getStatus() );
+        assertEquals( 200, result.getHttpStatusCode() );
+        assertEquals( "\"v1\"", result.getETag() );
+        assertEquals( "the redirection reuses the connection", 1, connections.size() );
+
+        Thread.sleep( 5 );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "." ), url( "/index.html" ) );
+        HTTPLinkValidationResult revalidated = (HTTPLinkValidationResult) validator.revalidateLink( lvi, result );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, revalidated.getStatus() );
+        assertTrue( revalidated.getCheckTime() > result.getCheckTime() );
+    }
+
+    public void testMaxRedirects()
+        throws Exception
+    {
+        Properties parameters = new Properties();
+        parameters.setProperty( "http.protocol.max-redirects", "0" );
+
+        HttpBean bean = new HttpBean();
+        bean.setMethod( "get" );
+        bean.setFollowRedirects( true );
+        bean.setHttpClientParameters( parameters );
+        KeepAliveHTTPLinkValidator validator = new KeepAliveHTTPLinkValidator( bean );
+        assertEquals( 0, validator.getMaxRedirects() );
+
+        LinkValidationResult result = check( validator, "/old.html" );
+        assertEquals( LinkcheckFileResult.ERROR_LEVEL, result.getStatus() );
+        assertTrue( result.getErrorMessage(), result.getErrorMessage().contains( "Maximum number of redirections" ) );
+
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, check( validator, "/index.html" ).getStatus() );
+        assertEquals( 0, new OnlineHTTPLinkValidator( bean ).getMaxRedirects() );
+        assertEquals( 10, new KeepAliveHTTPLinkValidator().getMaxRedirects() );
+    }
+
+    public void testGetCharset()
+    {
+        assertEquals( "ISO-8859-1", HTTPLinkValidator.getCharset( null ) );
+        assertEquals( "UTF-8", HTTPLinkValidator.getCharset( "text/html; charset=\"UTF-8\"; q=1" ) );
+        assertEquals( "ISO-8859-1", HTTPLinkValidator.getCharset( "text/html; charset=unknown" ) );
+    }
+
+    private LinkValidationResult check( LinkValidator validator, String path )
+    {
+        return validator.validateLink( new LinkValidationItem( new File( "." ), url( path ) ) );
+    }
+
+    private String url( String path )
+    {
+        return server.url( path );
+    }
+}
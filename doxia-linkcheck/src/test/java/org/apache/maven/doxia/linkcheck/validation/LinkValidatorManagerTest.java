@@ -19,6 +19,15 @@ package org.apache.maven.doxia.linkcheck.validation;
  * under the License.
  */
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+
 import junit.framework.TestCase;
 
 /**
@@ -68,4 +77,306 @@ public class LinkValidatorManagerTest
         pattern = "../../exclude/*";
         assertFalse( LinkValidatorManager.matchPattern( link, pattern ) );
     }
+
+    public void testValidationPlan()
+        throws Exception
+    {
+        final AtomicInteger validations = new AtomicInteger();
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.setExcludedLinks( new String[] { "http://excluded.org/" } );
+        lvm.addLinkValidator( new FileLinkValidator( "UTF-8" ) );
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                validations.incrementAndGet();
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+            }
+        } );
+
+        LinkValidationPlan plan = lvm.createPlan();
+
+        List<LinkValidationPlan.Resource> resources = new ArrayList<LinkValidationPlan.Resource>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            File source = new File( "page" + i + ".html" );
+
+            resources.add( plan.addLink( new LinkValidationItem( source, "http://maven.apache.org/" ) ) );
+            resources.add( plan.addLink( new LinkValidationItem( source, "http://maven.apache.org/#anchor" ) ) );
+            resources.add( plan.addLink( new LinkValidationItem( source, "http://www.apache.org/" ) ) );
+            resources.add( plan.addLink( new LinkValidationItem( source, "local.html" ) ) );
+        }
+        plan.addLink( new LinkValidationItem( new File( "page.html" ), "http://excluded.org/" ) );
+
+        assertEquals( 41, plan.getTotalLinks() );
+        assertEquals( "2 external resources, 1 local file, 1 excluded link", 4, plan.getUniqueLinks() );
+
+        plan.validateExternalLinks( 4, 1 );
+
+        assertEquals( "each external resource is validated once", 2, validations.get() );
+
+        for ( LinkValidationPlan.Resource resource : resources )
+        {
+            assertNotNull( resource.getResult() );
+        }
+
+        assertEquals( "results are shared by the links", 2, validations.get() );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "other.html" ), "http://www.apache.org/" );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, lvm.validateLink( lvi ).getStatus() );
+        assertEquals( "results are cached", 2, validations.get() );
+    }
+
+    public void testValidationTimeout()
+        throws Exception
+    {
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                if ( lvi.getLink().indexOf( "slow" ) != -1 )
+                {
+                    try
+                    {
+                        Thread.sleep( 60000 );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Interrupted" );
+                    }
+                }
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+            }
+        } );
+
+        LinkValidationPlan plan = lvm.createPlan();
+
+        File source = new File( "page.html" );
+        LinkValidationPlan.Resource fast = plan.addLink( new LinkValidationItem( source, "http://fast.org/" ) );
+        LinkValidationPlan.Resource slow = plan.addLink( new LinkValidationItem( source, "http://slow.org/1" ) );
+        LinkValidationPlan.Resource queued = plan.addLink( new LinkValidationItem( source, "http://slow.org/2" ) );
+
+        long start = System.currentTimeMillis();
+        assertFalse( plan.validateExternalLinks( 4, 1, true, 500 ) );
+        assertTrue( "cancelled on the deadline", System.currentTimeMillis() - start < 10000 );
+
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, fast.getResult().getStatus() );
+        assertEquals( LinkcheckFileResult.UNKNOWN_LEVEL, slow.getResult().getStatus() );
+        assertEquals( "Deadline exceeded", slow.getResult().getErrorMessage() );
+        assertEquals( "Deadline exceeded", queued.getResult().getErrorMessage() );
+    }
+
+    public void testDeadline()
+        throws Exception
+    {
+        final AtomicInteger validations = new AtomicInteger();
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                validations.incrementAndGet();
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+            }
+        } );
+        lvm.addLinkValidator( new FileLinkValidator( "UTF-8" ) );
+
+        LinkValidationPlan plan = lvm.createPlan();
+        plan.setDeadline( System.currentTimeMillis() - 1 );
+
+        File source = new File( "page.html" );
+        LinkValidationPlan.Resource external = plan.addLink( new LinkValidationItem( source, "http://maven.org/" ) );
+        LinkValidationPlan.Resource local = plan.addLink( new LinkValidationItem( source, "index.html" ) );
+
+        assertFalse( plan.validateExternalLinks( 4, 1, false, 0 ) );
+
+        assertEquals( "Deadline exceeded", external.getResult().getErrorMessage() );
+        assertEquals( "Deadline exceeded", local.getResult().getErrorMessage() );
+        assertEquals( 2, plan.getExpiredLinks() );
+        assertEquals( 0, validations.get() );
+
+        plan = lvm.createPlan();
+        local = plan.addLink( new LinkValidationItem( source, "index.html" ) );
+        assertEquals( "not cached", LinkcheckFileResult.ERROR_LEVEL, local.getResult().getStatus() );
+    }
+
+    public void testInterruptedValidationNotCached()
+        throws Exception
+    {
+        final AtomicInteger validations = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch( 1 );
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                if ( validations.incrementAndGet() == 1 )
+                {
+                    try
+                    {
+                        Thread.sleep( 10000 );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        // like the HTTP validators
+                        Thread.currentThread().interrupt();
+
+                        return new LinkValidationResult( LinkcheckFileResult.UNKNOWN_LEVEL, false, "Interrupted" );
+                    }
+                    finally
+                    {
+                        interrupted.countDown();
+                    }
+                }
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+            }
+        } );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "page.html" ), "http://maven.org/" );
+
+        LinkValidationPlan plan = lvm.createPlan();
+        LinkValidationPlan.Resource resource = plan.addLink( lvi );
+        assertFalse( plan.validateExternalLinks( 1, 1, false, 100 ) );
+        assertTrue( interrupted.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( LinkcheckFileResult.UNKNOWN_LEVEL, resource.getResult().getStatus() );
+        assertNull( "not cached", lvm.getCachedResult( lvi ) );
+
+        plan = lvm.createPlan();
+        resource = plan.addLink( lvi );
+        assertTrue( plan.validateExternalLinks( 1, 1, false, 0 ) );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, resource.getResult().getStatus() );
+        assertEquals( "checked for real", 2, validations.get() );
+    }
+
+    public void testTimeToLive()
+        throws Exception
+    {
+        final AtomicInteger validations = new AtomicInteger();
+        final AtomicInteger revalidations = new AtomicInteger();
+
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new RevalidatingLinkValidator()
+        {
+            public Object getResourceKey( LinkValidationItem lvi )
+            {
+                return lvi.getLink();
+            }
+
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                validations.incrementAndGet();
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK", "\"v1\"",
+                                                     null );
+            }
+
+            public LinkValidationResult revalidateLink( LinkValidationItem lvi, LinkValidationResult previous )
+            {
+                revalidations.incrementAndGet();
+
+                return ( (HTTPLinkValidationResult) previous ).revalidated();
+            }
+        } );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "index.html" ), "http://maven.apache.org/" );
+        LinkValidationResult first = lvm.validateLink( lvi );
+        assertSame( "never expires by default", first, lvm.validateLink( lvi ) );
+
+        lvm.setTimeToLive( LinkcheckFileResult.ERROR_LEVEL, 0 );
+        assertSame( "only errors expire", first, lvm.validateLink( lvi ) );
+        assertEquals( 1, validations.get() );
+        assertEquals( 0, revalidations.get() );
+
+        lvm.setTimeToLive( LinkcheckFileResult.VALID_LEVEL, 0 );
+        Thread.sleep( 5 );
+        assertNull( lvm.getCachedResult( lvi ) );
+        LinkValidationResult second = lvm.validateLink( lvi );
+        assertEquals( 1, validations.get() );
+        assertEquals( "an expired result is revalidated", 1, revalidations.get() );
+        assertTrue( second.getCheckTime() > first.getCheckTime() );
+
+        Thread.sleep( 5 );
+        lvm.createPlan().addLink( lvi ).getResult();
+        assertEquals( "the plan revalidates too", 2, revalidations.get() );
+    }
+
+    public void testCoalescedValidations()
+        throws Exception
+    {
+        final AtomicInteger validations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                validations.incrementAndGet();
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+            }
+        } );
+
+        final LinkValidationItem lvi = new LinkValidationItem( new File( "index.html" ), "http://maven.apache.org/" );
+
+        Thread[] threads = new Thread[4];
+        final LinkValidationResult[] results = new LinkValidationResult[threads.length];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    results[index] = lvm.validateLink( lvi );
+                }
+            };
+            threads[i].start();
+
+            if ( i == 0 )
+            {
+                assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+            }
+        }
+
+        // wait until the other threads are waiting for the first validation
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( lvm.getCoalescedValidations() < threads.length - 1 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 5 );
+        }
+        release.countDown();
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i].join();
+            assertSame( results[0], results[i] );
+        }
+
+        assertEquals( "a single validation for all the threads", 1, validations.get() );
+        assertEquals( 1, lvm.getCacheMisses() );
+        assertEquals( threads.length - 1, lvm.getCoalescedValidations() );
+
+        lvm.validateLink( lvi );
+        assertEquals( 1, lvm.getCacheHits() );
+        assertEquals( 1, validations.get() );
+    }
 }
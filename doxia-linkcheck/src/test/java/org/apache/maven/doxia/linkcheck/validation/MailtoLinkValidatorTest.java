@@ -0,0 +1,150 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class MailtoLinkValidatorTest
+    extends TestCase
+{
+    private static final List<String> MAIL_DOMAINS =
+        Arrays.asList( new String[] { "apache.org", "maven.apache.org", "example.com", "example.net" } );
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final MailDomainResolver resolver = new MailDomainResolver()
+    {
+        public boolean hasMailServer( String domain )
+            throws IOException
+        {
+            lookups.incrementAndGet();
+
+            if ( "unreachable.org".equals( domain ) )
+            {
+                throw new IOException( "No name server" );
+            }
+
+            return MAIL_DOMAINS.contains( domain );
+        }
+    };
+
+    public void testWithoutResolver()
+    {
+        MailtoLinkValidator lv = new MailtoLinkValidator();
+        assertFalse( lv.isCheckingDomains() );
+
+        LinkValidationItem lvi = item( "mailto:dev@unknown.invalid" );
+        assertEquals( "mailto:dev@unknown.invalid", lv.getResourceKey( lvi ) );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, lv.validateLink( lvi ).getStatus() );
+        assertNull( lv.getResourceKey( item( "index.html" ) ) );
+    }
+
+    public void testGetDomain()
+    {
+        assertEquals( "apache.org", MailtoLinkValidator.getDomain( "mailto:dev@Apache.ORG" ) );
+        assertEquals( "apache.org", MailtoLinkValidator.getDomain( "mailto:dev@apache.org?subject=a@b" ) );
+        assertEquals( "apache.org", MailtoLinkValidator.getDomain( "mailto:dev@apache.org,user@example.com" ) );
+        assertEquals( "apache.org", MailtoLinkValidator.getDomain( "mailto:@apache.org" ) );
+        assertNull( MailtoLinkValidator.getDomain( "mailto:dev@" ) );
+        assertEquals( "apache.org", HostDispatcher.getHost( "mailto:@apache.org" ) );
+    }
+
+    public void testDomains()
+    {
+        MailtoLinkValidator lv = new MailtoLinkValidator( resolver );
+        assertTrue( lv.isCheckingDomains() );
+
+        assertEquals( "mailto:@apache.org", lv.getResourceKey( item( "mailto:dev@Apache.org" ) ) );
+        assertEquals( "mailto:@apache.org", lv.getResourceKey( item( "mailto:users@apache.org?subject=Hi" ) ) );
+
+        LinkValidationResult lvr = lv.validateLink( item( "mailto:dev@apache.org" ) );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, lvr.getStatus() );
+        assertTrue( lvr.isPersistent() );
+
+        lvr = lv.validateLink( item( "mailto:dev@unknown.invalid" ) );
+        assertEquals( LinkcheckFileResult.ERROR_LEVEL, lvr.getStatus() );
+        assertTrue( lvr.isPersistent() );
+        assertEquals( "No MX or A record for domain unknown.invalid", lvr.getErrorMessage() );
+
+        lvr = lv.validateLink( item( "mailto:dev@unreachable.org" ) );
+        assertEquals( LinkcheckFileResult.UNKNOWN_LEVEL, lvr.getStatus() );
+        assertFalse( "not cached", lvr.isPersistent() );
+
+        lvr = lv.validateLink( item( "mailto:dev@" ) );
+        assertEquals( LinkcheckFileResult.ERROR_LEVEL, lvr.getStatus() );
+        assertEquals( 3, lookups.get() );
+    }
+
+    public void testOneLookupPerDomain()
+        throws Exception
+    {
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new MailtoLinkValidator( resolver ) );
+
+        String[] domains = { "apache.org", "maven.apache.org", "example.com", "example.net", "unknown.invalid" };
+
+        LinkValidationPlan plan = lvm.createPlan();
+        List<LinkValidationPlan.Resource> resources = new ArrayList<LinkValidationPlan.Resource>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            resources.add( plan.addLink( item( "mailto:user" + i + "@" + domains[i % domains.length] ) ) );
+        }
+
+        assertEquals( 5, plan.getUniqueLinks() );
+        assertTrue( plan.validateExternalLinks( 5, 1, false, 0 ) );
+        assertEquals( "one lookup per domain", 5, lookups.get() );
+
+        for ( int i = 0; i < resources.size(); i++ )
+        {
+            int expected = ( i % domains.length == 4 ) ? LinkcheckFileResult.ERROR_LEVEL
+                            : LinkcheckFileResult.VALID_LEVEL;
+            assertEquals( expected, resources.get( i ).getResult().getStatus() );
+        }
+
+        // the results are cached
+        assertNotNull( lvm.getCachedResult( item( "mailto:someone@example.com" ) ) );
+        lvm.createPlan().addLink( item( "mailto:someone@example.com" ) ).getResult();
+        assertEquals( 5, lookups.get() );
+
+        // until their time to live has elapsed
+        lvm.setTimeToLive( LinkcheckFileResult.VALID_LEVEL, 0 );
+        Thread.sleep( 10 );
+        assertNull( lvm.getCachedResult( item( "mailto:someone@example.com" ) ) );
+        lvm.createPlan().addLink( item( "mailto:someone@example.com" ) ).getResult();
+        assertEquals( 6, lookups.get() );
+    }
+
+    private static LinkValidationItem item( String link )
+    {
+        return new LinkValidationItem( new File( "index.html" ), link );
+    }
+}
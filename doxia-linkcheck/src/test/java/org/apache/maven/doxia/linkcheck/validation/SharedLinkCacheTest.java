@@ -0,0 +1,214 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class SharedLinkCacheTest
+    extends TestCase
+{
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private File directory;
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        directory = new File( PlexusTestCase.getBasedir(), "target/linkcheck/sharedCache" );
+        FileUtils.deleteDirectory( directory );
+        directory.mkdirs();
+    }
+
+    public void testSharedResults()
+        throws Exception
+    {
+        SharedLinkCache shared = new SharedLinkCache();
+
+        LinkValidatorManager module1 = createManager( shared );
+        LinkValidatorManager module2 = createManager( shared );
+
+        LinkValidationItem lvi = new LinkValidationItem( new File( "index.html" ), "http://maven.apache.org/" );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, module1.validateLink( lvi ).getStatus() );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, module2.createPlan().addLink( lvi ).getResult().getStatus() );
+
+        assertEquals( "validated once", 1, validations.get() );
+        assertEquals( 1, module2.getCacheHits() );
+        assertEquals( 1, shared.size() );
+
+        LinkValidator lv = module1.getValidators().get( 0 );
+        assertSame( lv, shared.shareValidator( "http", lv ) );
+        assertSame( "the first validator is shared", lv,
+                    shared.shareValidator( "http", module2.getValidators().get( 0 ) ) );
+    }
+
+    public void testLoadAndSaveOnce()
+        throws Exception
+    {
+        File cache1 = new File( directory, "module1.cache" );
+        File cache2 = new File( directory, "module2.cache" );
+
+        LinkValidatorManager previous = createManager( null );
+        previous.setCachedResult( "http://maven.apache.org/", valid() );
+        previous.saveCache( cache1 );
+
+        previous = createManager( null );
+        previous.setCachedResult( "http://www.apache.org/", valid() );
+        previous.saveCache( cache2 );
+
+        SharedLinkCache shared = new SharedLinkCache();
+
+        LinkValidatorManager module1 = createManager( shared );
+        module1.loadCache( cache1 );
+        module1.setCachedResult( "http://maven.apache.org/doxia/", valid() );
+
+        LinkValidatorManager module2 = createManager( shared );
+        module2.loadCache( cache2 );
+        module2.loadCache( cache1 );
+
+        assertEquals( 3, shared.size() );
+        assertNotNull( module2.getCachedResult( new LinkValidationItem( new File( "index.html" ),
+                                                                        "http://maven.apache.org/doxia/" ) ) );
+
+        BinaryLinkCacheFormat format = new BinaryLinkCacheFormat();
+
+        module1.saveCache( cache1 );
+        Map<Object, LinkValidationResult> saved1 = format.read( cache1 );
+        assertEquals( "saved at once", 3, saved1.size() );
+        assertNotNull( saved1.get( "http://www.apache.org/" ) );
+
+        module2.setCachedResult( "http://maven.apache.org/skins/", valid() );
+        module2.saveCache( cache2 );
+        assertEquals( 4, format.read( cache2 ).size() );
+        assertEquals( 3, format.read( cache1 ).size() );
+
+        long modified = cache2.lastModified() - 60000;
+        cache2.setLastModified( modified );
+        shared.save();
+
+        assertEquals( "out of date file saved again", 4, format.read( cache1 ).size() );
+        assertEquals( "up to date file not saved again", modified, cache2.lastModified() );
+    }
+
+    public void testNonPersistentResults()
+        throws Exception
+    {
+        SharedLinkCache shared = new SharedLinkCache();
+
+        LinkValidatorManager module1 = createManager( null );
+        module1.setCachedResult( "http://maven.apache.org/", nonPersistent() );
+        module1.setSharedCache( shared );
+        module1.setCachedResult( "http://www.apache.org/", nonPersistent() );
+
+        LinkValidationItem lvi1 = new LinkValidationItem( new File( "index.html" ), "http://maven.apache.org/" );
+        LinkValidationItem lvi2 = new LinkValidationItem( new File( "index.html" ), "http://www.apache.org/" );
+        assertNotNull( module1.getCachedResult( lvi1 ) );
+        assertNotNull( module1.getCachedResult( lvi2 ) );
+        assertEquals( "kept by the manager", 0, shared.size() );
+
+        LinkValidatorManager module2 = createManager( shared );
+        assertNull( module2.getCachedResult( lvi1 ) );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, module2.validateLink( lvi2 ).getStatus() );
+        assertEquals( "validated again", 1, validations.get() );
+        assertEquals( 1, shared.size() );
+    }
+
+    public void testHostMetricsOfSharedValidator()
+        throws Exception
+    {
+        final HostMetrics own = new HostMetrics();
+
+        LinkValidator lv = new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                HostMetrics.getCurrent( own ).addRequest( HostDispatcher.getHost( lvi.getLink() ), 1 );
+
+                return valid();
+            }
+        };
+
+        SharedLinkCache shared = new SharedLinkCache();
+        HostMetrics metrics1 = new HostMetrics();
+        HostMetrics metrics2 = new HostMetrics();
+
+        LinkValidatorManager module1 = new LinkValidatorManager();
+        module1.setSharedCache( shared );
+        module1.addLinkValidator( shared.shareValidator( "http", lv ) );
+        module1.setHostMetrics( metrics1 );
+
+        LinkValidatorManager module2 = new LinkValidatorManager();
+        module2.setSharedCache( shared );
+        module2.addLinkValidator( shared.shareValidator( "http", lv ) );
+        module2.setHostMetrics( metrics2 );
+
+        File source = new File( "index.html" );
+        module1.validateLink( new LinkValidationItem( source, "http://maven.apache.org/" ) );
+        module2.validateLink( new LinkValidationItem( source, "http://www.apache.org/" ) );
+
+        assertEquals( "[maven.apache.org]", metrics1.getHosts().toString() );
+        assertEquals( "[www.apache.org]", metrics2.getHosts().toString() );
+        assertTrue( "nothing left to the validator", own.getHosts().isEmpty() );
+    }
+
+    private LinkValidatorManager createManager( SharedLinkCache shared )
+    {
+        LinkValidatorManager lvm = new LinkValidatorManager();
+        lvm.addLinkValidator( new HTTPLinkValidator()
+        {
+            public LinkValidationResult validateLink( LinkValidationItem lvi )
+            {
+                validations.incrementAndGet();
+
+                return valid();
+            }
+        } );
+
+        if ( shared != null )
+        {
+            lvm.setSharedCache( shared );
+        }
+
+        return lvm;
+    }
+
+    private static LinkValidationResult valid()
+    {
+        return new HTTPLinkValidationResult( LinkcheckFileResult.VALID_LEVEL, true, 200, "OK" );
+    }
+
+    private static LinkValidationResult nonPersistent()
+    {
+        return new LinkValidationResult( LinkcheckFileResult.ERROR_LEVEL, false, "not found" );
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.maven.doxia.linkcheck.validation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.doxia.linkcheck.model.LinkcheckFileResult;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Test the index of the files of a site.
+ */
+public class SitePathIndexTest
+    extends TestCase
+{
+    private File site;
+
+    /** {@inheritDoc} */
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        site = new File( System.getProperty( "basedir", new File( "" ).getAbsolutePath() ), "target/sitepathindex" );
+        FileUtils.deleteDirectory( site );
+
+        new File( site, "a/b" ).mkdirs();
+        FileUtils.fileWrite( new File( site, "index.html" ).getPath(), "<a href=\"a/b/page.html\">" );
+        FileUtils.fileWrite( new File( site, "a/b/page.html" ).getPath(), "<a href=\"../../index.html\">" );
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( site );
+
+        super.tearDown();
+    }
+
+    public void testNormalize()
+    {
+        String root = site.getPath();
+
+        assertEquals( root, SitePathIndex.normalize( site ) );
+        assertEquals( path( root, "a/index.html" ),
+                      SitePathIndex.normalize( new File( site, "a/./b/../index.html" ) ) );
+        assertEquals( root, SitePathIndex.normalize( new File( site, "a/b/../.." ) ) );
+        assertEquals( path( root, ".hidden" ), SitePathIndex.normalize( new File( site, ".hidden" ) ) );
+
+        File top = File.listRoots()[0];
+        assertEquals( top.getAbsolutePath(), SitePathIndex.normalize( new File( top, "../.." ) ) );
+    }
+
+    public void testExists()
+        throws Exception
+    {
+        SitePathIndex index = new SitePathIndex( site );
+
+        // the root, 2 directories and 2 files
+        assertEquals( 5, index.size() );
+
+        assertTrue( index.exists( site ) );
+        assertTrue( index.exists( new File( site, "a/b/../b/page.html" ) ) );
+        assertTrue( index.exists( new File( site, "a/b/" ) ) );
+        assertFalse( index.exists( new File( site, "missing.html" ) ) );
+
+        // added after the snapshot
+        FileUtils.fileWrite( new File( site, "new.html" ).getPath(), "" );
+        assertTrue( index.exists( new File( site, "new.html" ) ) );
+    }
+
+    public void testFileLinkValidator()
+    {
+        FileLinkValidator validator = new FileLinkValidator( "UTF-8" );
+        validator.setPathIndex( new SitePathIndex( site ) );
+
+        File page = new File( site, "a/b/page.html" );
+        LinkValidationItem valid = new LinkValidationItem( page, "../../index.html" );
+        LinkValidationItem invalid = new LinkValidationItem( page, "../missing.html" );
+
+        assertEquals( SitePathIndex.normalize( new File( site, "index.html" ) ), validator.getResourceKey( valid ) );
+        assertEquals( LinkcheckFileResult.VALID_LEVEL, validator.validateLink( valid ).getStatus() );
+        assertEquals( LinkcheckFileResult.ERROR_LEVEL, validator.validateLink( invalid ).getStatus() );
+    }
+
+    private static String path( String root, String relative )
+    {
+        return root + File.separator + relative.replace( '/', File.separatorChar );
+    }
+}